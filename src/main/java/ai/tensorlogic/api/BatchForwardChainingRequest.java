@@ -0,0 +1,16 @@
+package ai.tensorlogic.api;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * バッチ前向き推論のリクエスト
+ * 
+ * @param namespace 適用するネームスペース（nullまたは"*"の場合は全ルール）
+ * @param entities エンティティごとの事実（事実名 → ベクトルの値）
+ */
+public record BatchForwardChainingRequest(
+    String namespace,
+    List<Map<String, List<Double>>> entities
+) {
+}
@@ -0,0 +1,15 @@
+package ai.tensorlogic.api;
+
+/**
+ * 不動点前向き推論のリクエスト
+ * 
+ * @param namespace 適用するネームスペース（nullまたは"*"の場合は全ルール）
+ * @param epsilon 収束判定の許容誤差（nullの場合は設定値）
+ * @param maxIterations 最大ラウンド数（nullの場合は設定値）
+ */
+public record ForwardChainingRequest(
+    String namespace,
+    Double epsilon,
+    Integer maxIterations
+) {
+}
@@ -1,6 +1,7 @@
 package ai.tensorlogic.api;
 
 import ai.tensorlogic.core.BackwardChainingResult;
+import ai.tensorlogic.core.ReasoningSession;
 import ai.tensorlogic.core.TensorLogicEngine;
 import ai.tensorlogic.llm.*;
 import ai.tensorlogic.parser.RuleDefinition;
@@ -69,47 +70,50 @@ public class LLMReasoningResource {
             LOG.info("Rules: {}", tensorLogicDef.rules().size());
             
             // ステップ3: Tensor Logicエンジンにロード
+            // （共有のエンジンはクリアせず、このリクエスト専用のセッションに登録する）
             LOG.info("ステップ3: Tensor Logicエンジンにロード");
-            engine.clear();
-            
-            // Factsを登録
-            for (RuleDefinition.Fact fact : tensorLogicDef.facts()) {
-                // valuesをList<Double>にキャスト
-                @SuppressWarnings("unchecked")
-                java.util.List<Double> values = (java.util.List<Double>) fact.tensor().values();
+            BackwardChainingResult verification;
+            try (ReasoningSession session = engine.openSession()) {
                 
-                engine.addFact(
-                    fact.name(),
-                    org.nd4j.linalg.factory.Nd4j.create(
-                        values.stream()
-                            .mapToDouble(Double::doubleValue)
-                            .toArray()
-                    )
-                );
-            }
-            
-            // Rulesを登録
-            for (RuleDefinition.RuleSpec ruledef : tensorLogicDef.rules()) {
-                ai.tensorlogic.core.Rule rule = new ai.tensorlogic.core.Rule(
-                    tensorLogicDef.metadata().namespace(),
-                    ruledef.inputs(),
-                    ruledef.output(),
-                    ai.tensorlogic.core.Rule.Operation.valueOf(ruledef.operation())
+                // Factsを登録
+                for (RuleDefinition.Fact fact : tensorLogicDef.facts()) {
+                    // valuesをList<Double>にキャスト
+                    @SuppressWarnings("unchecked")
+                    java.util.List<Double> values = (java.util.List<Double>) fact.tensor().values();
+                    
+                    session.addFact(
+                        fact.name(),
+                        org.nd4j.linalg.factory.Nd4j.create(
+                            values.stream()
+                                .mapToDouble(Double::doubleValue)
+                                .toArray()
+                        )
+                    );
+                }
+                
+                // Rulesを登録
+                for (RuleDefinition.RuleSpec ruledef : tensorLogicDef.rules()) {
+                    ai.tensorlogic.core.Rule rule = new ai.tensorlogic.core.Rule(
+                        tensorLogicDef.metadata().namespace(),
+                        ruledef.inputs(),
+                        ruledef.output(),
+                        ai.tensorlogic.core.Rule.Operation.valueOf(ruledef.operation())
+                    );
+                    session.addRule(rule);
+                }
+                
+                // ステップ4: 後向き推論で検証
+                LOG.info("ステップ4: 後向き推論で検証");
+                String goalName = tensorLogicDef.expectedResults().isEmpty() 
+                    ? "final_conclusion" 
+                    : tensorLogicDef.expectedResults().get(0).name();
+                
+                verification = session.backwardChain(
+                    goalName,
+                    tensorLogicDef.metadata().namespace()
                 );
-                engine.addRule(rule);
             }
             
-            // ステップ4: 後向き推論で検証
-            LOG.info("ステップ4: 後向き推論で検証");
-            String goalName = tensorLogicDef.expectedResults().isEmpty() 
-                ? "final_conclusion" 
-                : tensorLogicDef.expectedResults().get(0).name();
-            
-            BackwardChainingResult verification = engine.backwardChain(
-                goalName,
-                tensorLogicDef.metadata().namespace()
-            );
-            
             LOG.info("検証結果: success={}, confidence={}", 
                 verification.success(), 
                 verification.getGoalConfidence());
@@ -1,6 +1,10 @@
 package ai.tensorlogic.api;
 
+import ai.tensorlogic.core.EngineSnapshot;
+import ai.tensorlogic.core.ExecutionPlan;
+import ai.tensorlogic.core.Precision;
 import ai.tensorlogic.core.Rule;
+import ai.tensorlogic.core.Relation;
 import ai.tensorlogic.core.TensorLogicEngine;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
@@ -70,16 +74,20 @@ public class RuleInspectorResource {
                description = "登録されている全ての事実とテンソルの情報を取得")
     public FactListResponse listAllFacts() {
         try {
-            Map<String, INDArray> facts = engine.getAllFacts();
+            // 型は保持している精度、値・統計は INT8 の量子化を戻した値で表示
+            Map<String, INDArray> facts = engine.snapshot().facts();
             
             List<FactInfo> factInfos = facts.entrySet().stream()
-                .map(entry -> new FactInfo(
-                    entry.getKey(),
-                    Arrays.toString(entry.getValue().shape()),
-                    entry.getValue().dataType().toString(),
-                    formatTensor(entry.getValue()),
-                    getTensorStats(entry.getValue())
-                ))
+                .map(entry -> {
+                    INDArray value = Precision.decode(entry.getValue());
+                    return new FactInfo(
+                        entry.getKey(),
+                        Arrays.toString(entry.getValue().shape()),
+                        entry.getValue().dataType().toString(),
+                        formatTensor(value),
+                        getTensorStats(value)
+                    );
+                })
                 .collect(Collectors.toList());
             
             return new FactListResponse(
@@ -106,8 +114,9 @@ public class RuleInspectorResource {
                description = "特定のルールの詳細情報を取得")
     public RuleDetailResponse getRuleDetail(@PathParam("ruleName") String ruleName) {
         try {
-            Map<String, Rule> rules = engine.getAllRules();
-            Rule rule = rules.get(ruleName);
+            // ルールと入力テンソルを同じバージョンから参照する
+            EngineSnapshot snapshot = engine.snapshot();
+            Rule rule = snapshot.rules().get(ruleName);
             
             if (rule == null) {
                 return new RuleDetailResponse(
@@ -123,7 +132,7 @@ public class RuleInspectorResource {
                 rule.output(),
                 rule.operation().name(),
                 generateNotation(rule),
-                getInputTensorInfo(rule)
+                getInputTensorInfo(snapshot, rule)
             );
             
             return new RuleDetailResponse(true, "成功", detail);
@@ -176,8 +185,9 @@ public class RuleInspectorResource {
                description = "登録されているルールと事実の統計情報")
     public SystemStatus getSystemStatus() {
         try {
-            Map<String, Rule> rules = engine.getAllRules();
-            Map<String, INDArray> facts = engine.getAllFacts();
+            EngineSnapshot snapshot = engine.snapshot();
+            Map<String, Rule> rules = snapshot.rules();
+            Map<String, INDArray> facts = snapshot.facts();
             
             Map<String, Integer> operationCounts = rules.values().stream()
                 .collect(Collectors.groupingBy(
@@ -204,6 +214,28 @@ public class RuleInspectorResource {
         }
     }
     
+    /**
+     * コンパイル済み実行計画を表示
+     */
+    @GET
+    @Path("/plan")
+    @Operation(summary = "実行計画",
+               description = "ネームスペースのルールをトポロジカル順に並べた実行計画（層と解決済みの形状）を取得")
+    public ExecutionPlanResponse getExecutionPlan(@QueryParam("namespace") String namespace) {
+        ExecutionPlan plan = engine.getExecutionPlan(namespace);
+        
+        Map<String, String> shapes = new LinkedHashMap<>();
+        plan.resolvedShapes().forEach((fact, shape) -> shapes.put(fact, Arrays.toString(shape)));
+        
+        return new ExecutionPlanResponse(
+            namespace == null ? "*" : namespace,
+            plan.stepCount(),
+            plan.hasCycles(),
+            plan.strata(),
+            shapes
+        );
+    }
+    
     // ===== ヘルパーメソッド =====
     
     /**
@@ -216,10 +248,16 @@ public class RuleInspectorResource {
         return switch (rule.operation()) {
             case MODUS_PONENS -> String.format("%s ∧ %s ⟹ %s", 
                 rule.inputs().get(0), rule.inputs().get(1), rule.output());
-            case CONJUNCTION -> String.format("%s ∧ %s ⟹ %s", 
-                inputs, inputs, rule.output());
+            case CONJUNCTION -> String.format("%s ⟹ %s", 
+                String.join(" ∧ ", rule.inputs()), rule.output());
+            case DISJUNCTION -> String.format("%s ⟹ %s", 
+                String.join(" ∨ ", rule.inputs()), rule.output());
             case CHAIN -> String.format("%s ○ %s ⟹ %s", 
                 rule.inputs().get(0), rule.inputs().get(1), rule.output());
+            case EINSUM -> String.format("einsum(%s; %s) ⟹ %s", 
+                rule.equation(), inputs, rule.output());
+            case CLOSURE -> String.format("%s⁺ [%s] ⟹ %s", 
+                rule.inputs().get(0), rule.effectiveSemiring(), rule.output());
             default -> String.format("%s(%s) ⟹ %s", operation, inputs, rule.output());
         };
     }
@@ -260,19 +298,26 @@ public class RuleInspectorResource {
     /**
      * 入力テンソルの情報を取得
      */
-    private List<InputTensorInfo> getInputTensorInfo(Rule rule) {
+    private List<InputTensorInfo> getInputTensorInfo(EngineSnapshot snapshot, Rule rule) {
         return rule.inputs().stream()
             .map(inputName -> {
-                INDArray tensor = engine.getFact(inputName);
+                INDArray tensor = Precision.decode(snapshot.getFact(inputName));
                 if (tensor != null) {
                     return new InputTensorInfo(
                         inputName,
                         Arrays.toString(tensor.shape()),
                         formatTensor(tensor)
                     );
-                } else {
-                    return new InputTensorInfo(inputName, "不明", "見つかりません");
                 }
+                Relation relation = snapshot.getRelation(inputName);
+                if (relation != null) {
+                    return new InputTensorInfo(
+                        inputName,
+                        Arrays.toString(relation.shape()),
+                        relation.toString()
+                    );
+                }
+                return new InputTensorInfo(inputName, "不明", "見つかりません");
             })
             .collect(Collectors.toList());
     }
@@ -351,6 +396,14 @@ record TensorStats(
     double std
 ) {}
 
+record ExecutionPlanResponse(
+    String namespace,
+    int ruleCount,
+    boolean hasCycles,
+    List<List<String>> strata,
+    Map<String, String> resolvedShapes
+) {}
+
 record SystemStatus(
     int totalRules,
     int totalFacts,
@@ -2,6 +2,8 @@ package ai.tensorlogic.api;
 
 import ai.tensorlogic.core.TensorLogicEngine;
 import ai.tensorlogic.parser.RuleLoader;
+import ai.tensorlogic.startup.AutoLoadReport;
+import ai.tensorlogic.startup.RuleAutoLoader;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
@@ -26,6 +28,24 @@ public class RuleLoaderResource {
     @Inject
     TensorLogicEngine engine;
     
+    @Inject
+    RuleAutoLoader autoLoader;
+    
+    /**
+     * 起動時の自動ロードの所要時間を取得
+     */
+    @GET
+    @Path("/auto-load/report")
+    @Operation(summary = "起動時の自動ロードの所要時間",
+               description = "ルールファイルごとの解析・変換・登録の所要時間")
+    public AutoLoadReport autoLoadReport() {
+        AutoLoadReport report = autoLoader.report();
+        if (report == null) {
+            throw new NotFoundException("起動時の自動ロードは実行されていません");
+        }
+        return report;
+    }
+    
     /**
      * サンプルルールを読み込み
      */
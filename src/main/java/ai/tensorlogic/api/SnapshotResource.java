@@ -0,0 +1,120 @@
+package ai.tensorlogic.api;
+
+import ai.tensorlogic.core.SnapshotInfo;
+import ai.tensorlogic.core.TensorLogicEngine;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * エンジンのスナップショット REST API
+ *
+ * 導出済みの事実を含むエンジンの状態をバイナリ形式で保存・復元します。
+ * パスを省略した場合は tensor.logic.snapshot.path を使用します。
+ * パスを指定する場合は tensor.logic.snapshot.directory からの相対パスで、
+ * 絶対パスや ".." を含むパス（ディレクトリの外を指すもの）は受け付けません。
+ */
+@Path("/api/snapshot")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+@Tag(name = "Snapshot", description = "エンジンの状態の保存・復元")
+public class SnapshotResource {
+
+    @Inject
+    TensorLogicEngine engine;
+
+    @ConfigProperty(name = "tensor.logic.snapshot.path", defaultValue = "data/engine.snapshot")
+    String defaultPath;
+
+    @ConfigProperty(name = "tensor.logic.snapshot.directory", defaultValue = "data/snapshots")
+    String directory;
+
+    /**
+     * 現在の状態を保存
+     */
+    @POST
+    @Path("/save")
+    @Operation(summary = "スナップショットを保存",
+               description = "事実（導出された事実を含む）・関係・ルール・バージョンをファイルに保存")
+    public SnapshotResponse save(SnapshotRequest request) {
+        java.nio.file.Path path = pathOf(request);
+        try {
+            return SnapshotResponse.success(path.toString(), engine.saveSnapshot(path));
+        } catch (Exception e) {
+            return SnapshotResponse.error(path.toString(), "保存に失敗しました: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 保存した状態を復元
+     */
+    @POST
+    @Path("/restore")
+    @Operation(summary = "スナップショットを復元",
+               description = "保存した状態で現在の状態を置き換え（チェックサムが一致しない場合は変更しない）")
+    public SnapshotResponse restore(SnapshotRequest request) {
+        java.nio.file.Path path = pathOf(request);
+        try {
+            return SnapshotResponse.success(path.toString(), engine.restoreSnapshot(path));
+        } catch (Exception e) {
+            return SnapshotResponse.error(path.toString(), "復元に失敗しました: " + e.getMessage());
+        }
+    }
+
+    /**
+     * スナップショットのファイルを解決（指定したパスはスナップショットのディレクトリの中に限る）
+     *
+     * @throws WebApplicationException 絶対パス、またはディレクトリの外を指すパスの場合（400）
+     */
+    private java.nio.file.Path pathOf(SnapshotRequest request) {
+        if (request == null || request.path() == null || request.path().isBlank()) {
+            return Paths.get(defaultPath);
+        }
+        java.nio.file.Path relative;
+        try {
+            relative = Paths.get(request.path());
+        } catch (InvalidPathException e) {
+            throw new WebApplicationException("不正なパスです: " + request.path(), 400);
+        }
+        boolean parent = false;
+        for (java.nio.file.Path part : relative) {
+            parent |= part.toString().equals("..");
+        }
+        java.nio.file.Path base = Paths.get(directory).toAbsolutePath().normalize();
+        java.nio.file.Path resolved = base.resolve(relative).normalize();
+        if (relative.isAbsolute() || parent || !resolved.startsWith(base) || resolved.equals(base)) {
+            throw new WebApplicationException(
+                "パスはスナップショットのディレクトリからの相対パスで指定してください: " + request.path(), 400);
+        }
+        return resolved;
+    }
+}
+
+/**
+ * スナップショットのリクエスト（path はスナップショットのディレクトリからの相対パス。省略可能）
+ */
+record SnapshotRequest(String path) {}
+
+/**
+ * スナップショットのレスポンス
+ */
+record SnapshotResponse(
+    boolean success,
+    String path,
+    SnapshotInfo snapshot,
+    String errorMessage
+) {
+    static SnapshotResponse success(String path, SnapshotInfo snapshot) {
+        return new SnapshotResponse(true, path, snapshot, null);
+    }
+
+    static SnapshotResponse error(String path, String errorMessage) {
+        return new SnapshotResponse(false, path, null, errorMessage);
+    }
+}
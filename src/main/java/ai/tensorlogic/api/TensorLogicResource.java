@@ -1,13 +1,24 @@
 package ai.tensorlogic.api;
 
 import ai.tensorlogic.core.BackwardChainingResult;
+import ai.tensorlogic.core.BatchForwardChainingResult;
+import ai.tensorlogic.core.ForwardChainingResult;
+import ai.tensorlogic.core.Semiring;
 import ai.tensorlogic.core.TensorLogicEngine;
+import ai.tensorlogic.core.TopKResult;
 import ai.tensorlogic.integration.*;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Tensor Logic REST API エンドポイント
@@ -73,6 +84,61 @@ public class TensorLogicResource {
         return engine.backwardChain(request.goal(), request.namespace());
     }
     
+    /**
+     * 不動点前向き推論
+     */
+    @POST
+    @Path("/forward-chain")
+    @Operation(summary = "不動点前向き推論",
+               description = "変化した事実に依存するルールだけを再評価しながら、収束するまで前向き推論を繰り返します。1回の呼び出しで多段のルールが全て導出されます。")
+    public ForwardChainingResult forwardChain(ForwardChainingRequest request) {
+        return engine.forwardChainToFixpoint(
+            request.namespace(),
+            request.epsilon() != null ? request.epsilon() : engine.getFixpointEpsilon(),
+            request.maxIterations() != null ? request.maxIterations() : engine.getFixpointMaxIterations()
+        );
+    }
+    
+    /**
+     * バッチ前向き推論
+     */
+    @POST
+    @Path("/forward-chain/batch")
+    @Operation(summary = "バッチ前向き推論",
+               description = "複数のエンティティ（申請者など）の事実をまとめて前向き推論します。エンティティごとの事実はバッチ軸に積み重ねられ、指定しない事実は全エンティティで共有されます。")
+    public BatchForwardChainingResult forwardChainBatch(BatchForwardChainingRequest request) {
+        List<Map<String, INDArray>> entities = request.entities().stream()
+            .map(facts -> {
+                Map<String, INDArray> tensors = new LinkedHashMap<>();
+                facts.forEach((name, values) -> tensors.put(name,
+                    Nd4j.create(values.stream().mapToDouble(Double::doubleValue).toArray())));
+                return tensors;
+            })
+            .toList();
+        return engine.forwardChainBatch(request.namespace(), entities);
+    }
+    
+    /**
+     * 合成した関係の上位 k 件
+     */
+    @POST
+    @Path("/top-k")
+    @Operation(summary = "合成した関係の上位 k 件",
+               description = "left ⊗ right を行ごとに計算し、値の大きい順に k 件の列を返します。合成結果の全体（行数 × 列数）は作らないため、人ごとの「友人の友人」の候補などをクライアントで並べ替えずに取得できます。")
+    public TopKResult topK(TopKRequest request) {
+        try {
+            return engine.topK(
+                request.left(),
+                request.right(),
+                request.k() != null ? request.k() : 10,
+                request.semiring() != null ? Semiring.valueOf(request.semiring().toUpperCase(Locale.ROOT)) : null,
+                request.rows() != null ? request.rows().stream().mapToInt(Integer::intValue).toArray() : null
+            );
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e.getMessage(), 400);
+        }
+    }
+    
     /**
      * ヘルスチェック
      */
@@ -0,0 +1,21 @@
+package ai.tensorlogic.api;
+
+import java.util.List;
+
+/**
+ * 合成した関係の上位 k 件のリクエスト
+ * 
+ * @param left 左の事実・関係の名前
+ * @param right 右の事実・関係の名前
+ * @param k 行ごとの件数（nullの場合は10）
+ * @param semiring 合成に使用する半環（nullの場合は SUM_PRODUCT）
+ * @param rows 計算する行（nullの場合は全ての行）
+ */
+public record TopKRequest(
+    String left,
+    String right,
+    Integer k,
+    String semiring,
+    List<Integer> rows
+) {
+}
@@ -0,0 +1,66 @@
+package ai.tensorlogic.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * バッチ前向き推論の結果を保持するレコード
+ *
+ * @param batchSize エンティティ数
+ * @param batchedFacts エンティティごとに導出された事実（形状は [N, ...エンティティ1件分の形状]）
+ * @param sharedFacts 共有の事実だけから導出された事実（全エンティティで同じ値）
+ */
+public record BatchForwardChainingResult(
+    int batchSize,
+    @JsonIgnore Map<String, INDArray> batchedFacts,
+    @JsonIgnore Map<String, INDArray> sharedFacts
+) {
+
+    /**
+     * 指定したエンティティの導出された事実を取得
+     *
+     * @param entity エンティティの番号（入力の順序）
+     * @param name 事実名
+     * @return 事実の値（導出されていない場合はnull）
+     */
+    public INDArray getFact(int entity, String name) {
+        INDArray batched = batchedFacts.get(name);
+        if (batched == null) {
+            return sharedFacts.get(name);
+        }
+        long[] entityShape = Arrays.copyOfRange(batched.shape(), 1, batched.rank());
+        long length = batched.length() / batchSize;
+        return batched.reshape(batchSize, length).getRow(entity).reshape(entityShape).dup();
+    }
+
+    /**
+     * エンティティごとの導出された事実（JSON出力用、値は平坦化した配列）
+     */
+    public List<Map<String, double[]>> getEntities() {
+        List<Map<String, double[]>> entities = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Map<String, double[]> facts = new LinkedHashMap<>();
+            for (String name : batchedFacts.keySet()) {
+                facts.put(name, getFact(i, name).reshape(-1).toDoubleVector());
+            }
+            for (Map.Entry<String, INDArray> entry : sharedFacts.entrySet()) {
+                facts.put(entry.getKey(), entry.getValue().reshape(-1).toDoubleVector());
+            }
+            entities.add(facts);
+        }
+        return entities;
+    }
+
+    /**
+     * 導出された事実の数（エンティティ1件あたり）
+     */
+    public int getDerivedFactCount() {
+        return batchedFacts.size() + sharedFacts.size();
+    }
+}
@@ -0,0 +1,220 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * バッチ次元つきのテンソルカーネル
+ *
+ * N個のエンティティ（申請者など）の事実を先頭のバッチ軸に積み重ね、
+ * 1回のテンソル演算で全エンティティのルールを評価します。
+ * エンティティごとの値は [N, L]（L はエンティティ1件分の要素数）に平坦化して保持し、
+ * 全エンティティで共有する事実はバッチ軸なしのまま保持して演算時にブロードキャストします。
+ *
+ * 各エンティティの結果は、同じ事実で {@link RuleKernels} を個別に適用した結果と同じ形状・値になります。
+ */
+final class BatchKernels {
+
+    private BatchKernels() {
+    }
+
+    /**
+     * バッチ評価中の値
+     *
+     * @param data バッチの場合は [N, L]、共有の場合は元のテンソル
+     * @param entityShape エンティティ1件分の形状
+     * @param batched エンティティごとの値かどうか（falseの場合は全エンティティで共有）
+     */
+    record Batched(INDArray data, long[] entityShape, boolean batched) {
+
+        static Batched shared(INDArray value) {
+            return new Batched(value, value.shape(), false);
+        }
+
+        static Batched stacked(INDArray rows, long[] entityShape) {
+            return new Batched(rows, entityShape, true);
+        }
+
+        /**
+         * [N, L] の形で取得（共有の値はN行にブロードキャスト）
+         */
+        INDArray rows(long n) {
+            long length = elementCount(entityShape);
+            return batched ? data : data.reshape(1, length).broadcast(n, length);
+        }
+
+        /**
+         * バッチ軸を先頭に付けた [N, ...entityShape] の形で取得
+         */
+        INDArray unflatten(long n) {
+            long[] shape = new long[entityShape.length + 1];
+            shape[0] = n;
+            System.arraycopy(entityShape, 0, shape, 1, entityShape.length);
+            return data.reshape(shape);
+        }
+    }
+
+    /**
+     * ルールをバッチで評価
+     *
+     * @param n バッチサイズ
+     */
+    static Batched apply(Rule rule, Batched[] inputs, long n) {
+        inputs = widen(inputs);
+        boolean anyBatched = false;
+        for (Batched input : inputs) {
+            anyBatched |= input.batched();
+        }
+        if (!anyBatched) {
+            // 共有の事実だけで決まるルールは1回だけ評価
+            INDArray[] values = new INDArray[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                values[i] = inputs[i].data();
+            }
+            return Batched.shared(RuleKernels.forRule(rule).apply(values));
+        }
+        return switch (rule.operation()) {
+            case CONJUNCTION -> elementwise(inputs, n, true);
+            case DISJUNCTION -> elementwise(inputs, n, false);
+            case MODUS_PONENS, CHAIN -> matmul(inputs[0], inputs[1], rule.effectiveSemiring(), n);
+            case EINSUM -> einsum(Einsum.of(rule.equation()), inputs, n);
+            case CLOSURE -> closure(inputs[0], rule.effectiveSemiring(), n);
+        };
+    }
+
+    /**
+     * 入力を積和を計算する精度に揃える（{@link Precision#widen(INDArray[])}）
+     */
+    private static Batched[] widen(Batched[] inputs) {
+        INDArray[] data = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            data[i] = inputs[i].data();
+        }
+        INDArray[] widened = Precision.widen(data);
+        if (widened == data) {
+            return inputs;
+        }
+        Batched[] result = new Batched[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            result[i] = new Batched(widened[i], inputs[i].entityShape(), inputs[i].batched());
+        }
+        return result;
+    }
+
+    /**
+     * 推移閉包（エンティティごとに計算）
+     */
+    private static Batched closure(Batched relation, Semiring semiring, long n) {
+        long[] shape = relation.entityShape();
+        if (TransitiveClosure.resolveShape(shape) == null) {
+            throw new IllegalArgumentException("推移閉包は正方行列の関係のみ対応しています: " + Arrays.toString(shape));
+        }
+        long length = elementCount(shape);
+        INDArray result = Nd4j.create(relation.data().dataType(), n, length);
+        for (long i = 0; i < n; i++) {
+            INDArray closure = TransitiveClosure.dense(relation.data().getRow(i).reshape(shape), semiring);
+            result.getRow(i).assign(closure.reshape(length));
+        }
+        return Batched.stacked(result, shape);
+    }
+
+    /**
+     * 一般の縮約
+     *
+     * エンティティごとの入力と出力にバッチ軸の添字を加えた1つの縮約として計算します。
+     */
+    private static Batched einsum(Einsum einsum, Batched[] inputs, long n) {
+        boolean[] batched = new boolean[inputs.length];
+        INDArray[] values = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            batched[i] = inputs[i].batched();
+            values[i] = batched[i] ? inputs[i].unflatten(n) : inputs[i].data();
+        }
+        INDArray result = einsum.withBatchAxis(batched).apply(values);
+        long[] outShape = Arrays.copyOfRange(result.shape(), 1, result.rank());
+        if (outShape.length == 0) {
+            outShape = new long[]{1};
+        }
+        return Batched.stacked(result.reshape(n, elementCount(outShape)), outShape);
+    }
+
+    /**
+     * 要素ごとの演算（全入力の論理積・論理和）
+     *
+     * @param minimum trueの場合は最小値（論理積）、falseの場合は最大値（論理和）
+     */
+    private static Batched elementwise(Batched[] inputs, long n, boolean minimum) {
+        long[] shape = inputs[0].entityShape();
+        INDArray[] rows = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            if (!Arrays.equals(shape, inputs[i].entityShape())) {
+                throw new IllegalArgumentException("形状が一致しません: "
+                    + Arrays.toString(shape) + " と " + Arrays.toString(inputs[i].entityShape()));
+            }
+            rows[i] = inputs[i].rows(n);
+        }
+        return Batched.stacked(RuleKernels.reduce(rows, minimum), shape);
+    }
+
+    /**
+     * 行列積（モーダスポネンス・関係の合成）
+     *
+     * ベクトルは行ベクトル [1, k] として扱われます。
+     * 片方が共有の場合はバッチ軸を行列の行（または列）に畳み込んで1回の行列積で計算します。
+     * 合成は指定された半環で行います。
+     */
+    private static Batched matmul(Batched a, Batched b, Semiring semiring, long n) {
+        long[] left = asMatrix(a.entityShape());
+        long[] right = asMatrix(b.entityShape());
+        if (left[1] != right[0]) {
+            throw new IllegalArgumentException("行列積の形状が一致しません: "
+                + Arrays.toString(a.entityShape()) + " と " + Arrays.toString(b.entityShape()));
+        }
+        long m = left[0];
+        long k = left[1];
+        long p = right[1];
+        long[] outShape = {m, p};
+
+        if (a.batched() && !b.batched()) {
+            // [N*m, k] x [k, p] → [N*m, p]
+            INDArray result = semiring.matmul(a.data().reshape(n * m, k), b.data().reshape(k, p));
+            return Batched.stacked(result.reshape(n, m * p), outShape);
+        }
+        if (!a.batched()) {
+            // [m, k] x [k, N*p] → [m, N*p]
+            INDArray columns = b.data().reshape(n, k, p).permute(1, 0, 2).dup('c').reshape(k, n * p);
+            INDArray result = semiring.matmul(a.data().reshape(m, k), columns);
+            return Batched.stacked(
+                result.reshape(m, n, p).permute(1, 0, 2).dup('c').reshape(n, m * p), outShape);
+        }
+
+        // 両方がエンティティごとの値の場合はエンティティごとに行列積を計算
+        INDArray result = Nd4j.create(a.data().dataType(), n, m * p);
+        for (long i = 0; i < n; i++) {
+            INDArray product = semiring.matmul(
+                a.data().getRow(i).reshape(m, k), b.data().getRow(i).reshape(k, p));
+            result.getRow(i).assign(product.reshape(m * p));
+        }
+        return Batched.stacked(result, outShape);
+    }
+
+    private static long[] asMatrix(long[] shape) {
+        if (shape.length == 1) {
+            return new long[]{1, shape[0]};
+        }
+        if (shape.length == 2) {
+            return shape;
+        }
+        throw new IllegalArgumentException("行列積はベクトルまたは行列のみ対応しています: " + Arrays.toString(shape));
+    }
+
+    static long elementCount(long[] shape) {
+        long count = 1;
+        for (long dim : shape) {
+            count *= dim;
+        }
+        return count;
+    }
+}
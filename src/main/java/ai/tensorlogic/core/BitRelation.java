@@ -0,0 +1,367 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 値が0/1だけの関係（ビット詰めの行列）
+ *
+ * エンティティの型・権限・隣接関係のような確定的（crisp）な事実を、
+ * 行ごとに long 配列へ1要素1ビットで詰めて保持します。
+ * double の密な行列と比べてメモリ使用量は1/64になり、
+ * 論理積・論理和は64要素ずつのビット演算、関係の合成はブール行列積で計算します。
+ *
+ * 関係の合成の結果も0/1になります（経路が1本以上あれば1）。
+ * これは MAX_MIN・MAX_PRODUCT の半環の結果と同じ値です。
+ * 和・積の半環（CHAIN・MODUS_PONENS の既定）の合成は経路の数になるため、
+ * ルールの評価では疎な関係に変換して計算します。
+ * インスタンスは不変です。
+ */
+public final class BitRelation implements Relation {
+
+    private final int rows;
+    private final int cols;
+    /** 1行あたりの long の数 */
+    private final int words;
+    /** 行 r の列 c は bits[r * words + (c >>> 6)] の (c & 63) ビット目 */
+    private final long[] bits;
+
+    private BitRelation(int rows, int cols, long[] bits) {
+        this.rows = rows;
+        this.cols = cols;
+        this.words = wordsFor(cols);
+        this.bits = bits;
+    }
+
+    /**
+     * 値が0/1だけの行列から作成
+     *
+     * @throws IllegalArgumentException 0/1以外の値を含む場合
+     */
+    public static BitRelation fromMatrix(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        int words = wordsFor(cols);
+        long[] bits = allocate(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double value = matrix[r][c];
+                if (value == 1.0) {
+                    bits[r * words + (c >>> 6)] |= 1L << c;
+                } else if (value != 0.0) {
+                    throw new IllegalArgumentException(String.format(
+                        "ビット関係の値は0または1である必要があります: (%d, %d) = %s", r, c, value));
+                }
+            }
+        }
+        return new BitRelation(rows, cols, bits);
+    }
+
+    /**
+     * 値が0/1だけの密な行列から作成
+     *
+     * 1行ずつ取り出して詰めるため、行列全体を double の2次元配列にコピーしません。
+     *
+     * @throws IllegalArgumentException 0/1以外の値を含む場合
+     */
+    public static BitRelation fromDense(INDArray matrix) {
+        if (matrix.rank() != 2) {
+            throw new IllegalArgumentException("ビット関係は2次元の行列から作成する必要があります");
+        }
+        int rows = Math.toIntExact(matrix.size(0));
+        int cols = Math.toIntExact(matrix.size(1));
+        int words = wordsFor(cols);
+        long[] bits = allocate(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            double[] row = matrix.getRow(r).toDoubleVector();
+            for (int c = 0; c < cols; c++) {
+                if (row[c] == 1.0) {
+                    bits[r * words + (c >>> 6)] |= 1L << c;
+                } else if (row[c] != 0.0) {
+                    throw new IllegalArgumentException(String.format(
+                        "ビット関係の値は0または1である必要があります: (%d, %d) = %s", r, c, row[c]));
+                }
+            }
+        }
+        return new BitRelation(rows, cols, bits);
+    }
+
+    /**
+     * 辺のリストから作成
+     */
+    public static BitRelation fromEdges(int rows, int cols, int[] from, int[] to) {
+        if (from.length != to.length) {
+            throw new IllegalArgumentException("辺の始点・終点の数が一致しません");
+        }
+        int words = wordsFor(cols);
+        long[] bits = allocate(rows, cols);
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] < 0 || from[i] >= rows || to[i] < 0 || to[i] >= cols) {
+                throw new IllegalArgumentException(String.format(
+                    "辺 (%d, %d) が形状 [%d, %d] の範囲外です", from[i], to[i], rows, cols));
+            }
+            bits[from[i] * words + (to[i] >>> 6)] |= 1L << to[i];
+        }
+        return new BitRelation(rows, cols, bits);
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public long[] shape() {
+        return new long[]{rows, cols};
+    }
+
+    @Override
+    public int nnz() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return contains(row, col) ? 1.0 : 0.0;
+    }
+
+    /**
+     * 要素が1かどうか
+     */
+    public boolean contains(int row, int col) {
+        return (bits[row * words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    @Override
+    public INDArray toDense() {
+        if ((long) rows * cols > Integer.MAX_VALUE) {
+            throw new IllegalStateException("密な行列に変換できない大きさです: " + this);
+        }
+        double[] dense = new double[rows * cols];
+        forEachEdge((r, c) -> dense[r * cols + c] = 1.0);
+        return Nd4j.create(dense, rows, cols);
+    }
+
+    /**
+     * 疎な関係に変換（密・疎な値との演算に使用）
+     */
+    SparseRelation toSparse() {
+        int nnz = nnz();
+        int[] from = new int[nnz];
+        int[] to = new int[nnz];
+        double[] weights = new double[nnz];
+        int[] size = {0};
+        forEachEdge((r, c) -> {
+            from[size[0]] = r;
+            to[size[0]] = c;
+            weights[size[0]++] = 1.0;
+        });
+        return SparseRelation.fromEdges(rows, cols, from, to, weights);
+    }
+
+    // ===== ビット演算のカーネル =====
+
+    /**
+     * 全ての関係の論理積・論理和（64要素ずつ全ての関係をまとめて畳み込み、中間の関係を作らない）
+     *
+     * @param and trueの場合は AND、falseの場合は OR
+     */
+    static BitRelation reduce(BitRelation[] relations, boolean and) {
+        BitRelation first = relations[0];
+        for (int i = 1; i < relations.length; i++) {
+            first.checkSameShape(relations[i]);
+        }
+        long[] result = first.bits.clone();
+        for (int i = 1; i < relations.length; i++) {
+            long[] other = relations[i].bits;
+            for (int w = 0; w < result.length; w++) {
+                result[w] = and ? result[w] & other[w] : result[w] | other[w];
+            }
+        }
+        return new BitRelation(first.rows, first.cols, result);
+    }
+
+    /**
+     * 関係の合成（ブール行列積）
+     *
+     * 結果の行 r は、左の行 r で1になっている列 k ごとに右の行 k を OR したものです。
+     * 結果の行が全て1になった時点で、その行の残りの k は読み飛ばします。
+     */
+    BitRelation chain(BitRelation other) {
+        if (cols != other.rows) {
+            throw new IllegalArgumentException("関係の合成の形状が一致しません: 内側の次元 "
+                + cols + " と " + other.rows + " (" + Arrays.toString(other.shape()) + ")");
+        }
+        int outWords = other.words;
+        long lastMask = lastWordMask(other.cols);
+        long[] result = allocate(rows, other.cols);
+        for (int r = 0; r < rows; r++) {
+            int out = r * outWords;
+            boolean full = false;
+            for (int w = 0; w < words && !full; w++) {
+                long word = bits[r * words + w];
+                while (word != 0 && !full) {
+                    int k = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    full = orInto(result, out, other.bits, k * outWords, outWords, lastMask);
+                }
+            }
+        }
+        return new BitRelation(rows, other.cols, result);
+    }
+
+    /**
+     * 推移閉包（ビット行列版の Warshall 法）
+     *
+     * 各 k について、行 k に到達できる行 i に行 k を OR します。計算量は O(n³ / 64) です。
+     */
+    BitRelation closure() {
+        if (rows != cols) {
+            throw new IllegalArgumentException("推移閉包は正方行列の関係のみ対応しています: " + Arrays.toString(shape()));
+        }
+        long[] result = bits.clone();
+        for (int k = 0; k < rows; k++) {
+            int kWord = k >>> 6;
+            long kBit = 1L << k;
+            for (int i = 0; i < rows; i++) {
+                if ((result[i * words + kWord] & kBit) != 0) {
+                    for (int w = 0; w < words; w++) {
+                        result[i * words + w] |= result[k * words + w];
+                    }
+                }
+            }
+        }
+        return new BitRelation(rows, cols, result);
+    }
+
+    /**
+     * スナップショットに書き込む（形状とビット列）
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(cols);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * {@link #writeTo} で書き込んだ関係を読み込む
+     */
+    static BitRelation readFrom(DataInput in) throws IOException {
+        int rows = in.readInt();
+        int cols = in.readInt();
+        if (rows < 0 || cols < 0) {
+            throw new IOException("ビット関係の形状が不正です");
+        }
+        long[] bits;
+        try {
+            bits = allocate(rows, cols);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BitRelation(rows, cols, bits);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BitRelation other
+            && rows == other.rows && cols == other.cols && Arrays.equals(bits, other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * rows + cols) + Arrays.hashCode(bits);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BitRelation[%d x %d, nnz=%d]", rows, cols, nnz());
+    }
+
+    // ===== 内部処理 =====
+
+    @FunctionalInterface
+    private interface EdgeConsumer {
+        void accept(int row, int col);
+    }
+
+    private void forEachEdge(EdgeConsumer consumer) {
+        for (int r = 0; r < rows; r++) {
+            for (int w = 0; w < words; w++) {
+                long word = bits[r * words + w];
+                while (word != 0) {
+                    consumer.accept(r, (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * target の行に source の行を OR する
+     *
+     * @return OR した結果、行の全ての要素が1になったかどうか
+     */
+    private static boolean orInto(long[] target, int targetOffset, long[] source, int sourceOffset,
+                                  int length, long lastMask) {
+        boolean full = true;
+        for (int w = 0; w < length; w++) {
+            long merged = target[targetOffset + w] | source[sourceOffset + w];
+            target[targetOffset + w] = merged;
+            full &= merged == (w == length - 1 ? lastMask : -1L);
+        }
+        return full;
+    }
+
+    private void checkSameShape(BitRelation other) {
+        if (rows != other.rows || cols != other.cols) {
+            throw new IllegalArgumentException("形状が一致しません: "
+                + Arrays.toString(shape()) + " と " + Arrays.toString(other.shape()));
+        }
+    }
+
+    private static int wordsFor(int cols) {
+        return (int) ((cols + 63L) >>> 6);
+    }
+
+    /**
+     * 行数 × 1行の long の数の配列を確保
+     *
+     * @throws IllegalArgumentException 1つの配列に収まらない大きさの場合
+     */
+    private static long[] allocate(int rows, int cols) {
+        try {
+            return new long[Math.multiplyExact(rows, wordsFor(cols))];
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format(
+                "ビット関係 [%d, %d] は1つの配列に収まりません（%d個の long が必要です）",
+                rows, cols, (long) rows * wordsFor(cols)), e);
+        }
+    }
+
+    /**
+     * 最後の long のうち列として使われるビット
+     */
+    private static long lastWordMask(int cols) {
+        int used = cols & 63;
+        return used == 0 ? -1L : (1L << used) - 1;
+    }
+}
@@ -0,0 +1,502 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * アインシュタインの縮約記法によるテンソル演算（EINSUM ルール）
+ *
+ * "xy,yz,zw->xw" のような添字の指定に従い、N個の入力テンソルの積を取り、
+ * 出力に現れない添字について和を取ります。
+ * 例えば Parent(x,y)·Parent(y,z)·Sibling(z,w) は "xy,yz,zw->xw" と表せます。
+ *
+ * 縮約の順序によって中間テンソルの大きさと演算量は桁違いに変わるため、
+ * 実行前に入力の次元から2項ずつの縮約順序を選択します。
+ * 入力が少ない場合は部分集合の動的計画法で演算量が最小の順序を、多い場合は貪欲法で順序を求め、
+ * 選択した順序は入力の形状とともにキャッシュします。
+ * 各2項縮約は軸の並べ替えと行列積に変換して計算します。
+ */
+final class Einsum {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Einsum.class);
+
+    /** 動的計画法（計算量 3^N）で最適な順序を求める入力数の上限 */
+    private static final int MAX_OPTIMAL_OPERANDS = 10;
+
+    /** 添字の指定ごとの解析結果（縮約順序のキャッシュを含む） */
+    private static final ConcurrentMap<String, Einsum> CACHE = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED = 1024;
+
+    /**
+     * 縮約木のノード
+     *
+     * @param operand 入力の番号（中間結果の場合は-1）
+     * @param indices このノードが生成するテンソルの添字（ビット集合）
+     */
+    private record Node(int operand, Node left, Node right, long indices) {
+
+        boolean isLeaf() {
+            return operand >= 0;
+        }
+    }
+
+    /**
+     * 選択した縮約順序
+     *
+     * @param shapes 順序を選択したときの入力の形状
+     * @param cost 推定演算量（積和の回数）
+     */
+    private record Path(long[][] shapes, Node root, double cost) {}
+
+    /**
+     * 評価中のテンソルとその軸ごとの添字（添字がない場合は要素数1のテンソル）
+     */
+    private record Term(INDArray data, int[] indices) {}
+
+    private final String equation;
+    private final String[] terms;
+    private final String outputTerm;
+    private final int[][] operands;
+    private final int[] output;
+    private final long outputMask;
+    private final int letterCount;
+    private volatile Path path;
+
+    private Einsum(String equation) {
+        String spec = equation.replace(" ", "");
+        int arrow = spec.indexOf("->");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("添字の指定に '->' がありません: " + equation);
+        }
+        this.equation = equation;
+        this.terms = spec.substring(0, arrow).split(",", -1);
+        Map<Character, Integer> ids = new LinkedHashMap<>();
+        this.operands = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            operands[i] = parseIndices(terms[i], ids, equation);
+        }
+        this.letterCount = ids.size();
+        this.outputTerm = spec.substring(arrow + 2);
+        this.output = parseIndices(outputTerm, ids, equation);
+        if (ids.size() != letterCount) {
+            throw new IllegalArgumentException("出力の添字が入力に現れません: " + equation);
+        }
+        this.outputMask = mask(output);
+    }
+
+    /**
+     * 添字の指定を解析（同じ指定の解析結果と縮約順序は共有される）
+     */
+    static Einsum of(String equation) {
+        if (equation == null || equation.isBlank()) {
+            throw new IllegalArgumentException("EINSUM ルールには添字の指定（equation）が必要です");
+        }
+        Einsum einsum = CACHE.get(equation);
+        if (einsum != null) {
+            return einsum;
+        }
+        einsum = new Einsum(equation);
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        Einsum existing = CACHE.putIfAbsent(equation, einsum);
+        return existing != null ? existing : einsum;
+    }
+
+    /**
+     * 入力の数
+     */
+    int operandCount() {
+        return operands.length;
+    }
+
+    /**
+     * 指定した入力と出力の先頭にバッチ軸の添字を加えた演算（バッチ評価用）
+     *
+     * @param batched 入力ごとにバッチ軸を持つかどうか
+     */
+    Einsum withBatchAxis(boolean[] batched) {
+        char axis = unusedLetter();
+        StringBuilder spec = new StringBuilder();
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0) {
+                spec.append(',');
+            }
+            spec.append(batched[i] ? axis + terms[i] : terms[i]);
+        }
+        return of(spec.append("->").append(axis).append(outputTerm).toString());
+    }
+
+    /**
+     * 入力の形状から出力の形状を解決
+     *
+     * @return 出力の形状（形状が添字の指定と一致しない場合はnull）
+     */
+    long[] resolveShape(long[][] inputShapes) {
+        long[] dims = dimensions(inputShapes);
+        return dims == null ? null : shapeOf(output, dims);
+    }
+
+    /**
+     * 入力テンソル（添字の指定と同じ順序）に演算を適用
+     */
+    INDArray apply(INDArray[] inputs) {
+        long[][] shapes = new long[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            shapes[i] = inputs[i].shape();
+        }
+        long[] dims = dimensions(shapes);
+        if (dims == null) {
+            throw new IllegalArgumentException("入力の形状が添字の指定と一致しません: " + equation + " "
+                + Arrays.deepToString(shapes));
+        }
+        Path chosen = plan(shapes, dims);
+        Term result = sumOut(evaluate(chosen.root(), inputs, dims), outputMask);
+        return arrange(result, output).reshape(shapeOf(output, dims));
+    }
+
+    /**
+     * 入力の形状に対する縮約順序の表記（例: "((xy,yz),zw)"）
+     */
+    String describePath(long[][] inputShapes) {
+        long[] dims = dimensions(inputShapes);
+        return dims == null ? null : describe(plan(inputShapes, dims).root());
+    }
+
+    /**
+     * 縮約順序を取得（入力の形状が前回と同じ場合はキャッシュを使用）
+     */
+    private Path plan(long[][] shapes, long[] dims) {
+        Path cached = path;
+        if (cached != null && Arrays.deepEquals(cached.shapes(), shapes)) {
+            return cached;
+        }
+        long[] masks = new long[operands.length];
+        for (int i = 0; i < operands.length; i++) {
+            masks[i] = mask(operands[i]);
+        }
+        Path chosen = operands.length <= MAX_OPTIMAL_OPERANDS
+            ? optimal(masks, dims, shapes)
+            : greedy(masks, dims, shapes);
+        path = chosen;
+        LOG.debug("EINSUM 縮約順序を選択: {} → {} (推定演算量 {})",
+            equation, describe(chosen.root()), chosen.cost());
+        return chosen;
+    }
+
+    /**
+     * 部分集合の動的計画法で演算量が最小の縮約順序を選択
+     */
+    private Path optimal(long[] masks, long[] dims, long[][] shapes) {
+        int n = masks.length;
+        int full = (1 << n) - 1;
+        long[] union = new long[full + 1];
+        for (int s = 1; s <= full; s++) {
+            int low = s & -s;
+            union[s] = union[s ^ low] | masks[Integer.numberOfTrailingZeros(low)];
+        }
+
+        double[] cost = new double[full + 1];
+        Node[] best = new Node[full + 1];
+        for (int i = 0; i < n; i++) {
+            best[1 << i] = new Node(i, null, null, masks[i]);
+        }
+        for (int s = 1; s <= full; s++) {
+            if (Integer.bitCount(s) < 2) {
+                continue;
+            }
+            // この部分集合の結果に残す添字: 出力か、部分集合の外の入力に現れるもの
+            long keep = union[s] & (outputMask | union[full ^ s]);
+            int low = s & -s;
+            cost[s] = Double.POSITIVE_INFINITY;
+            for (int sub = (s - 1) & s; sub > 0; sub = (sub - 1) & s) {
+                if ((sub & low) == 0) {
+                    continue;
+                }
+                int rest = s ^ sub;
+                double candidate = cost[sub] + cost[rest]
+                    + size(best[sub].indices() | best[rest].indices(), dims);
+                if (candidate < cost[s]) {
+                    cost[s] = candidate;
+                    best[s] = new Node(-1, best[sub], best[rest], keep);
+                }
+            }
+        }
+        return new Path(copy(shapes), best[full], cost[full]);
+    }
+
+    /**
+     * 貪欲法で縮約順序を選択（演算量が最小の2項から順に縮約）
+     */
+    private Path greedy(long[] masks, long[] dims, long[][] shapes) {
+        List<Node> live = new ArrayList<>();
+        for (int i = 0; i < masks.length; i++) {
+            live.add(new Node(i, null, null, masks[i]));
+        }
+        double total = 0;
+        while (live.size() > 1) {
+            int bestI = 0;
+            int bestJ = 1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < live.size(); i++) {
+                for (int j = i + 1; j < live.size(); j++) {
+                    double candidate = size(live.get(i).indices() | live.get(j).indices(), dims);
+                    if (candidate < bestCost) {
+                        bestCost = candidate;
+                        bestI = i;
+                        bestJ = j;
+                    }
+                }
+            }
+            long others = outputMask;
+            for (int k = 0; k < live.size(); k++) {
+                if (k != bestI && k != bestJ) {
+                    others |= live.get(k).indices();
+                }
+            }
+            Node left = live.get(bestI);
+            Node right = live.get(bestJ);
+            live.remove(bestJ);
+            live.set(bestI, new Node(-1, left, right, (left.indices() | right.indices()) & others));
+            total += bestCost;
+        }
+        return new Path(copy(shapes), live.get(0), total);
+    }
+
+    private Term evaluate(Node node, INDArray[] inputs, long[] dims) {
+        if (node.isLeaf()) {
+            return new Term(inputs[node.operand()], operands[node.operand()]);
+        }
+        return contract(evaluate(node.left(), inputs, dims), evaluate(node.right(), inputs, dims),
+            node.indices(), dims);
+    }
+
+    /**
+     * 2項の縮約
+     *
+     * 両方に現れる添字のうち残すものをバッチ軸、残さないものを縮約軸とし、
+     * [バッチ, 左のみ, 縮約] × [バッチ, 縮約, 右のみ] の行列積として計算します。
+     */
+    private static Term contract(Term a, Term b, long keep, long[] dims) {
+        a = sumOut(a, keep | mask(b.indices()));
+        b = sumOut(b, keep | mask(a.indices()));
+        long aMask = mask(a.indices());
+        long bMask = mask(b.indices());
+        int[] batch = letters(aMask & bMask & keep);
+        int[] contracted = letters(aMask & bMask & ~keep);
+        int[] left = letters(aMask & ~bMask);
+        int[] right = letters(bMask & ~aMask);
+        long nb = elementCount(batch, dims);
+        long nl = elementCount(left, dims);
+        long nc = elementCount(contracted, dims);
+        long nr = elementCount(right, dims);
+
+        INDArray x = arrange(a, concat(batch, left, contracted)).reshape(nb, nl, nc);
+        INDArray y = arrange(b, concat(batch, contracted, right)).reshape(nb, nc, nr);
+        INDArray product;
+        if (nb == 1) {
+            product = x.reshape(nl, nc).mmul(y.reshape(nc, nr));
+        } else {
+            product = Nd4j.create(x.dataType(), nb, nl, nr);
+            for (long i = 0; i < nb; i++) {
+                product.slice(i).assign(x.slice(i).reshape(nl, nc).mmul(y.slice(i).reshape(nc, nr)));
+            }
+        }
+        int[] indices = concat(batch, left, right);
+        return new Term(product.reshape(shapeOf(indices, dims)), indices);
+    }
+
+    /**
+     * 残す添字以外の軸について和を取る
+     */
+    private static Term sumOut(Term term, long keep) {
+        int[] indices = term.indices();
+        List<Integer> axes = new ArrayList<>();
+        List<Integer> remaining = new ArrayList<>();
+        for (int axis = 0; axis < indices.length; axis++) {
+            if ((keep & (1L << indices[axis])) == 0) {
+                axes.add(axis);
+            } else {
+                remaining.add(indices[axis]);
+            }
+        }
+        if (axes.isEmpty()) {
+            return term;
+        }
+        INDArray summed = term.data().sum(axes.stream().mapToInt(Integer::intValue).toArray());
+        int[] kept = remaining.stream().mapToInt(Integer::intValue).toArray();
+        return new Term(kept.length == 0 ? summed.reshape(1) : summed, kept);
+    }
+
+    /**
+     * 軸を指定した添字の順序に並べ替え（C順序の連続したテンソル）
+     */
+    private static INDArray arrange(Term term, int[] order) {
+        int[] indices = term.indices();
+        if (indices.length == 0) {
+            return term.data();
+        }
+        int[] permutation = new int[order.length];
+        boolean identity = true;
+        for (int i = 0; i < order.length; i++) {
+            for (int axis = 0; axis < indices.length; axis++) {
+                if (indices[axis] == order[i]) {
+                    permutation[i] = axis;
+                }
+            }
+            identity &= permutation[i] == i;
+        }
+        return identity ? term.data() : term.data().permute(permutation).dup('c');
+    }
+
+    /**
+     * 入力の形状から添字ごとの次元を求める
+     *
+     * @return 添字ごとの次元（入力の数・階数・次元が添字の指定と一致しない場合はnull）
+     */
+    private long[] dimensions(long[][] shapes) {
+        if (shapes.length != operands.length) {
+            return null;
+        }
+        long[] dims = new long[letterCount];
+        Arrays.fill(dims, -1);
+        for (int i = 0; i < operands.length; i++) {
+            int[] term = operands[i];
+            long[] shape = shapes[i];
+            if (shape == null) {
+                return null;
+            }
+            if (term.length == 0) {
+                // 添字のない項はスカラー（要素数1のテンソル）
+                if (BatchKernels.elementCount(shape) != 1) {
+                    return null;
+                }
+                continue;
+            }
+            if (shape.length != term.length) {
+                return null;
+            }
+            for (int axis = 0; axis < term.length; axis++) {
+                if (dims[term[axis]] < 0) {
+                    dims[term[axis]] = shape[axis];
+                } else if (dims[term[axis]] != shape[axis]) {
+                    return null;
+                }
+            }
+        }
+        return dims;
+    }
+
+    private char unusedLetter() {
+        for (char letter : "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray()) {
+            if (equation.indexOf(letter) < 0) {
+                return letter;
+            }
+        }
+        throw new IllegalArgumentException("バッチ軸に使用できる添字がありません: " + equation);
+    }
+
+    private String describe(Node node) {
+        if (node.isLeaf()) {
+            return terms[node.operand()];
+        }
+        return "(" + describe(node.left()) + "," + describe(node.right()) + ")";
+    }
+
+    private static int[] parseIndices(String term, Map<Character, Integer> ids, String equation) {
+        int[] indices = new int[term.length()];
+        for (int i = 0; i < indices.length; i++) {
+            char letter = term.charAt(i);
+            if (!Character.isLetter(letter)) {
+                throw new IllegalArgumentException("添字には英字のみ使用できます: " + equation);
+            }
+            int id = ids.computeIfAbsent(letter, k -> ids.size());
+            for (int j = 0; j < i; j++) {
+                if (indices[j] == id) {
+                    throw new IllegalArgumentException(
+                        "1つの項で同じ添字を繰り返すこと（対角成分）には対応していません: " + equation);
+                }
+            }
+            indices[i] = id;
+        }
+        if (ids.size() > Long.SIZE) {
+            throw new IllegalArgumentException("添字の種類が多すぎます: " + equation);
+        }
+        return indices;
+    }
+
+    private static long mask(int[] indices) {
+        long mask = 0;
+        for (int index : indices) {
+            mask |= 1L << index;
+        }
+        return mask;
+    }
+
+    private static int[] letters(long mask) {
+        int[] letters = new int[Long.bitCount(mask)];
+        for (int i = 0; mask != 0; i++) {
+            letters[i] = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+        }
+        return letters;
+    }
+
+    private static int[] concat(int[]... parts) {
+        int[] result = new int[Arrays.stream(parts).mapToInt(part -> part.length).sum()];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private static double size(long mask, long[] dims) {
+        double size = 1;
+        for (int letter : letters(mask)) {
+            size *= dims[letter];
+        }
+        return size;
+    }
+
+    private static long elementCount(int[] indices, long[] dims) {
+        long count = 1;
+        for (int index : indices) {
+            count *= dims[index];
+        }
+        return count;
+    }
+
+    /**
+     * 添字の並びに対応する形状（添字がない場合は [1]）
+     */
+    private static long[] shapeOf(int[] indices, long[] dims) {
+        if (indices.length == 0) {
+            return new long[]{1};
+        }
+        long[] shape = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            shape[i] = dims[indices[i]];
+        }
+        return shape;
+    }
+
+    private static long[][] copy(long[][] shapes) {
+        long[][] copy = new long[shapes.length][];
+        for (int i = 0; i < shapes.length; i++) {
+            copy[i] = shapes[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,383 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * エンジン状態の不変スナップショット（MVCC）
+ *
+ * 事実（密なテンソルと関係）・ルール・ルール索引をひとつのバージョンとしてまとめたものです。
+ * 同じ名前の事実は密なテンソルと関係（{@link Relation}）のどちらか一方だけを持ちます。
+ * 公開後のスナップショットは変更されないため、読み取り側はロックなしで
+ * 一貫した状態を参照できます。書き込み側は {@link Builder} で新しいバージョンを作成し、
+ * エンジンがそれをアトミックに公開します。
+ *
+ * 各事実には最後に書き込まれたバージョン（事実のバージョン）が記録され、
+ * 後向き推論の表（{@link GoalTable}）の無効化判定に使用されます。
+ * 前向き推論で導出された事実には、その値を生成したルール名が記録され、
+ * 入力の更新・削除時の差分更新（{@link IncrementalMaintenance}）に使用されます。
+ *
+ * 実行計画のキャッシュはルール集合が同じバージョン間で共有され、
+ * ルールが変更されたバージョンでは新しい空のキャッシュになります。
+ */
+public final class EngineSnapshot implements FactSource {
+
+    private static final EngineSnapshot EMPTY = new EngineSnapshot(
+        0, 0, Map.of(), Map.of(), Map.of(), Map.of(), Map.of(), new RuleIndex(), new ConcurrentHashMap<>());
+
+    private final long version;
+    private final long ruleVersion;
+    private final Map<String, INDArray> facts;
+    private final Map<String, Relation> relations;
+    private final Map<String, Long> factVersions;
+    private final Map<String, String> derivations;
+    private final Map<String, Rule> rules;
+    private final RuleIndex index;
+    private final ConcurrentMap<String, ExecutionPlan> plans;
+
+    private EngineSnapshot(long version, long ruleVersion,
+                           Map<String, INDArray> facts, Map<String, Relation> relations,
+                           Map<String, Long> factVersions,
+                           Map<String, String> derivations, Map<String, Rule> rules, RuleIndex index,
+                           ConcurrentMap<String, ExecutionPlan> plans) {
+        this.version = version;
+        this.ruleVersion = ruleVersion;
+        this.facts = facts;
+        this.relations = relations;
+        this.factVersions = factVersions;
+        this.derivations = derivations;
+        this.rules = rules;
+        this.index = index;
+        this.plans = plans;
+    }
+
+    /**
+     * 空のスナップショット
+     */
+    static EngineSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 保存した状態からスナップショットを復元（{@link EngineSnapshotFile}）
+     *
+     * ルール索引は復元したルールから作り直し、実行計画のキャッシュは空の状態から始めます。
+     */
+    static EngineSnapshot restore(long version, long ruleVersion,
+                                  Map<String, INDArray> facts, Map<String, Relation> relations,
+                                  Map<String, Long> factVersions, Map<String, String> derivations,
+                                  Map<String, Rule> rules) {
+        RuleIndex index = new RuleIndex();
+        rules.forEach(index::add);
+        return new EngineSnapshot(version, ruleVersion,
+            Collections.unmodifiableMap(new HashMap<>(facts)),
+            Collections.unmodifiableMap(new HashMap<>(relations)),
+            Collections.unmodifiableMap(new HashMap<>(factVersions)),
+            Collections.unmodifiableMap(new HashMap<>(derivations)),
+            Collections.unmodifiableMap(new HashMap<>(rules)),
+            index, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 全てのバージョン（スナップショット・ルール集合・事実ごと）を offset だけ進めたスナップショット
+     *
+     * 復元したスナップショットを、以前に公開したどのバージョンとも重ならないように公開するために使用します。
+     */
+    EngineSnapshot rebase(long offset) {
+        Map<String, Long> rebased = new HashMap<>();
+        factVersions.forEach((name, factVersion) -> rebased.put(name, factVersion + offset));
+        return new EngineSnapshot(version + offset, ruleVersion + offset, facts, relations,
+            Collections.unmodifiableMap(rebased), derivations, rules, index, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * スナップショットのバージョン（書き込みごとに増加）
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * ルール集合のバージョン（ルールの追加・クリアでのみ増加）
+     */
+    public long ruleVersion() {
+        return ruleVersion;
+    }
+
+    /**
+     * 全ての事実（読み取り専用）
+     */
+    public Map<String, INDArray> facts() {
+        return facts;
+    }
+
+    /**
+     * 全てのルール（読み取り専用）
+     */
+    public Map<String, Rule> rules() {
+        return rules;
+    }
+
+    /**
+     * 事実を取得
+     */
+    @Override
+    public INDArray getFact(String name) {
+        return facts.get(name);
+    }
+
+    /**
+     * 全ての関係（読み取り専用）
+     */
+    public Map<String, Relation> relations() {
+        return relations;
+    }
+
+    /**
+     * 関係（疎・ビット）を取得
+     */
+    @Override
+    public Relation getRelation(String name) {
+        return relations.get(name);
+    }
+
+    /**
+     * 事実が最後に書き込まれたバージョン（存在しない事実は0）
+     */
+    public long factVersion(String name) {
+        return factVersions.getOrDefault(name, 0L);
+    }
+
+    /**
+     * 前向き推論で導出された事実かどうか
+     */
+    public boolean isDerived(String name) {
+        return derivations.containsKey(name);
+    }
+
+    /**
+     * 導出された事実の値を生成したルール名（与えられた事実はnull）
+     */
+    String derivedBy(String name) {
+        return derivations.get(name);
+    }
+
+    RuleIndex index() {
+        return index;
+    }
+
+    /**
+     * ネームスペースフィルタに該当するルール名を取得
+     */
+    Collection<String> rulesInScope(String namespaceFilter) {
+        if (namespaceFilter == null || namespaceFilter.equals("*")) {
+            return rules.keySet();
+        }
+        return index.inNamespace(namespaceFilter);
+    }
+
+    /**
+     * このバージョンのルール集合に対する実行計画を取得（未コンパイルならコンパイル）
+     */
+    ExecutionPlan plan(String namespaceFilter) {
+        String key = namespaceFilter == null ? "*" : namespaceFilter;
+        return plans.computeIfAbsent(key, k -> {
+            Map<String, Rule> scoped = new HashMap<>();
+            for (String ruleName : rulesInScope(namespaceFilter)) {
+                scoped.put(ruleName, rules.get(ruleName));
+            }
+            return ExecutionPlan.compile(scoped, this::shapeOf);
+        });
+    }
+
+    private long[] shapeOf(String name) {
+        INDArray dense = facts.get(name);
+        if (dense != null) {
+            return dense.shape();
+        }
+        Relation relation = relations.get(name);
+        return relation != null ? relation.shape() : null;
+    }
+
+    /**
+     * このスナップショットを基に次のバージョンを作成するビルダー
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * 次のバージョンを組み立てるビルダー
+     *
+     * 事実のマップ、ルールのマップと索引は、最初に変更されたときにだけコピーされます。
+     */
+    static final class Builder {
+        private final EngineSnapshot base;
+        private Map<String, INDArray> facts;
+        private Map<String, Relation> relations;
+        private Map<String, Long> factVersions;
+        private Map<String, String> derivations;
+        private Map<String, Rule> rules;
+        private RuleIndex index;
+        private boolean rulesChanged;
+
+        private Builder(EngineSnapshot base) {
+            this.base = base;
+        }
+
+        /**
+         * 事実を追加（導出された事実を上書きした場合は、以降は与えられた事実として扱う）
+         */
+        Builder putFact(String name, INDArray tensor) {
+            mutableFacts().put(name, tensor);
+            relations.remove(name);
+            factVersions.put(name, base.version + 1);
+            derivations.remove(name);
+            return this;
+        }
+
+        /**
+         * 関係を追加（同じ名前の密な事実は置き換えられる）
+         */
+        Builder putRelation(String name, Relation relation) {
+            mutableFacts().remove(name);
+            relations.put(name, relation);
+            factVersions.put(name, base.version + 1);
+            derivations.remove(name);
+            return this;
+        }
+
+        Builder putFacts(Map<String, INDArray> tensors) {
+            tensors.forEach(this::putFact);
+            return this;
+        }
+
+        /**
+         * ルールで導出された事実を追加
+         *
+         * @param derivedBy 事実名 → その値を生成したルール名
+         */
+        Builder putDerived(ForwardChainingResult result) {
+            result.derivedFacts().forEach((name, tensor) ->
+                putDerived(name, tensor, result.derivedBy().get(name)));
+            result.derivedRelations().forEach((name, relation) ->
+                putDerived(name, relation, result.derivedBy().get(name)));
+            return this;
+        }
+
+        /**
+         * ルールで導出された値を追加
+         *
+         * @param value 密なテンソル（{@link INDArray}）または関係（{@link Relation}）
+         */
+        Builder putDerived(String name, Object value, String ruleName) {
+            if (value instanceof Relation relation) {
+                mutableFacts().remove(name);
+                relations.put(name, relation);
+            } else {
+                mutableFacts().put(name, (INDArray) value);
+                relations.remove(name);
+            }
+            factVersions.put(name, base.version + 1);
+            if (ruleName != null) {
+                derivations.put(name, ruleName);
+            }
+            return this;
+        }
+
+        /**
+         * 事実を削除
+         */
+        Builder removeFact(String name) {
+            mutableFacts().remove(name);
+            relations.remove(name);
+            factVersions.remove(name);
+            derivations.remove(name);
+            return this;
+        }
+
+        Builder putRule(String name, Rule rule) {
+            if (rules == null) {
+                rules = new HashMap<>(base.rules);
+                index = base.index.copy();
+            }
+            Rule previous = rules.put(name, rule);
+            if (previous != null) {
+                index.remove(name, previous);
+            }
+            index.add(name, rule);
+            rulesChanged = true;
+            return this;
+        }
+
+        Builder clear() {
+            facts = new HashMap<>();
+            relations = new HashMap<>();
+            factVersions = new HashMap<>();
+            derivations = new HashMap<>();
+            rules = new HashMap<>();
+            index = new RuleIndex();
+            rulesChanged = true;
+            return this;
+        }
+
+        private Map<String, INDArray> mutableFacts() {
+            if (facts == null) {
+                facts = new HashMap<>(base.facts);
+                relations = new HashMap<>(base.relations);
+                factVersions = new HashMap<>(base.factVersions);
+                derivations = new HashMap<>(base.derivations);
+            }
+            return facts;
+        }
+
+        // ===== 差分更新（IncrementalMaintenance）から参照する作業中の状態 =====
+
+        INDArray fact(String name) {
+            return facts != null ? facts.get(name) : base.facts.get(name);
+        }
+
+        /**
+         * 密な事実または関係（存在しない場合はnull）
+         */
+        Object value(String name) {
+            INDArray dense = fact(name);
+            if (dense != null) {
+                return dense;
+            }
+            return relations != null ? relations.get(name) : base.relations.get(name);
+        }
+
+        String derivedBy(String name) {
+            return derivations != null ? derivations.get(name) : base.derivations.get(name);
+        }
+
+        Rule rule(String name) {
+            return rules != null ? rules.get(name) : base.rules.get(name);
+        }
+
+        RuleIndex index() {
+            return index != null ? index : base.index;
+        }
+
+        EngineSnapshot build() {
+            return new EngineSnapshot(
+                base.version + 1,
+                rulesChanged ? base.ruleVersion + 1 : base.ruleVersion,
+                facts != null ? Collections.unmodifiableMap(facts) : base.facts,
+                relations != null ? Collections.unmodifiableMap(relations) : base.relations,
+                factVersions != null ? Collections.unmodifiableMap(factVersions) : base.factVersions,
+                derivations != null ? Collections.unmodifiableMap(derivations) : base.derivations,
+                rules != null ? Collections.unmodifiableMap(rules) : base.rules,
+                index != null ? index : base.index,
+                rulesChanged ? new ConcurrentHashMap<>() : base.plans
+            );
+        }
+    }
+}
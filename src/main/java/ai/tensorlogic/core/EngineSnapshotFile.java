@@ -0,0 +1,421 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * エンジンの状態（スナップショット）のバイナリ形式
+ *
+ * 事実（導出された事実を含む）・関係・ルール・ネームスペース・バージョンを保存し、
+ * 再起動後に YAML の解析や前向き推論をやり直さずに同じ状態を復元します。
+ *
+ * <pre>
+ *   ヘッダー: int マジックナンバー "TLSN", int 形式のバージョン
+ *   レコード: byte 種類, int 長さ, byte[長さ] 内容, int 種類と内容の CRC32
+ *   …
+ *   終端:     種類 0 のレコード（内容はレコード数。途中で切れたファイルを検出する）
+ * </pre>
+ *
+ * 密な事実は保持している精度（{@link Precision}）のまま書き込むため、
+ * FLOAT32・INT8 で保持している事実はそのままの大きさで保存されます。
+ * 密な事実は名前・精度・形状のレコードの後に、値を C 順で最大1MBずつに分けたレコードを続けます。
+ * 書き込み・読み込みとも1MBずつ変換するため、事実全体のコピーを作らず、2GB以上の事実も保存できます。
+ * 各レコードはチェックサムを確認してから解釈します。
+ * 形式のバージョン1（値を事実のレコードに含める）のファイルも読み込めます。
+ */
+public final class EngineSnapshotFile {
+
+    private static final int MAGIC = 0x544C534E;
+    private static final int FORMAT_VERSION = 2;
+
+    /** 密な事実の値を分けて書き込むレコードの最大の大きさ */
+    private static final int VALUES_CHUNK_BYTES = 1 << 20;
+
+    private static final byte END = 0;
+    private static final byte HEADER = 1;
+    private static final byte RULE = 2;
+    private static final byte DENSE_FACT = 3;
+    private static final byte SPARSE_RELATION = 4;
+    private static final byte BIT_RELATION = 5;
+    private static final byte DENSE_VALUES = 6;
+
+    private EngineSnapshotFile() {
+    }
+
+    /**
+     * スナップショットをファイルに書き込む
+     *
+     * 一時ファイルに書き込んでから置き換えるため、書き込み中に失敗しても既存のファイルは壊れません。
+     *
+     * @return 書き込んだ内容の概要
+     */
+    public static SnapshotInfo write(EngineSnapshot snapshot, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, ".snapshot-", ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp)) {
+                write(snapshot, stream);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return new SnapshotInfo(snapshot.version(), snapshot.ruleVersion(), snapshot.facts().size(),
+            snapshot.relations().size(), snapshot.rules().size(), Files.size(file));
+    }
+
+    /**
+     * スナップショットをストリームに書き込む
+     */
+    public static void write(EngineSnapshot snapshot, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        int records = 0;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(snapshot.version());
+        payload.writeLong(snapshot.ruleVersion());
+        writeRecord(out, HEADER, bytes);
+        records++;
+
+        for (Map.Entry<String, Rule> entry : snapshot.rules().entrySet()) {
+            bytes.reset();
+            Rule rule = entry.getValue();
+            writeString(payload, entry.getKey());
+            writeString(payload, rule.namespace());
+            payload.writeInt(rule.inputs().size());
+            for (String input : rule.inputs()) {
+                writeString(payload, input);
+            }
+            writeString(payload, rule.output());
+            writeString(payload, rule.operation().name());
+            writeString(payload, rule.equation());
+            writeString(payload, rule.semiring() != null ? rule.semiring().name() : null);
+            writeRecord(out, RULE, bytes);
+            records++;
+        }
+
+        for (Map.Entry<String, INDArray> entry : snapshot.facts().entrySet()) {
+            String name = entry.getKey();
+            INDArray tensor = entry.getValue();
+            Precision precision = Precision.of(tensor.dataType());
+            bytes.reset();
+            writeFactHeader(payload, snapshot, name);
+            payload.writeInt(precision.code());
+            payload.writeInt(tensor.rank());
+            for (long dim : tensor.shape()) {
+                payload.writeLong(dim);
+            }
+            writeRecord(out, DENSE_FACT, bytes);
+            records++;
+            records += writeValues(out, tensor, precision);
+        }
+
+        for (Map.Entry<String, Relation> entry : snapshot.relations().entrySet()) {
+            bytes.reset();
+            writeFactHeader(payload, snapshot, entry.getKey());
+            byte type;
+            if (entry.getValue() instanceof SparseRelation sparse) {
+                sparse.writeTo(payload);
+                type = SPARSE_RELATION;
+            } else {
+                ((BitRelation) entry.getValue()).writeTo(payload);
+                type = BIT_RELATION;
+            }
+            writeRecord(out, type, bytes);
+            records++;
+        }
+
+        bytes.reset();
+        payload.writeInt(records);
+        writeRecord(out, END, bytes);
+        out.flush();
+    }
+
+    /**
+     * ファイルからスナップショットを読み込む
+     *
+     * @throws IOException 形式が不正、チェックサムが一致しない、または途中で切れている場合
+     */
+    public static EngineSnapshot read(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return read(stream);
+        }
+    }
+
+    /**
+     * ストリームからスナップショットを読み込む
+     */
+    public static EngineSnapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("エンジンのスナップショットではありません");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != 1 && formatVersion != FORMAT_VERSION) {
+            throw new IOException("未対応のスナップショットの形式です: " + formatVersion);
+        }
+
+        long version = -1;
+        long ruleVersion = 0;
+        Map<String, INDArray> facts = new HashMap<>();
+        Map<String, Relation> relations = new HashMap<>();
+        Map<String, Long> factVersions = new HashMap<>();
+        Map<String, String> derivations = new HashMap<>();
+        Map<String, Rule> rules = new HashMap<>();
+        int records = 0;
+        PendingFact pending = null;
+
+        while (true) {
+            byte type;
+            byte[] content;
+            try {
+                type = in.readByte();
+                content = new byte[in.readInt()];
+                in.readFully(content);
+                CRC32 crc = new CRC32();
+                crc.update(type);
+                crc.update(content);
+                if ((int) crc.getValue() != in.readInt()) {
+                    throw new IOException("スナップショットのチェックサムが一致しません（レコード " + records + "）");
+                }
+            } catch (EOFException | NegativeArraySizeException e) {
+                throw new IOException("スナップショットが途中で切れています（レコード " + records + "）", e);
+            }
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(content));
+            if (pending != null && type != DENSE_VALUES) {
+                throw new IOException("事実の値が途中で切れています: " + pending.name);
+            }
+            if (type == END) {
+                if (payload.readInt() != records) {
+                    throw new IOException("スナップショットのレコード数が一致しません");
+                }
+                break;
+            }
+            records++;
+            switch (type) {
+                case HEADER -> {
+                    version = payload.readLong();
+                    ruleVersion = payload.readLong();
+                }
+                case RULE -> {
+                    String name = readString(payload);
+                    String namespace = readString(payload);
+                    List<String> inputs = new ArrayList<>();
+                    for (int i = payload.readInt(); i > 0; i--) {
+                        inputs.add(readString(payload));
+                    }
+                    String output = readString(payload);
+                    Rule.Operation operation = Rule.Operation.valueOf(readString(payload));
+                    String equation = readString(payload);
+                    String semiring = readString(payload);
+                    rules.put(name, new Rule(namespace, inputs, output, operation, equation,
+                        semiring != null ? Semiring.valueOf(semiring) : null));
+                }
+                case DENSE_FACT -> {
+                    String name = readFactHeader(payload, factVersions, derivations);
+                    Precision precision = Precision.fromCode(payload.readInt());
+                    long[] shape = new long[payload.readInt()];
+                    for (int i = 0; i < shape.length; i++) {
+                        shape[i] = payload.readLong();
+                    }
+                    if (formatVersion == 1) {
+                        ByteBuffer values = ByteBuffer.wrap(content, content.length - payload.available(),
+                            payload.available()).order(ByteOrder.BIG_ENDIAN);
+                        facts.put(name, precision.read(values, shape));
+                    } else {
+                        pending = new PendingFact(name, precision, shape);
+                    }
+                }
+                case DENSE_VALUES -> {
+                    if (pending == null) {
+                        throw new IOException("事実の値のレコードの位置が不正です（レコード " + records + "）");
+                    }
+                    pending.fill(content);
+                }
+                case SPARSE_RELATION -> {
+                    String name = readFactHeader(payload, factVersions, derivations);
+                    relations.put(name, SparseRelation.readFrom(payload));
+                }
+                case BIT_RELATION -> {
+                    String name = readFactHeader(payload, factVersions, derivations);
+                    relations.put(name, BitRelation.readFrom(payload));
+                }
+                default -> throw new IOException("未対応のレコードの種類です: " + type);
+            }
+            if (pending != null && pending.isComplete()) {
+                facts.put(pending.name, pending.tensor());
+                pending = null;
+            }
+        }
+        if (version < 0) {
+            throw new IOException("スナップショットのヘッダーがありません");
+        }
+        return EngineSnapshot.restore(version, ruleVersion, facts, relations, factVersions, derivations, rules);
+    }
+
+    // ===== 内部処理 =====
+
+    private static void writeRecord(DataOutputStream out, byte type, ByteArrayOutputStream content)
+            throws IOException {
+        byte[] bytes = content.toByteArray();
+        writeRecord(out, type, bytes, bytes.length);
+    }
+
+    /**
+     * レコードを書き込む（内容は content の先頭 length バイト）
+     */
+    private static void writeRecord(DataOutputStream out, byte type, byte[] content, int length)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(content, 0, length);
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(content, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * 密な事実の値を C 順で最大 {@link #VALUES_CHUNK_BYTES} ずつのレコードに分けて書き込む
+     *
+     * @return 書き込んだレコード数
+     */
+    private static int writeValues(DataOutputStream out, INDArray tensor, Precision precision) throws IOException {
+        INDArray flat = tensor.reshape(tensor.length());
+        long length = flat.length();
+        int chunk = VALUES_CHUNK_BYTES / precision.width();
+        ByteBuffer values = ByteBuffer.allocate(VALUES_CHUNK_BYTES).order(ByteOrder.BIG_ENDIAN);
+        int records = 0;
+        for (long from = 0; from < length; from += chunk) {
+            values.clear();
+            precision.write(flat.get(NDArrayIndex.interval(from, Math.min(length, from + chunk))), values);
+            writeRecord(out, DENSE_VALUES, values.array(), values.position());
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * 値のレコードを読み込み中の密な事実
+     */
+    private static final class PendingFact {
+        private final String name;
+        private final Precision precision;
+        private final long[] shape;
+        private final INDArray flat;
+        private long filled;
+
+        PendingFact(String name, Precision precision, long[] shape) throws IOException {
+            this.name = name;
+            this.precision = precision;
+            this.shape = shape;
+            long length = 1;
+            try {
+                for (long dim : shape) {
+                    if (dim < 0) {
+                        throw new IOException("事実の形状が不正です: " + name);
+                    }
+                    length = Math.multiplyExact(length, dim);
+                }
+                Math.multiplyExact(length, precision.width());
+            } catch (ArithmeticException e) {
+                throw new IOException("事実の形状が不正です: " + name, e);
+            }
+            this.flat = length > 0 ? Nd4j.create(precision.dataType(), length) : null;
+        }
+
+        /**
+         * 値のレコードの内容を続きに書き込む
+         */
+        void fill(byte[] content) throws IOException {
+            int count = content.length / precision.width();
+            if (content.length % precision.width() != 0 || count == 0 || filled + count > flat.length()) {
+                throw new IOException("事実の値のレコードの大きさが不正です: " + name);
+            }
+            INDArray values = precision.read(ByteBuffer.wrap(content).order(ByteOrder.BIG_ENDIAN), new long[]{count});
+            flat.get(NDArrayIndex.interval(filled, filled + count)).assign(values);
+            filled += count;
+        }
+
+        boolean isComplete() {
+            return flat == null || filled == flat.length();
+        }
+
+        INDArray tensor() {
+            return flat != null
+                ? flat.reshape(shape)
+                : precision.read(ByteBuffer.allocate(0), shape);
+        }
+    }
+
+    /**
+     * 事実の共通部分（名前・事実のバージョン・導出したルール名）
+     */
+    private static void writeFactHeader(DataOutputStream out, EngineSnapshot snapshot, String name)
+            throws IOException {
+        writeString(out, name);
+        out.writeLong(snapshot.factVersion(name));
+        writeString(out, snapshot.derivedBy(name));
+    }
+
+    private static String readFactHeader(DataInputStream in, Map<String, Long> factVersions,
+                                         Map<String, String> derivations) throws IOException {
+        String name = readString(in);
+        factVersions.put(name, in.readLong());
+        String derivedBy = readString(in);
+        if (derivedBy != null) {
+            derivations.put(name, derivedBy);
+        }
+        return name;
+    }
+
+    /**
+     * 文字列を書き込む（長さ -1 は null）
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,557 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * コンパイル済みの実行計画
+ *
+ * ルール集合を依存関係のDAGとして解析し、トポロジカル順の層（ストラタ）に並べたものです。
+ * 事実名はコンパイル時にスロット番号へ解決され、各ステップのカーネルも事前に選択されるため、
+ * 実行時にはルールの解釈やルールごとのマップ検索を行いません。
+ *
+ * 循環依存を含むルールは最後の層にまとめられます（不動点実行で収束まで評価されます）。
+ *
+ * スロットの値は密なテンソル（{@link INDArray}）または関係（{@link Relation}）で、
+ * 入力に関係（疎・ビット）を含むステップはそれぞれの形式のカーネルで評価されます。
+ *
+ * 同じ層のルールは互いに依存しないため、{@link Parallelism} を指定すると
+ * 層の中のルールを ForkJoin プールで並列に評価します。結果は計画の順序でマージされるため、
+ * 逐次実行と同じ結果になります。
+ */
+public final class ExecutionPlan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionPlan.class);
+
+    /**
+     * 実行ステップ（コンパイル済みのルール）
+     *
+     * @param ruleName ルール名
+     * @param rule 元のルール
+     * @param inputSlots 入力事実のスロット番号（ルールの inputs と同じ順序）
+     * @param outputSlot 出力事実のスロット番号
+     * @param kernel 演算カーネル
+     * @param outputShape コンパイル時に解決した出力の形状（解決できない場合はnull）
+     */
+    record Step(
+        String ruleName,
+        Rule rule,
+        int[] inputSlots,
+        int outputSlot,
+        RuleKernels.Kernel kernel,
+        long[] outputShape
+    ) {}
+
+    /**
+     * 層の中のルールを並列に評価する条件
+     *
+     * @param pool 評価に使用するプール（nullの場合は常に逐次実行）
+     * @param minElements 層の入力要素数の合計がこの値未満の場合は逐次実行する
+     *                    （小さなスカラールールでスケジューリングのコストを払わないため）
+     */
+    record Parallelism(ForkJoinPool pool, long minElements) {
+
+        /** 常に逐次実行 */
+        static final Parallelism SEQUENTIAL = new Parallelism(null, Long.MAX_VALUE);
+    }
+
+    private final String[] slotNames;
+    private final Step[] steps;
+    private final int[] strataStarts;
+    private final int[][] consumers;
+    private final boolean cyclic;
+
+    private ExecutionPlan(String[] slotNames, Step[] steps, int[] strataStarts,
+                          int[][] consumers, boolean cyclic) {
+        this.slotNames = slotNames;
+        this.steps = steps;
+        this.strataStarts = strataStarts;
+        this.consumers = consumers;
+        this.cyclic = cyclic;
+    }
+
+    /**
+     * ルール集合をコンパイル
+     *
+     * @param rules 対象のルール（ルール名 → ルール）
+     * @param knownShape 現在の事実の形状を取得する関数（形状の解決に使用。未知の場合はnull）
+     */
+    static ExecutionPlan compile(Map<String, Rule> rules, Function<String, long[]> knownShape) {
+        // 出力事実 → その事実を生成するルール名
+        Map<String, List<String>> producers = new HashMap<>();
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            producers.computeIfAbsent(entry.getValue().output(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        // Kahn法で層に分割（各層の中はルール名順にして実行順を決定的にする）
+        Map<String, Integer> pending = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            int count = 0;
+            for (String input : new LinkedHashSet<>(entry.getValue().inputs())) {
+                for (String producer : producers.getOrDefault(input, List.of())) {
+                    dependents.computeIfAbsent(producer, k -> new ArrayList<>()).add(entry.getKey());
+                    count++;
+                }
+            }
+            pending.put(entry.getKey(), count);
+        }
+
+        List<List<String>> strata = new ArrayList<>();
+        List<String> layer = pending.entrySet().stream()
+            .filter(e -> e.getValue() == 0)
+            .map(Map.Entry::getKey)
+            .sorted()
+            .toList();
+        Set<String> placed = new HashSet<>();
+        while (!layer.isEmpty()) {
+            strata.add(layer);
+            placed.addAll(layer);
+            Set<String> nextLayer = new TreeSet<>();
+            for (String ruleName : layer) {
+                for (String dependent : dependents.getOrDefault(ruleName, List.of())) {
+                    if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                        nextLayer.add(dependent);
+                    }
+                }
+            }
+            layer = new ArrayList<>(nextLayer);
+        }
+
+        boolean cyclic = placed.size() < rules.size();
+        if (cyclic) {
+            List<String> cycle = rules.keySet().stream()
+                .filter(name -> !placed.contains(name))
+                .sorted()
+                .toList();
+            LOG.debug("循環依存のあるルールを最終層に配置: {}", cycle);
+            strata.add(cycle);
+        }
+
+        // 事実名をスロット番号に解決し、ステップを構築
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        List<Step> steps = new ArrayList<>();
+        int[] strataStarts = new int[strata.size()];
+        Map<String, long[]> shapes = new HashMap<>();
+        for (int s = 0; s < strata.size(); s++) {
+            strataStarts[s] = steps.size();
+            for (String ruleName : strata.get(s)) {
+                Rule rule = rules.get(ruleName);
+                int[] inputSlots = new int[rule.inputs().size()];
+                long[][] inputShapes = new long[inputSlots.length][];
+                for (int i = 0; i < inputSlots.length; i++) {
+                    String input = rule.inputs().get(i);
+                    inputSlots[i] = slots.computeIfAbsent(input, k -> slots.size());
+                    inputShapes[i] = shapes.containsKey(input) ? shapes.get(input) : knownShape.apply(input);
+                }
+                int outputSlot = slots.computeIfAbsent(rule.output(), k -> slots.size());
+                long[] outputShape = RuleKernels.resolveShape(rule, inputShapes);
+                if (outputShape != null) {
+                    shapes.put(rule.output(), outputShape);
+                }
+                steps.add(new Step(ruleName, rule, inputSlots, outputSlot,
+                    RuleKernels.forRule(rule), outputShape));
+            }
+        }
+
+        // スロット → そのスロットを入力に持つステップ番号
+        List<List<Integer>> consumerLists = new ArrayList<>();
+        for (int i = 0; i < slots.size(); i++) {
+            consumerLists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            for (int slot : steps.get(i).inputSlots()) {
+                List<Integer> list = consumerLists.get(slot);
+                if (list.isEmpty() || list.get(list.size() - 1) != i) {
+                    list.add(i);
+                }
+            }
+        }
+        int[][] consumers = consumerLists.stream()
+            .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
+
+        LOG.debug("実行計画をコンパイル: ルール{}個, 層{}個, スロット{}個",
+            steps.size(), strata.size(), slots.size());
+        return new ExecutionPlan(slots.keySet().toArray(new String[0]),
+            steps.toArray(new Step[0]), strataStarts, consumers, cyclic);
+    }
+
+    /**
+     * 実行計画を1回実行（トポロジカル順に各ルールを1度ずつ評価）
+     *
+     * @param source 事実と関係の参照元
+     * @param parallelism 層の中のルールを並列に評価する条件
+     * @return 評価されたルールの出力（評価順）と、それぞれを生成したルール
+     */
+    ForwardChainingResult execute(FactSource source, Parallelism parallelism) {
+        Object[] values = bind(source);
+        Derived derived = new Derived();
+        int evaluations = 0;
+        for (int s = 0; s < strataStarts.length; s++) {
+            int start = strataStarts[s];
+            int end = stratumEnd(s);
+            Object[] results = evaluateStratum(start, end, values, null, parallelism);
+            // 計画の順序でマージ（同じ事実を生成するルールが複数ある場合は後のルールが優先）
+            for (int i = start; i < end; i++) {
+                Object result = results[i - start];
+                if (result != null) {
+                    evaluations++;
+                    values[steps[i].outputSlot()] = result;
+                    derived.put(slotNames[steps[i].outputSlot()], result, steps[i].ruleName());
+                }
+            }
+        }
+        return derived.toResult(true, 1, evaluations);
+    }
+
+    /**
+     * 実行計画をバッチで1回実行（N個のエンティティをまとめて評価）
+     *
+     * エンティティごとの事実はバッチ軸に積み重ねた値を、それ以外の事実は共有の値を使用します。
+     * 各ルールはバッチ全体に対して1回だけ評価されます。
+     *
+     * @param lookup 共有の事実を取得する関数（関係は密な行列に変換して返すこと）
+     * @param perEntity エンティティごとの事実（事実名 → バッチ軸に積み重ねた値）
+     * @param batchSize エンティティ数
+     * @return 評価されたルールの出力（評価順）
+     */
+    Map<String, BatchKernels.Batched> executeBatch(Function<String, INDArray> lookup,
+                                                   Map<String, BatchKernels.Batched> perEntity,
+                                                   long batchSize) {
+        BatchKernels.Batched[] values = new BatchKernels.Batched[slotNames.length];
+        for (int i = 0; i < slotNames.length; i++) {
+            BatchKernels.Batched stacked = perEntity.get(slotNames[i]);
+            INDArray shared = stacked == null ? lookup.apply(slotNames[i]) : null;
+            values[i] = stacked != null ? stacked : shared != null ? BatchKernels.Batched.shared(shared) : null;
+        }
+
+        Map<String, BatchKernels.Batched> derived = new LinkedHashMap<>();
+        for (Step step : steps) {
+            int[] inputSlots = step.inputSlots();
+            BatchKernels.Batched[] inputs = new BatchKernels.Batched[inputSlots.length];
+            boolean ready = true;
+            for (int i = 0; i < inputSlots.length && ready; i++) {
+                inputs[i] = values[inputSlots[i]];
+                ready = inputs[i] != null;
+            }
+            if (!ready) {
+                LOG.debug("バッチ実行: ルール '{}' の入力が揃わないため評価しません: {}",
+                    step.ruleName(), step.rule().inputs());
+                continue;
+            }
+            BatchKernels.Batched result = BatchKernels.apply(step.rule(), inputs, batchSize);
+            values[step.outputSlot()] = result;
+            derived.put(slotNames[step.outputSlot()], result);
+        }
+        LOG.debug("バッチ実行: エンティティ{}件, ルール{}個", batchSize, steps.length);
+        return derived;
+    }
+
+    /**
+     * 不動点まで実行（セミナイーブ評価）
+     *
+     * 1ラウンド目は全ステップを評価します。以降は、直前に値が変化したスロットを
+     * 入力に持つステップだけを評価します。トポロジカル順に実行するため、
+     * 同じラウンド内で後続のステップへの変化はそのラウンドのうちに伝播し、
+     * 循環依存による変化だけが次のラウンドに持ち越されます。
+     *
+     * 層の中のルールは条件に応じて並列に評価しますが、循環依存を含む最後の層は、
+     * 同じ層の中で変化が伝播するため常に逐次実行します。
+     */
+    ForwardChainingResult executeToFixpoint(FactSource source, double epsilon, int maxIterations,
+                                            Parallelism parallelism) {
+        Object[] values = bind(source);
+        Derived derived = new Derived();
+        BitSet agenda = new BitSet(steps.length);
+        agenda.set(0, steps.length);
+        int rounds = 0;
+        int evaluations = 0;
+
+        while (!agenda.isEmpty()) {
+            if (rounds >= maxIterations) {
+                LOG.warn("不動点前向き推論が{}ラウンドで収束しませんでした", maxIterations);
+                return derived.toResult(false, rounds, evaluations);
+            }
+            rounds++;
+
+            BitSet changed = new BitSet(slotNames.length);
+            BitSet next = new BitSet(steps.length);
+            for (int s = 0; s < strataStarts.length; s++) {
+                int start = strataStarts[s];
+                int end = stratumEnd(s);
+                boolean acyclicStratum = !(cyclic && s == strataStarts.length - 1);
+
+                // 依存のない層は、評価対象のステップを先にまとめて評価する
+                Object[] results = null;
+                if (acyclicStratum) {
+                    BitSet selected = new BitSet(end - start);
+                    for (int i = start; i < end; i++) {
+                        if (agenda.get(i) || anyChanged(steps[i].inputSlots(), changed)) {
+                            selected.set(i - start);
+                        }
+                    }
+                    results = evaluateStratum(start, end, values, selected, parallelism);
+                }
+
+                for (int i = start; i < end; i++) {
+                    Step step = steps[i];
+                    Object result;
+                    if (results != null) {
+                        result = results[i - start];
+                    } else if (agenda.get(i) || anyChanged(step.inputSlots(), changed)) {
+                        result = evaluate(step, values);
+                    } else {
+                        continue;
+                    }
+                    if (result == null) {
+                        continue;
+                    }
+                    evaluations++;
+                    int out = step.outputSlot();
+                    if (isConverged(values[out], result, epsilon)) {
+                        continue;
+                    }
+                    values[out] = result;
+                    changed.set(out);
+                    derived.put(slotNames[out], result, step.ruleName());
+                    // 既に通過したステップ（循環依存）だけを次のラウンドに回す
+                    for (int consumer : consumers[out]) {
+                        if (consumer <= i) {
+                            next.set(consumer);
+                        }
+                    }
+                }
+            }
+            LOG.debug("ラウンド{}: 変化した事実={}個", rounds, changed.cardinality());
+            agenda = next;
+        }
+
+        return derived.toResult(true, rounds, evaluations);
+    }
+
+    /**
+     * 導出された値の集計（密な事実と関係を分けて保持）
+     */
+    private static final class Derived {
+        final Map<String, INDArray> facts = new LinkedHashMap<>();
+        final Map<String, Relation> relations = new LinkedHashMap<>();
+        final Map<String, String> derivedBy = new LinkedHashMap<>();
+
+        void put(String name, Object value, String ruleName) {
+            if (value instanceof Relation relation) {
+                facts.remove(name);
+                relations.put(name, relation);
+            } else {
+                relations.remove(name);
+                facts.put(name, (INDArray) value);
+            }
+            derivedBy.put(name, ruleName);
+        }
+
+        ForwardChainingResult toResult(boolean converged, int rounds, int evaluations) {
+            return new ForwardChainingResult(converged, rounds, evaluations, facts, relations, derivedBy);
+        }
+    }
+
+    private int stratumEnd(int stratum) {
+        return stratum + 1 < strataStarts.length ? strataStarts[stratum + 1] : steps.length;
+    }
+
+    /**
+     * 層のステップを評価（結果はマージせずに返す）
+     *
+     * 層の中のステップは互いの出力を入力に持たないため、評価順序は結果に影響しません。
+     * 並列化の条件を満たす場合は ForkJoin プールで評価し、満たさない場合は逐次評価します。
+     *
+     * @param selected 評価するステップ（層の先頭からの位置。nullの場合は全て）
+     * @return 各ステップの結果（評価しなかった・入力が揃っていない場合はnull）
+     */
+    private Object[] evaluateStratum(int start, int end, Object[] values,
+                                     BitSet selected, Parallelism parallelism) {
+        Object[] results = new Object[end - start];
+        int count = selected == null ? end - start : selected.cardinality();
+        if (count >= 2 && parallelism.pool() != null
+                && inputElements(start, end, values, selected) >= parallelism.minElements()) {
+            List<ForkJoinTask<Object>> tasks = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                Step step = steps[i];
+                tasks.add(selected == null || selected.get(i - start)
+                    ? parallelism.pool().submit(() -> evaluate(step, values))
+                    : null);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i) != null) {
+                    results[i] = tasks.get(i).join();
+                }
+            }
+            LOG.debug("層を並列に評価: ステップ{}個", count);
+            return results;
+        }
+        for (int i = start; i < end; i++) {
+            if (selected == null || selected.get(i - start)) {
+                results[i - start] = evaluate(steps[i], values);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 層で評価するステップの入力要素数の合計（並列化の判定に使用。関係は非ゼロ要素の数）
+     */
+    private long inputElements(int start, int end, Object[] values, BitSet selected) {
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            if (selected != null && !selected.get(i - start)) {
+                continue;
+            }
+            for (int slot : steps[i].inputSlots()) {
+                if (values[slot] instanceof INDArray dense) {
+                    total += dense.length();
+                } else if (values[slot] instanceof Relation relation) {
+                    total += relation.nnz();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 事実をスロットに割り当て（密な事実がなければ関係）
+     */
+    private Object[] bind(FactSource source) {
+        Object[] values = new Object[slotNames.length];
+        for (int i = 0; i < slotNames.length; i++) {
+            INDArray dense = source.getFact(slotNames[i]);
+            values[i] = dense != null ? dense : source.getRelation(slotNames[i]);
+        }
+        return values;
+    }
+
+    /**
+     * ステップを評価（入力が揃っていない場合はnull）
+     *
+     * 入力が全て密なテンソルの場合はコンパイル済みのカーネルを、
+     * 関係を含む場合は関係のカーネルを使用します。
+     * 循環のある関係の SUM_PRODUCT の推移閉包は収束しないため、そのルールだけを失敗として
+     * 出力を設定せず（null）、ほかのルールの評価は続けます。
+     */
+    private Object evaluate(Step step, Object[] values) {
+        int[] inputSlots = step.inputSlots();
+        Object[] inputs = new Object[inputSlots.length];
+        boolean dense = true;
+        for (int i = 0; i < inputSlots.length; i++) {
+            inputs[i] = values[inputSlots[i]];
+            if (inputs[i] == null) {
+                return null;
+            }
+            dense &= inputs[i] instanceof INDArray;
+        }
+        Object result;
+        try {
+            if (dense) {
+                INDArray[] tensors = new INDArray[inputs.length];
+                for (int i = 0; i < inputs.length; i++) {
+                    tensors[i] = (INDArray) inputs[i];
+                }
+                result = step.kernel().apply(tensors);
+            } else {
+                result = RuleKernels.applyRelations(step.rule(), inputs);
+            }
+        } catch (TransitiveClosure.DivergenceException e) {
+            LOG.warn("ルール '{}' を評価できないため出力を設定しません: {}", step.ruleName(), e.getMessage());
+            return null;
+        }
+        LOG.debug("推論: {} -> {} (namespace: {})",
+            step.rule().inputs(), step.rule().output(), step.rule().namespace());
+        return result;
+    }
+
+    private static boolean anyChanged(int[] inputSlots, BitSet changed) {
+        for (int slot : inputSlots) {
+            if (changed.get(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 新しい値が以前の値から許容誤差内に収まっているかを判定
+     */
+    private static boolean isConverged(Object previous, Object current, double epsilon) {
+        if (previous instanceof SparseRelation before && current instanceof SparseRelation after) {
+            return after.maxDifference(before) <= epsilon;
+        }
+        if (previous instanceof BitRelation before && current instanceof BitRelation after) {
+            return after.equals(before);
+        }
+        if (!(previous instanceof INDArray before) || !(current instanceof INDArray after)
+                || !before.equalShapes(after)) {
+            return false;
+        }
+        if (before.dataType() != after.dataType()) {
+            before = Precision.decode(before).castTo(after.dataType());
+        }
+        return Transforms.abs(after.sub(before)).maxNumber().doubleValue() <= epsilon;
+    }
+
+    // ===== 実行計画の参照用 =====
+
+    /**
+     * 層ごとのルール名（トポロジカル順）
+     */
+    public List<List<String>> strata() {
+        List<List<String>> result = new ArrayList<>();
+        for (int s = 0; s < strataStarts.length; s++) {
+            int end = stratumEnd(s);
+            List<String> names = new ArrayList<>();
+            for (int i = strataStarts[s]; i < end; i++) {
+                names.add(steps[i].ruleName());
+            }
+            result.add(names);
+        }
+        return result;
+    }
+
+    /**
+     * コンパイル時に解決した出力の形状（事実名 → 形状）
+     */
+    public Map<String, long[]> resolvedShapes() {
+        Map<String, long[]> result = new LinkedHashMap<>();
+        for (Step step : steps) {
+            if (step.outputShape() != null) {
+                result.put(step.rule().output(), step.outputShape().clone());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 実行計画が参照・導出する事実名（全ステップの入力と出力）
+     */
+    List<String> factNames() {
+        return List.of(slotNames);
+    }
+
+    /**
+     * ステップ数（ルール数）
+     */
+    public int stepCount() {
+        return steps.length;
+    }
+
+    /**
+     * 循環依存を含むかどうか
+     */
+    public boolean hasCycles() {
+        return cyclic;
+    }
+}
@@ -0,0 +1,25 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * 推論時の事実の参照元
+ *
+ * 実行計画は、事実名ごとに密なテンソルを参照し、なければ関係（疎・ビット）を参照します。
+ * エンジンのスナップショットとセッションがこのインターフェースを実装します。
+ */
+@FunctionalInterface
+interface FactSource {
+
+    /**
+     * 密な事実を取得（存在しない場合はnull）
+     */
+    INDArray getFact(String name);
+
+    /**
+     * 関係（疎・ビット）を取得（存在しない場合はnull）
+     */
+    default Relation getRelation(String name) {
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+package ai.tensorlogic.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 前向き推論の結果を保持するレコード
+ *
+ * @param converged 許容誤差内で収束したかどうか（最大反復回数に達した場合はfalse）
+ * @param rounds 実行したラウンド数
+ * @param ruleEvaluations ルールを評価した総回数
+ * @param derivedFacts 導出（または更新）された密な事実とその最終値
+ * @param derivedRelations 導出（または更新）された関係（疎・ビット）とその最終値
+ * @param derivedBy 導出された事実名 → その値を生成したルール名
+ */
+public record ForwardChainingResult(
+    boolean converged,
+    int rounds,
+    int ruleEvaluations,
+    @JsonIgnore Map<String, INDArray> derivedFacts,
+    @JsonIgnore Map<String, Relation> derivedRelations,
+    Map<String, String> derivedBy
+) {
+
+    /**
+     * JSON出力用に導出された事実を人間が読める形式で取得
+     */
+    public Map<String, String> getDerivedFactsFormatted() {
+        Map<String, String> formatted = new HashMap<>();
+        for (Map.Entry<String, INDArray> entry : derivedFacts.entrySet()) {
+            INDArray array = entry.getValue();
+            if (array.isScalar()) {
+                formatted.put(entry.getKey(), String.format("%.4f", array.getDouble(0)));
+            } else if (array.isVector()) {
+                formatted.put(entry.getKey(), array.toString());
+            } else {
+                formatted.put(entry.getKey(), array.shapeInfoToString());
+            }
+        }
+        derivedRelations.forEach((name, relation) -> formatted.put(name, relation.toString()));
+        return formatted;
+    }
+
+    /**
+     * 導出された事実の数
+     */
+    public int getDerivedFactCount() {
+        return derivedFacts.size() + derivedRelations.size();
+    }
+}
@@ -0,0 +1,148 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 後向き推論の表（ゴールのメモ化）
+ *
+ * (目標, ネームスペース) ごとに解いた証明を保持し、呼び出しをまたいで再利用します。
+ * 各証明には、探索中に参照した事実（見つからなかった事実を含む）とそのバージョン、
+ * およびそれぞれの事実を生成するルールが記録されます。参照した事実のいずれかが書き換えられるか、
+ * それを生成するルールが追加・変更された場合にだけ、その証明は無効になります
+ * （証明に関係しない事実を生成するルールの追加では無効になりません）。
+ */
+final class GoalTable {
+
+    private record Key(String goal, String namespace) {}
+
+    /**
+     * 表に保持する証明
+     *
+     * @param ruleVersion 証明したときのルール集合のバージョン（一致する場合はルールの確認を省略）
+     * @param success 目標が達成可能かどうか
+     * @param path 推論パス
+     * @param requiredFacts 証明で使用・導出した事実
+     * @param dependencies 探索中に参照した事実とそのバージョン（存在しなかった事実は0）
+     * @param producers 探索中に参照した事実ごとの、その事実を生成するルール（ルール名 → ルール）
+     */
+    record Entry(
+        long ruleVersion,
+        boolean success,
+        List<String> path,
+        Map<String, INDArray> requiredFacts,
+        Map<String, Long> dependencies,
+        Map<String, Map<String, Rule>> producers
+    ) {
+
+        /**
+         * スナップショットを基に証明を作成
+         */
+        static Entry of(EngineSnapshot snapshot, boolean success, List<String> path,
+                        Map<String, INDArray> requiredFacts, Collection<String> consulted) {
+            Map<String, Long> dependencies = new LinkedHashMap<>();
+            Map<String, Map<String, Rule>> producers = new LinkedHashMap<>();
+            for (String name : consulted) {
+                dependencies.put(name, snapshot.factVersion(name));
+                producers.computeIfAbsent(name, k -> producersOf(snapshot, k));
+            }
+            return new Entry(snapshot.ruleVersion(), success, List.copyOf(path),
+                Map.copyOf(requiredFacts), Map.copyOf(dependencies), Map.copyOf(producers));
+        }
+
+        /**
+         * スナップショットに対してこの証明がまだ有効かどうか
+         *
+         * ルール集合が変更されていても、参照した事実を生成するルールが同じであれば有効です。
+         */
+        boolean isValid(EngineSnapshot snapshot) {
+            for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+                if (snapshot.factVersion(dependency.getKey()) != dependency.getValue()) {
+                    return false;
+                }
+            }
+            if (ruleVersion == snapshot.ruleVersion()) {
+                return true;
+            }
+            for (Map.Entry<String, Map<String, Rule>> producer : producers.entrySet()) {
+                if (!producer.getValue().equals(producersOf(snapshot, producer.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 事実を生成するルール（ルール名 → ルール）
+         */
+        private static Map<String, Rule> producersOf(EngineSnapshot snapshot, String name) {
+            Map<String, Rule> producers = new HashMap<>();
+            for (String ruleName : snapshot.index().producersOf(name)) {
+                producers.put(ruleName, snapshot.rules().get(ruleName));
+            }
+            return Map.copyOf(producers);
+        }
+
+        /**
+         * 呼び出し元が変更しても表に影響しない結果を作成
+         */
+        BackwardChainingResult toResult(String goal) {
+            return new BackwardChainingResult(success, goal,
+                new ArrayList<>(path), new LinkedHashMap<>(requiredFacts));
+        }
+    }
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * スナップショットに対して有効な証明を取得（無効な証明は表から削除）
+     *
+     * @return 有効な証明（存在しない場合はnull）
+     */
+    Entry lookup(String goal, String namespaceFilter, EngineSnapshot snapshot) {
+        Key key = new Key(goal, normalize(namespaceFilter));
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isValid(snapshot)) {
+            hits.increment();
+            return entry;
+        }
+        if (entry != null) {
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 証明を保持（上限を超えた場合は表全体を破棄してから追加）
+     */
+    void store(String goal, String namespaceFilter, Entry entry, int maxEntries) {
+        if (entries.size() >= maxEntries) {
+            entries.clear();
+        }
+        entries.put(new Key(goal, normalize(namespaceFilter)), entry);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    GoalTableStats stats() {
+        return new GoalTableStats(entries.size(), hits.sum(), misses.sum());
+    }
+
+    private static String normalize(String namespaceFilter) {
+        return namespaceFilter == null ? "*" : namespaceFilter;
+    }
+}
@@ -0,0 +1,23 @@
+package ai.tensorlogic.core;
+
+/**
+ * 後向き推論の表（メモ化）の統計情報
+ * 
+ * @param entries 表に保持している証明の数
+ * @param hits 表の証明を再利用した回数
+ * @param misses 表に有効な証明がなく探索した回数
+ */
+public record GoalTableStats(
+    int entries,
+    long hits,
+    long misses
+) {
+    
+    /**
+     * 再利用率（0.0〜1.0）
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,194 @@
+package ai.tensorlogic.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * 導出された事実の差分更新（インクリメンタルなビュー保守）
+ *
+ * 前向き推論で導出された事実には、その値を生成したルールが記録されています。
+ * 入力の事実が更新・削除されたとき、その事実から依存関係をたどって到達できる
+ * 導出済みの事実だけを、依存の順序で再計算します。
+ * 処理量はルール全体の数ではなく、変更の影響を受ける事実の数に比例します。
+ *
+ * 削除は DRed（Delete and Rederive）方式で行います。
+ * 影響を受ける導出済みの事実をいったん全て削除（過剰削除）してから、
+ * 残った事実から導出できるものを再導出します。
+ *
+ * 作業中のビルダーに対して適用されるため、更新と差分の反映は1つのバージョンとして公開されます。
+ */
+final class IncrementalMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalMaintenance.class);
+
+    private IncrementalMaintenance() {
+    }
+
+    /**
+     * 更新された事実の下流にある導出済みの事実を再計算
+     *
+     * @param changed 更新された事実名
+     * @return 再計算した事実の数
+     */
+    static int propagate(EngineSnapshot.Builder builder, Collection<String> changed) {
+        Map<String, String> affected = downstream(builder, changed);
+        int recomputed = 0;
+        for (String fact : order(builder, affected)) {
+            String ruleName = affected.get(fact);
+            Object value = evaluate(builder, ruleName);
+            if (value == null) {
+                // 入力が揃わなくなった・評価できなくなった導出は取り消す
+                builder.removeFact(fact);
+                LOG.debug("差分更新: '{}' を導出できないため削除", fact);
+            } else {
+                builder.putDerived(fact, value, ruleName);
+                recomputed++;
+            }
+        }
+        if (!affected.isEmpty()) {
+            LOG.debug("差分更新: {} の下流の事実を{}個再計算", changed, recomputed);
+        }
+        return recomputed;
+    }
+
+    /**
+     * 事実を削除し、その事実に依存する導出済みの事実を DRed 方式で保守
+     *
+     * @return 削除された事実の数（再導出されたものを除く）
+     */
+    static int retract(EngineSnapshot.Builder builder, String name) {
+        Map<String, String> affected = downstream(builder, List.of(name));
+        List<String> order = order(builder, affected);
+        builder.removeFact(name);
+
+        // 1. 過剰削除: 影響を受ける導出済みの事実を全て削除
+        for (String fact : order) {
+            builder.removeFact(fact);
+        }
+
+        // 2. 再導出: 残った事実から導出できるものを依存の順序で復元
+        int removed = 0;
+        for (String fact : order) {
+            String ruleName = rederive(builder, fact, affected.get(fact));
+            if (ruleName == null) {
+                removed++;
+                LOG.debug("DRed: '{}' は再導出できないため削除", fact);
+            } else {
+                LOG.debug("DRed: '{}' をルール '{}' で再導出", fact, ruleName);
+            }
+        }
+        return removed + 1;
+    }
+
+    /**
+     * 記録されたルール、または同じネームスペースで同じ事実を生成する別のルールで再導出
+     *
+     * @return 再導出に使用したルール名（再導出できない場合はnull）
+     */
+    private static String rederive(EngineSnapshot.Builder builder, String fact, String ruleName) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(ruleName);
+        String namespace = builder.rule(ruleName).namespace();
+        builder.index().producersOf(fact).stream()
+            .filter(other -> !other.equals(ruleName))
+            .filter(other -> builder.rule(other).namespace().equals(namespace))
+            .sorted()
+            .forEach(candidates::add);
+
+        for (String candidate : candidates) {
+            Object value = evaluate(builder, candidate);
+            if (value != null) {
+                builder.putDerived(fact, value, candidate);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 変更された事実から到達できる導出済みの事実（事実名 → その値を生成したルール名）
+     */
+    private static Map<String, String> downstream(EngineSnapshot.Builder builder, Collection<String> changed) {
+        Map<String, String> affected = new LinkedHashMap<>();
+        Deque<String> queue = new ArrayDeque<>(changed);
+        while (!queue.isEmpty()) {
+            String fact = queue.poll();
+            for (String ruleName : builder.index().consumersOf(fact)) {
+                String output = builder.rule(ruleName).output();
+                // 現在の値がこのルールで導出されたものだけが保守の対象
+                if (ruleName.equals(builder.derivedBy(output)) && !affected.containsKey(output)) {
+                    affected.put(output, ruleName);
+                    queue.add(output);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * 影響を受ける事実を依存の順序に並べる（影響範囲の中だけでのKahn法）
+     *
+     * 循環依存がある場合、残った事実は名前順に末尾へ並べます。
+     */
+    private static List<String> order(EngineSnapshot.Builder builder, Map<String, String> affected) {
+        Map<String, Integer> pending = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (Map.Entry<String, String> entry : affected.entrySet()) {
+            int count = 0;
+            for (String input : new LinkedHashSet<>(builder.rule(entry.getValue()).inputs())) {
+                if (affected.containsKey(input) && !input.equals(entry.getKey())) {
+                    dependents.computeIfAbsent(input, k -> new ArrayList<>()).add(entry.getKey());
+                    count++;
+                }
+            }
+            pending.put(entry.getKey(), count);
+        }
+
+        List<String> order = new ArrayList<>(affected.size());
+        Deque<String> ready = new ArrayDeque<>();
+        pending.forEach((fact, count) -> {
+            if (count == 0) {
+                ready.add(fact);
+            }
+        });
+        while (!ready.isEmpty()) {
+            String fact = ready.poll();
+            order.add(fact);
+            for (String dependent : dependents.getOrDefault(fact, List.of())) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (order.size() < affected.size()) {
+            affected.keySet().stream()
+                .filter(fact -> !order.contains(fact))
+                .sorted()
+                .forEach(order::add);
+        }
+        return order;
+    }
+
+    /**
+     * 作業中の事実（密・疎）に対してルールを評価（入力が揃っていない場合はnull）
+     *
+     * 更新後の入力で評価できないルール（収束しない推移閉包、形状の合わない入力など）は、
+     * 前向き推論と同じくそのルールだけを失敗（null）とし、事実の更新そのものは取り消しません。
+     */
+    private static Object evaluate(EngineSnapshot.Builder builder, String ruleName) {
+        Rule rule = builder.rule(ruleName);
+        Object[] inputs = new Object[rule.inputs().size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = builder.value(rule.inputs().get(i));
+        }
+        try {
+            return RuleKernels.apply(rule, inputs);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            LOG.warn("差分更新: ルール '{}' を評価できないため '{}' を導出しません: {}",
+                ruleName, rule.output(), e.getMessage());
+            return null;
+        }
+    }
+}
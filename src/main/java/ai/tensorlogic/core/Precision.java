@@ -0,0 +1,259 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * 事実を保持する精度
+ *
+ * 確信度のような値は倍精度を必要としないため、大きな事実を低い精度で保持して
+ * メモリ使用量と帯域を削減できます（FLOAT32 で1/2、BFLOAT16 で1/4、INT8 で1/8）。
+ *
+ * 低い精度で保持した事実も、ルールの評価では FLOAT32 以上に拡張してから演算します（混合精度）。
+ * 入力に FLOAT64 が含まれる場合は FLOAT64、それ以外は FLOAT32 で積和を計算し、
+ * 導出した事実はその精度のまま保持します。
+ */
+public enum Precision {
+
+    /** 倍精度（既定） */
+    FLOAT64(DataType.DOUBLE, 1, 8),
+
+    /** 単精度 */
+    FLOAT32(DataType.FLOAT, 2, 4),
+
+    /** bfloat16（指数部は単精度と同じ8ビット、仮数部は7ビット） */
+    BFLOAT16(DataType.BFLOAT16, 3, 2),
+
+    /** 8ビット整数への量子化（[-1, 1] の値を1/127刻みで保持） */
+    INT8(DataType.INT8, 4, 1);
+
+    /** INT8 の量子化の刻み幅の逆数 */
+    private static final double INT8_SCALE = 127.0;
+
+    private final DataType dataType;
+    private final int code;
+    private final int width;
+
+    Precision(DataType dataType, int code, int width) {
+        this.dataType = dataType;
+        this.code = code;
+        this.width = width;
+    }
+
+    public DataType dataType() {
+        return dataType;
+    }
+
+    /**
+     * ファイル形式で使用する番号（列挙の順序に依存しない）
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * 1要素のバイト数
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * ファイル形式の番号から取得
+     *
+     * @throws IllegalArgumentException 未対応の番号の場合
+     */
+    public static Precision fromCode(int code) {
+        for (Precision precision : values()) {
+            if (precision.code == code) {
+                return precision;
+            }
+        }
+        throw new IllegalArgumentException("未対応の精度の番号: " + code);
+    }
+
+    /**
+     * テンソルの型に対応する精度を取得
+     *
+     * @throws IllegalArgumentException 対応する精度がない型の場合
+     */
+    public static Precision of(DataType dataType) {
+        for (Precision precision : values()) {
+            if (precision.dataType == dataType) {
+                return precision;
+            }
+        }
+        throw new IllegalArgumentException("事実として保持できない型です: " + dataType);
+    }
+
+    /**
+     * この精度で保持したテンソルの値を C 順でバッファに書き込む（INT8 は量子化した値）
+     */
+    public void write(INDArray tensor, ByteBuffer out) {
+        INDArray flat = tensor.reshape(tensor.length());
+        switch (this) {
+            case FLOAT64 -> out.asDoubleBuffer().put(flat.toDoubleVector());
+            case FLOAT32 -> out.asFloatBuffer().put(flat.toFloatVector());
+            case BFLOAT16 -> {
+                // bfloat16 は単精度の上位16ビット（元の値は bfloat16 なので丸めは不要）
+                for (float value : flat.castTo(DataType.FLOAT).toFloatVector()) {
+                    out.putShort((short) (Float.floatToRawIntBits(value) >>> 16));
+                }
+                return;
+            }
+            case INT8 -> {
+                for (double code : flat.castTo(DataType.DOUBLE).toDoubleVector()) {
+                    out.put((byte) code);
+                }
+                return;
+            }
+        }
+        out.position(out.position() + (int) flat.length() * width);
+    }
+
+    /**
+     * {@link #write} で書き込んだ値をバッファから読み込み、ヒープ上のテンソルを作成
+     */
+    public INDArray read(ByteBuffer in, long[] shape) {
+        int length = 1;
+        for (long dim : shape) {
+            length = Math.multiplyExact(length, (int) dim);
+        }
+        double[] values = new double[length];
+        switch (this) {
+            case FLOAT64 -> in.asDoubleBuffer().get(values);
+            case FLOAT32 -> {
+                for (int i = 0; i < length; i++) {
+                    values[i] = in.getFloat(in.position() + i * 4);
+                }
+            }
+            case BFLOAT16 -> {
+                for (int i = 0; i < length; i++) {
+                    values[i] = Float.intBitsToFloat(in.getShort(in.position() + i * 2) << 16);
+                }
+            }
+            case INT8 -> {
+                for (int i = 0; i < length; i++) {
+                    values[i] = in.get(in.position() + i);
+                }
+            }
+        }
+        in.position(in.position() + length * width);
+        INDArray tensor = Nd4j.create(values, shape);
+        return this == FLOAT64 ? tensor : tensor.castTo(dataType);
+    }
+
+    /**
+     * 名前から取得（"float64", "float32", "bfloat16", "int8"。大文字・小文字は区別しない）
+     *
+     * @throws IllegalArgumentException 未対応の名前の場合
+     */
+    public static Precision parse(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "float64", "double", "fp64" -> FLOAT64;
+            case "float32", "float", "fp32" -> FLOAT32;
+            case "bfloat16", "bf16" -> BFLOAT16;
+            case "int8" -> INT8;
+            default -> throw new IllegalArgumentException("未対応の精度: " + name
+                + "（float64, float32, bfloat16, int8 のいずれかを指定してください）");
+        };
+    }
+
+    /**
+     * この精度で保持するテンソルに変換
+     *
+     * @throws IllegalArgumentException INT8 で [-1, 1] の範囲外の値を含む場合
+     */
+    public INDArray store(INDArray tensor) {
+        if (tensor.dataType() == dataType) {
+            return tensor;
+        }
+        if (this != INT8) {
+            return tensor.castTo(dataType);
+        }
+        double[] values = decode(tensor).reshape(tensor.length()).toDoubleVector();
+        double[] codes = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!(Math.abs(values[i]) <= 1.0)) {
+                throw new IllegalArgumentException("INT8 で保持できるのは [-1, 1] の値のみです: " + values[i]);
+            }
+            codes[i] = Math.round(values[i] * INT8_SCALE);
+        }
+        return Nd4j.create(codes, tensor.shape()).castTo(DataType.INT8);
+    }
+
+    /**
+     * 値として読み出せる形に変換（INT8 は量子化を戻した FLOAT32、それ以外・nullはそのまま）
+     */
+    public static INDArray decode(INDArray tensor) {
+        return tensor != null && tensor.dataType() == DataType.INT8
+            ? tensor.castTo(DataType.FLOAT).muli(1.0 / INT8_SCALE)
+            : tensor;
+    }
+
+    /**
+     * ルールの入力を積和を計算する精度に揃える
+     *
+     * 入力に FLOAT64 が含まれる場合は FLOAT64、それ以外は FLOAT32 に拡張します。
+     * 全ての入力が既にその精度の場合は、同じ配列をそのまま返します。
+     */
+    static INDArray[] widen(INDArray[] inputs) {
+        DataType target = accumulationType(inputs);
+        INDArray[] result = inputs;
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].dataType() != target) {
+                if (result == inputs) {
+                    result = inputs.clone();
+                }
+                result[i] = decode(inputs[i]).castTo(target);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 関係を含むルールの入力のうち、密なテンソルを積和を計算する精度に揃える
+     */
+    static Object[] widen(Object[] inputs) {
+        int dense = 0;
+        for (Object input : inputs) {
+            if (input instanceof INDArray) {
+                dense++;
+            }
+        }
+        INDArray[] tensors = new INDArray[dense];
+        int[] positions = new int[dense];
+        int n = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] instanceof INDArray tensor) {
+                tensors[n] = tensor;
+                positions[n++] = i;
+            }
+        }
+        INDArray[] widened = widen(tensors);
+        if (widened == tensors) {
+            return inputs;
+        }
+        Object[] result = inputs.clone();
+        for (int i = 0; i < n; i++) {
+            result[positions[i]] = widened[i];
+        }
+        return result;
+    }
+
+    /**
+     * 積和を計算する精度（FLOAT64 を含めば FLOAT64、それ以外は FLOAT32）
+     */
+    static DataType accumulationType(INDArray[] inputs) {
+        for (INDArray input : inputs) {
+            if (input.dataType() == DataType.DOUBLE) {
+                return DataType.DOUBLE;
+            }
+        }
+        return DataType.FLOAT;
+    }
+}
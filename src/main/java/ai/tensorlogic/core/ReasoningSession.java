@@ -0,0 +1,176 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * リクエスト単位の推論セッション（コピーオンライトのオーバーレイ）
+ *
+ * 開始時点のエンジンのスナップショットを基に、リクエスト固有の事実とルールを重ねて推論します。
+ * 事実の参照はセッション固有の事実 → 基のスナップショットの順で行われ、
+ * 基のテンソルはコピーされません。セッションで追加・導出した内容はエンジンに反映されず、
+ * {@link #close()} で破棄されます。
+ *
+ * 1つのリクエスト（スレッド）内で使用することを想定しており、スレッドセーフではありません。
+ *
+ * <pre>
+ * try (ReasoningSession session = engine.openSession()) {
+ *     session.addFact("credit_score_good", tensor);
+ *     session.forwardChain("loan-approval");
+ *     INDArray approved = session.getFact("loan_approved");
+ * }
+ * </pre>
+ */
+public final class ReasoningSession implements FactSource, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReasoningSession.class);
+
+    private final TensorLogicEngine engine;
+    private final EngineSnapshot base;
+    private final Map<String, INDArray> localFacts = new HashMap<>();
+    private final Map<String, Relation> localRelations = new HashMap<>();
+
+    /** ルールの参照先（セッション固有のルールを追加するまでは基のスナップショット） */
+    private EngineSnapshot ruleView;
+
+    ReasoningSession(TensorLogicEngine engine, EngineSnapshot base) {
+        this.engine = engine;
+        this.base = base;
+        this.ruleView = base;
+    }
+
+    /**
+     * セッション固有の事実を追加（基の事実は上書きせずに隠す）
+     */
+    public void addFact(String name, INDArray tensor) {
+        localFacts.put(name, tensor);
+        localRelations.remove(name);
+        LOG.debug("セッション事実 '{}' を追加: shape={}", name, java.util.Arrays.toString(tensor.shape()));
+    }
+
+    /**
+     * セッション固有の事実を指定した精度で追加
+     */
+    public void addFact(String name, INDArray tensor, Precision precision) {
+        addFact(name, precision.store(tensor));
+    }
+
+    /**
+     * セッション固有の関係（疎・ビット）を追加
+     */
+    public void addRelation(String name, Relation relation) {
+        localRelations.put(name, relation);
+        localFacts.remove(name);
+        LOG.debug("セッション関係 '{}' を追加: {}", name, relation);
+    }
+
+    /**
+     * セッション固有の推論ルールを追加
+     */
+    public void addRule(String name, Rule rule) {
+        ruleView = ruleView.toBuilder().putRule(name, rule).build();
+        LOG.debug("セッションルール '{}' を追加: {} -> {}", name, rule.inputs(), rule.output());
+    }
+
+    /**
+     * セッション固有の推論ルールを追加（名前はネームスペースと出力から生成）
+     */
+    public void addRule(Rule rule) {
+        addRule(rule.namespace() + "_" + rule.output(), rule);
+    }
+
+    /**
+     * 事実を取得（セッション固有の事実を優先。INT8 で保持している事実は量子化を戻して返す）
+     */
+    @Override
+    public INDArray getFact(String name) {
+        INDArray local = localFacts.get(name);
+        if (local != null) {
+            return Precision.decode(local);
+        }
+        return localRelations.containsKey(name) ? null : Precision.decode(base.getFact(name));
+    }
+
+    /**
+     * 関係を取得（セッション固有の値を優先）
+     */
+    @Override
+    public Relation getRelation(String name) {
+        Relation local = localRelations.get(name);
+        if (local != null) {
+            return local;
+        }
+        return localFacts.containsKey(name) ? null : base.getRelation(name);
+    }
+
+    /**
+     * セッションで追加・導出された事実（読み取り専用）
+     */
+    public Map<String, INDArray> getLocalFacts() {
+        return Collections.unmodifiableMap(localFacts);
+    }
+
+    /**
+     * セッション内で前向き推論を実行
+     *
+     * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
+     * @return 導出された事実（セッションにのみ追加される）
+     */
+    public Map<String, INDArray> forwardChain(String namespaceFilter) {
+        ForwardChainingResult result = ruleView.plan(namespaceFilter).execute(this, engine.parallelism());
+        keep(result);
+        LOG.debug("セッション前向き推論完了: {}個の事実を導出", result.getDerivedFactCount());
+        return result.derivedFacts();
+    }
+
+    /**
+     * セッション内で不動点まで前向き推論を実行（エンジンの既定の許容誤差・最大ラウンド数を使用）
+     */
+    public ForwardChainingResult forwardChainToFixpoint(String namespaceFilter) {
+        ForwardChainingResult result = ruleView.plan(namespaceFilter)
+            .executeToFixpoint(this, engine.getFixpointEpsilon(), engine.getFixpointMaxIterations(),
+                engine.parallelism());
+        keep(result);
+        return result;
+    }
+
+    private void keep(ForwardChainingResult result) {
+        result.derivedFacts().forEach((name, tensor) -> {
+            localFacts.put(name, tensor);
+            localRelations.remove(name);
+        });
+        result.derivedRelations().forEach((name, relation) -> {
+            localRelations.put(name, relation);
+            localFacts.remove(name);
+        });
+    }
+
+    /**
+     * セッション内で後向き推論を実行（関係はエンジンと同じく密な行列に変換して参照）
+     */
+    public BackwardChainingResult backwardChain(String goal, String namespaceFilter) {
+        return engine.backwardChain(ruleView, name -> engine.factOrDenseRelation(this, name), goal, namespaceFilter);
+    }
+
+    /**
+     * 基となったスナップショットのバージョン
+     */
+    public long baseVersion() {
+        return base.version();
+    }
+
+    /**
+     * セッションを破棄（セッション固有の事実とルールを解放）
+     */
+    @Override
+    public void close() {
+        localFacts.clear();
+        localRelations.clear();
+        ruleView = base;
+    }
+}
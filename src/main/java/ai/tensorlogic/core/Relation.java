@@ -0,0 +1,40 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * 密なテンソル以外の形式で保持する関係（2階のテンソル）
+ *
+ * <ul>
+ *   <li>{@link SparseRelation}: 辺が少ない関係（CSR形式、値は任意の真理値）</li>
+ *   <li>{@link BitRelation}: 値が0/1だけの関係（1要素1ビット）</li>
+ * </ul>
+ *
+ * 格納されていない要素は0として扱います。
+ */
+public sealed interface Relation permits SparseRelation, BitRelation {
+
+    int rows();
+
+    int cols();
+
+    /**
+     * 形状 [行数, 列数]
+     */
+    long[] shape();
+
+    /**
+     * 非ゼロ要素の数
+     */
+    int nnz();
+
+    /**
+     * 要素の値
+     */
+    double get(int row, int col);
+
+    /**
+     * 密な行列に変換
+     */
+    INDArray toDense();
+}
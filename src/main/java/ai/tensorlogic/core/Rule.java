@@ -11,19 +11,68 @@ import java.util.List;
  * @param inputs 入力事実の名前リスト
  * @param output 出力事実の名前
  * @param operation 演算タイプ
+ * @param equation EINSUM の添字の指定（例: "xy,yz,zw->xw"）。他の演算タイプではnull
+ * @param semiring CHAIN・MODUS_PONENS・CLOSURE の合成に使用する半環（nullの場合は演算タイプの既定）
  */
 public record Rule(
     String namespace,
     List<String> inputs,
     String output,
-    Operation operation
+    Operation operation,
+    String equation,
+    Semiring semiring
 ) {
     
     public enum Operation {
         MODUS_PONENS,   // 三段論法: A かつ (A→B) から B
-        CONJUNCTION,    // 論理積: A ∧ B
+        CONJUNCTION,    // 論理積: A ∧ B ∧ …（入力は2つ以上）
         CHAIN,         // 関係の合成: R1 ○ R2
-        DISJUNCTION    // 論理和: A ∨ B
+        DISJUNCTION,   // 論理和: A ∨ B ∨ …（入力は2つ以上）
+        EINSUM,        // 一般の縮約: 添字の指定に従う積和
+        CLOSURE        // 推移閉包: R⁺ = R ⊕ R² ⊕ …
+    }
+    
+    public Rule {
+        if (operation == Operation.EINSUM) {
+            // 添字の指定を検証（解析結果は演算時に再利用される）
+            int operands = Einsum.of(equation).operandCount();
+            if (inputs != null && inputs.size() != operands) {
+                throw new IllegalArgumentException("添字の指定の項数（" + operands
+                    + "）が入力の数（" + inputs.size() + "）と一致しません: " + equation);
+            }
+        }
+        if ((operation == Operation.CONJUNCTION || operation == Operation.DISJUNCTION)
+                && inputs != null && inputs.size() < 2) {
+            throw new IllegalArgumentException(operation + " の入力は2つ以上必要です: " + inputs);
+        }
+        if (operation == Operation.CLOSURE && inputs != null && inputs.size() != 1) {
+            throw new IllegalArgumentException("CLOSURE の入力は1つの関係のみです: " + inputs);
+        }
+        if (semiring != null) {
+            if (operation != Operation.CHAIN && operation != Operation.MODUS_PONENS && operation != Operation.CLOSURE) {
+                throw new IllegalArgumentException("半環を指定できるのは CHAIN・MODUS_PONENS・CLOSURE のみです: " + operation);
+            }
+            if (operation == Operation.CLOSURE && semiring == Semiring.LOG_SUM_EXP) {
+                throw new IllegalArgumentException("LOG_SUM_EXP の推移閉包には対応していません");
+            }
+        }
+    }
+    
+    /**
+     * 添字の指定を持たないルール
+     */
+    public Rule(String namespace, List<String> inputs, String output, Operation operation) {
+        this(namespace, inputs, output, operation, null, null);
+    }
+    
+    /**
+     * 合成に使用する半環（指定がない場合、CLOSURE は最大・積、それ以外は和・積）
+     */
+    public Semiring effectiveSemiring() {
+        if (semiring != null) {
+            return semiring;
+        }
+        return operation == Operation.CLOSURE ? Semiring.MAX_PRODUCT : Semiring.SUM_PRODUCT;
     }
     
     /**
@@ -38,6 +87,8 @@ public record Rule(
         private List<String> inputs;
         private String output;
         private Operation operation = Operation.MODUS_PONENS;
+        private String equation;
+        private Semiring semiring;
         
         public Builder namespace(String namespace) {
             this.namespace = namespace != null ? namespace : "default";
@@ -59,8 +110,18 @@ public record Rule(
             return this;
         }
         
+        public Builder equation(String equation) {
+            this.equation = equation;
+            return this;
+        }
+        
+        public Builder semiring(Semiring semiring) {
+            this.semiring = semiring;
+            return this;
+        }
+        
         public Rule build() {
-            return new Rule(namespace, inputs, output, operation);
+            return new Rule(namespace, inputs, output, operation, equation, semiring);
         }
     }
 }
@@ -0,0 +1,95 @@
+package ai.tensorlogic.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ルールの索引
+ *
+ * ルール名を「出力事実」「入力事実」「ネームスペース」の3つのキーで索引付けし、
+ * 推論時に全ルールを走査せずに該当ルールだけを取得できるようにします。
+ * ルールの追加・置換・削除に合わせて差分で更新されます。
+ * 公開済みのスナップショットが持つ索引は変更せず、書き込み時は複製に対して更新します。
+ */
+final class RuleIndex {
+
+    /** 出力事実名 → その事実を生成するルール名 */
+    private final Map<String, Set<String>> byOutput = new HashMap<>();
+
+    /** 入力事実名 → その事実を入力に持つルール名 */
+    private final Map<String, Set<String>> byInput = new HashMap<>();
+
+    /** ネームスペース → そのネームスペースに属するルール名 */
+    private final Map<String, Set<String>> byNamespace = new HashMap<>();
+
+    /**
+     * ルールを索引に追加
+     */
+    void add(String name, Rule rule) {
+        put(byOutput, rule.output(), name);
+        for (String input : rule.inputs()) {
+            put(byInput, input, name);
+        }
+        put(byNamespace, rule.namespace(), name);
+    }
+
+    /**
+     * ルールを索引から削除（置換時は旧ルールを削除してから追加する）
+     */
+    void remove(String name, Rule rule) {
+        delete(byOutput, rule.output(), name);
+        for (String input : rule.inputs()) {
+            delete(byInput, input, name);
+        }
+        delete(byNamespace, rule.namespace(), name);
+    }
+
+    /**
+     * 索引の複製を作成（スナップショットの書き込み時に使用）
+     */
+    RuleIndex copy() {
+        RuleIndex copy = new RuleIndex();
+        byOutput.forEach((key, names) -> copy.byOutput.put(key, new LinkedHashSet<>(names)));
+        byInput.forEach((key, names) -> copy.byInput.put(key, new LinkedHashSet<>(names)));
+        byNamespace.forEach((key, names) -> copy.byNamespace.put(key, new LinkedHashSet<>(names)));
+        return copy;
+    }
+
+    /**
+     * 指定した事実を生成するルール名
+     */
+    Set<String> producersOf(String fact) {
+        return byOutput.getOrDefault(fact, Collections.emptySet());
+    }
+
+    /**
+     * 指定した事実を入力に持つルール名
+     */
+    Set<String> consumersOf(String fact) {
+        return byInput.getOrDefault(fact, Collections.emptySet());
+    }
+
+    /**
+     * 指定したネームスペースに属するルール名
+     */
+    Set<String> inNamespace(String namespace) {
+        return byNamespace.getOrDefault(namespace, Collections.emptySet());
+    }
+
+    private static void put(Map<String, Set<String>> index, String key, String name) {
+        index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(name);
+    }
+
+    private static void delete(Map<String, Set<String>> index, String key, String name) {
+        Set<String> names = index.get(key);
+        if (names != null) {
+            names.remove(name);
+            if (names.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
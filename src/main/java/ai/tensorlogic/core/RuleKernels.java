@@ -0,0 +1,288 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 演算タイプごとのテンソルカーネル
+ *
+ * ルールのコンパイル時に演算タイプからカーネルを一度だけ選択し、
+ * 実行時には演算タイプによる分岐を行わずに直接呼び出します。
+ * 入力に関係（{@link SparseRelation}・{@link BitRelation}）を含む場合は {@link #applyRelations} を使用します。
+ */
+final class RuleKernels {
+
+    private RuleKernels() {
+    }
+
+    /**
+     * 入力テンソル（ルールの inputs と同じ順序）から出力テンソルを計算する関数
+     */
+    @FunctionalInterface
+    interface Kernel {
+        INDArray apply(INDArray[] inputs);
+    }
+
+    /**
+     * ルールに対応するカーネルを取得
+     *
+     * EINSUM は添字の指定を解析したカーネルを返します（縮約順序はカーネルの中でキャッシュされます）。
+     * CHAIN・MODUS_PONENS に SUM_PRODUCT 以外の半環が指定されている場合は、半環の融合カーネルを返します。
+     */
+    static Kernel forRule(Rule rule) {
+        Kernel kernel = switch (rule.operation()) {
+            case EINSUM -> Einsum.of(rule.equation())::apply;
+            case MODUS_PONENS, CHAIN -> {
+                Semiring semiring = rule.effectiveSemiring();
+                yield semiring == Semiring.SUM_PRODUCT
+                    ? forOperation(rule.operation())
+                    : inputs -> semiring.matmul(inputs[0], inputs[1]);
+            }
+            case CLOSURE -> {
+                Semiring semiring = rule.effectiveSemiring();
+                yield inputs -> TransitiveClosure.dense(inputs[0], semiring);
+            }
+            default -> forOperation(rule.operation());
+        };
+        // 低い精度で保持した入力は積和を計算する精度に揃えてから演算する
+        return inputs -> kernel.apply(Precision.widen(inputs));
+    }
+
+    /**
+     * 演算タイプに対応するカーネルを取得
+     */
+    static Kernel forOperation(Rule.Operation operation) {
+        return switch (operation) {
+            // A かつ (A→B) から B を導出
+            case MODUS_PONENS -> inputs -> inputs[0].mmul(inputs[1]);
+            // A ∧ B ∧ … の論理積（全入力の最小値）
+            case CONJUNCTION -> inputs -> reduce(inputs, true);
+            // A ∨ B ∨ … の論理和（全入力の最大値）
+            case DISJUNCTION -> inputs -> reduce(inputs, false);
+            // 関係の合成（行列の積）
+            case CHAIN -> inputs -> inputs[0].mmul(inputs[1]);
+            // 添字の指定・半環が必要
+            case EINSUM, CLOSURE -> throw new IllegalArgumentException(operation + " のカーネルはルールから取得してください");
+        };
+    }
+
+    /**
+     * 全ての入力の要素ごとの最小値（論理積）・最大値（論理和）
+     *
+     * 1つ目の入力の複製を累積先として残りの入力をその場で畳み込むため、
+     * 入力の数によらず作成するテンソルは結果の1つだけです。
+     *
+     * @param minimum trueの場合は最小値、falseの場合は最大値
+     */
+    static INDArray reduce(INDArray[] inputs, boolean minimum) {
+        long[] shape = inputs[0].shape();
+        for (int i = 1; i < inputs.length; i++) {
+            if (!Arrays.equals(shape, inputs[i].shape())) {
+                throw new IllegalArgumentException("形状が一致しません: "
+                    + Arrays.toString(shape) + " と " + Arrays.toString(inputs[i].shape()));
+            }
+        }
+        INDArray result = inputs[0].dup();
+        for (int i = 1; i < inputs.length; i++) {
+            if (minimum) {
+                Transforms.min(result, inputs[i], false);
+            } else {
+                Transforms.max(result, inputs[i], false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 関係（疎・ビット）を含む入力に演算を適用
+     *
+     * 入力が全てビット関係の場合は、ビット演算で評価して結果もビット関係になります。
+     * それ以外のビット関係は疎な関係として扱います。
+     * 論理積は疎な側に存在する辺だけを評価するため結果も疎になり、
+     * 論理和と密な行列との合成は結果が密になります。
+     * 3つ以上の入力の論理積・論理和は、密な入力を {@link #reduce} でまとめてから関係と1回だけ組み合わせます。
+     * 推移閉包は疎なまま計算し、EINSUM は関係を密な行列に展開して評価します。
+     *
+     * @param inputs 入力（{@link INDArray} または {@link Relation}）
+     * @return 結果（{@link INDArray} または {@link Relation}）
+     */
+    static Object applyRelations(Rule rule, Object[] inputs) {
+        inputs = Precision.widen(inputs);
+        BitRelation crisp = applyBits(rule, inputs);
+        if (crisp != null) {
+            return crisp;
+        }
+        Object[] values = new Object[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            values[i] = inputs[i] instanceof BitRelation bits ? bits.toSparse() : inputs[i];
+        }
+        Object a = values[0];
+        Object b = values.length > 1 ? values[1] : null;
+        return switch (rule.operation()) {
+            case MODUS_PONENS, CHAIN -> {
+                Semiring semiring = rule.effectiveSemiring();
+                if (semiring == Semiring.LOG_SUM_EXP) {
+                    // 疎な関係の格納されていない要素は0（対数空間では確率1）になり、log 0 として扱えない
+                    throw new IllegalArgumentException("LOG_SUM_EXP の合成は密な関係のみ対応しています: " + rule.output());
+                }
+                if (a instanceof SparseRelation left) {
+                    yield b instanceof SparseRelation right
+                        ? left.chain(right, semiring)
+                        : left.chain((INDArray) b, semiring);
+                }
+                yield SparseRelation.chain((INDArray) a, (SparseRelation) b, semiring);
+            }
+            case CONJUNCTION -> conjunction(values);
+            case DISJUNCTION -> disjunction(values);
+            case EINSUM -> forRule(rule).apply(densify(inputs));
+            case CLOSURE -> TransitiveClosure.sparse((SparseRelation) a, rule.effectiveSemiring());
+        };
+    }
+
+    /**
+     * 疎な関係を含む入力の論理積
+     *
+     * 辺の少ない関係から順に積を取り、結果の辺を早く絞り込みます。
+     * 密な入力は最小値にまとめてから、残った辺についてだけ参照します。
+     */
+    private static SparseRelation conjunction(Object[] values) {
+        List<SparseRelation> relations = new ArrayList<>();
+        List<INDArray> tensors = new ArrayList<>();
+        split(values, relations, tensors);
+        relations.sort(Comparator.comparingInt(SparseRelation::nnz));
+        SparseRelation result = relations.get(0);
+        for (int i = 1; i < relations.size(); i++) {
+            result = result.conjunction(relations.get(i));
+        }
+        return tensors.isEmpty() ? result : result.conjunction(denseOperand(tensors, true));
+    }
+
+    /**
+     * 疎な関係を含む入力の論理和（密な入力を含む場合は結果も密）
+     */
+    private static Object disjunction(Object[] values) {
+        List<SparseRelation> relations = new ArrayList<>();
+        List<INDArray> tensors = new ArrayList<>();
+        split(values, relations, tensors);
+        SparseRelation result = relations.get(0);
+        for (int i = 1; i < relations.size(); i++) {
+            result = result.disjunction(relations.get(i));
+        }
+        return tensors.isEmpty() ? result : result.disjunction(denseOperand(tensors, false));
+    }
+
+    private static void split(Object[] values, List<SparseRelation> relations, List<INDArray> tensors) {
+        for (Object value : values) {
+            if (value instanceof SparseRelation relation) {
+                relations.add(relation);
+            } else {
+                tensors.add((INDArray) value);
+            }
+        }
+    }
+
+    private static INDArray denseOperand(List<INDArray> tensors, boolean minimum) {
+        return tensors.size() == 1 ? tensors.get(0) : reduce(tensors.toArray(new INDArray[0]), minimum);
+    }
+
+    /**
+     * 入力が全てビット関係で結果も0/1になる演算を、ビット演算で評価
+     *
+     * @return 結果（ビット演算で評価できない場合はnull）
+     */
+    private static BitRelation applyBits(Rule rule, Object[] inputs) {
+        for (Object input : inputs) {
+            if (!(input instanceof BitRelation)) {
+                return null;
+            }
+        }
+        BitRelation[] relations = new BitRelation[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            relations[i] = (BitRelation) inputs[i];
+        }
+        BitRelation a = relations[0];
+        return switch (rule.operation()) {
+            case CONJUNCTION -> BitRelation.reduce(relations, true);
+            case DISJUNCTION -> BitRelation.reduce(relations, false);
+            // ブール行列積は冪等な半環（MAX_MIN・MAX_PRODUCT）の結果と一致する
+            // （和・積（既定）は経路の数になるため、疎な関係として数える）
+            case MODUS_PONENS, CHAIN -> rule.effectiveSemiring().isIdempotent()
+                ? a.chain(relations[1])
+                : null;
+            // 和・積の閉包は経路の数になるため0/1に収まらない
+            case CLOSURE -> rule.effectiveSemiring().isIdempotent() ? a.closure() : null;
+            case EINSUM -> null;
+        };
+    }
+
+    private static INDArray[] densify(Object[] inputs) {
+        INDArray[] tensors = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            tensors[i] = inputs[i] instanceof Relation relation ? relation.toDense() : (INDArray) inputs[i];
+        }
+        return tensors;
+    }
+
+    /**
+     * 入力（密・疎のいずれか）に演算を適用
+     *
+     * @return 結果（入力が揃っていない場合はnull）
+     */
+    static Object apply(Rule rule, Object[] inputs) {
+        boolean dense = true;
+        for (Object input : inputs) {
+            if (input == null) {
+                return null;
+            }
+            dense &= input instanceof INDArray;
+        }
+        if (!dense) {
+            return applyRelations(rule, inputs);
+        }
+        INDArray[] tensors = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            tensors[i] = (INDArray) inputs[i];
+        }
+        return forRule(rule).apply(tensors);
+    }
+
+    /**
+     * 入力の形状から出力の形状を解決
+     *
+     * @return 出力の形状（入力の形状が不明、または演算できない組み合わせの場合はnull）
+     */
+    static long[] resolveShape(Rule rule, long[][] inputShapes) {
+        for (long[] shape : inputShapes) {
+            if (shape == null) {
+                return null;
+            }
+        }
+        return switch (rule.operation()) {
+            case MODUS_PONENS, CHAIN -> {
+                // ベクトルは行ベクトル [1, n] として扱われる
+                long[] a = asMatrix(inputShapes[0]);
+                long[] b = asMatrix(inputShapes[1]);
+                yield a[1] == b[0] ? new long[]{a[0], b[1]} : null;
+            }
+            case CONJUNCTION, DISJUNCTION -> {
+                for (long[] shape : inputShapes) {
+                    if (!Arrays.equals(inputShapes[0], shape)) {
+                        yield null;
+                    }
+                }
+                yield inputShapes[0].clone();
+            }
+            case EINSUM -> Einsum.of(rule.equation()).resolveShape(inputShapes);
+            case CLOSURE -> TransitiveClosure.resolveShape(inputShapes[0]);
+        };
+    }
+
+    private static long[] asMatrix(long[] shape) {
+        return shape.length == 1 ? new long[]{1, shape[0]} : shape;
+    }
+}
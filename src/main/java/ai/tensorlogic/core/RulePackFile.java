@@ -0,0 +1,134 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 変換済みのルール定義（事実・関係・ルール）のバイナリ形式
+ *
+ * <pre>
+ *   ヘッダー: int マジックナンバー "TLRP", int 形式のバージョン,
+ *            UTF ルール定義の名前, int ルール数, UTF ルール名 × ルール数（登録の順）
+ *   内容:     {@link EngineSnapshotFile} の形式（事実・関係・ルール）
+ * </pre>
+ *
+ * ルール定義ファイルの解析・検証・変換の結果をそのまま保存し、
+ * 次回は YAML を解析せずにバイナリの読み込みだけで同じ内容を登録できるようにします。
+ * 事実は変換した精度のまま、関係は疎な関係・ビット関係のまま保存されます。
+ */
+public final class RulePackFile {
+
+    private static final int MAGIC = 0x544C5250;
+    private static final int FORMAT_VERSION = 1;
+
+    private RulePackFile() {
+    }
+
+    /**
+     * 変換済みのルール定義
+     *
+     * @param name ルール定義の名前（メタデータの name）
+     * @param facts 密な事実
+     * @param relations 関係（疎な関係・ビット関係）
+     * @param rules ルール（登録の順）
+     */
+    public record Pack(
+        String name,
+        Map<String, INDArray> facts,
+        Map<String, Relation> relations,
+        Map<String, Rule> rules
+    ) {}
+
+    /**
+     * ファイルに書き込む
+     *
+     * 一時ファイルに書き込んでから置き換えるため、書き込み中に失敗しても既存のファイルは壊れません。
+     */
+    public static void write(Path file, Pack pack) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, ".rulepack-", ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp)) {
+                write(pack, stream);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * ストリームに書き込む
+     */
+    public static void write(Pack pack, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(pack.name() != null ? pack.name() : "");
+        out.writeInt(pack.rules().size());
+        for (String name : pack.rules().keySet()) {
+            out.writeUTF(name);
+        }
+        out.flush();
+        EngineSnapshot snapshot = EngineSnapshot.restore(0, 0, pack.facts(), pack.relations(),
+            Map.of(), Map.of(), pack.rules());
+        EngineSnapshotFile.write(snapshot, out);
+    }
+
+    /**
+     * ファイルから読み込む
+     *
+     * @throws IOException 形式が不正、チェックサムが一致しない、または途中で切れている場合
+     */
+    public static Pack read(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return read(stream);
+        }
+    }
+
+    /**
+     * ストリームから読み込む
+     */
+    public static Pack read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("変換済みのルール定義ではありません");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("未対応のルール定義の形式です: " + formatVersion);
+        }
+        String name = in.readUTF();
+        List<String> order = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            order.add(in.readUTF());
+        }
+        EngineSnapshot snapshot = EngineSnapshotFile.read(in);
+
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        for (String rule : order) {
+            Rule value = snapshot.rules().get(rule);
+            if (value == null) {
+                throw new IOException("変換済みのルール定義にルールがありません: " + rule);
+            }
+            rules.put(rule, value);
+        }
+        return new Pack(name, new LinkedHashMap<>(snapshot.facts()), new LinkedHashMap<>(snapshot.relations()),
+            rules);
+    }
+}
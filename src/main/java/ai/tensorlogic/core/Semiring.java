@@ -0,0 +1,214 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Arrays;
+
+/**
+ * 関係の合成に使用する半環（⊕, ⊗）
+ *
+ * 関係の合成 (A ⊗ B)[i, j] = ⊕_k A[i, k] ⊗ B[k, j] の「和」と「積」を決めます。
+ * LOG_SUM_EXP 以外は値が真理値（0以上）であることを前提とし、0が ⊕ の単位元かつ ⊗ の零元になります。
+ * LOG_SUM_EXP は対数空間の確率を扱い、零元は負の無限大です。
+ *
+ * 和・積以外の合成は出力に直接畳み込む融合カーネルで計算し、
+ * [n, k, m] のブロードキャストした中間テンソルを作りません（メモリ使用量は出力の大きさに比例）。
+ */
+public enum Semiring {
+
+    /** 和・積（通常の行列積。経路の数や確率の和） */
+    SUM_PRODUCT {
+        @Override
+        double add(double a, double b) {
+            return a + b;
+        }
+
+        @Override
+        double multiply(double a, double b) {
+            return a * b;
+        }
+    },
+
+    /** 最大・最小（ファジィ合成。経路の中で最も弱い辺の強さ） */
+    MAX_MIN {
+        @Override
+        double add(double a, double b) {
+            return Math.max(a, b);
+        }
+
+        @Override
+        double multiply(double a, double b) {
+            return Math.min(a, b);
+        }
+    },
+
+    /** 最大・積（最も確からしい経路の確信度） */
+    MAX_PRODUCT {
+        @Override
+        double add(double a, double b) {
+            return Math.max(a, b);
+        }
+
+        @Override
+        double multiply(double a, double b) {
+            return a * b;
+        }
+    },
+
+    /** 対数空間の和・積（log Σ exp(a + b)。対数確率のまま和・積を計算し、アンダーフローを避ける） */
+    LOG_SUM_EXP {
+        @Override
+        double add(double a, double b) {
+            if (a == Double.NEGATIVE_INFINITY) {
+                return b;
+            }
+            if (b == Double.NEGATIVE_INFINITY) {
+                return a;
+            }
+            return Math.max(a, b) + Math.log1p(Math.exp(-Math.abs(a - b)));
+        }
+
+        @Override
+        double multiply(double a, double b) {
+            return a + b;
+        }
+
+        @Override
+        double zero() {
+            return Double.NEGATIVE_INFINITY;
+        }
+    };
+
+    abstract double add(double a, double b);
+
+    abstract double multiply(double a, double b);
+
+    /**
+     * ⊕ の単位元（⊗ の零元）
+     */
+    double zero() {
+        return 0.0;
+    }
+
+    /**
+     * a ⊕ a = a が成り立つか（反復二乗で同じ経路を重複して数えないか）
+     */
+    boolean isIdempotent() {
+        return this == MAX_MIN || this == MAX_PRODUCT;
+    }
+
+    /**
+     * 要素ごとの和 A ⊕ B
+     */
+    INDArray plus(INDArray a, INDArray b) {
+        return switch (this) {
+            case SUM_PRODUCT -> a.add(b);
+            case MAX_MIN, MAX_PRODUCT -> Transforms.max(a, b);
+            case LOG_SUM_EXP -> {
+                double[] left = a.reshape(a.length()).toDoubleVector();
+                double[] right = b.reshape(b.length()).toDoubleVector();
+                double[] result = new double[left.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = add(left[i], right[i]);
+                }
+                yield Nd4j.create(result, a.shape());
+            }
+        };
+    }
+
+    /**
+     * 行列の合成 A ⊗ B（ベクトルは行ベクトル [1, n] として扱う）
+     *
+     * 和・積は BLAS の行列積を使用します。それ以外は i-k-j 順のループで出力の行に直接畳み込みます。
+     */
+    INDArray matmul(INDArray a, INDArray b) {
+        if (this == SUM_PRODUCT) {
+            return a.mmul(b);
+        }
+        double[][] left = asMatrix(a).toDoubleMatrix();
+        double[][] right = asMatrix(b).toDoubleMatrix();
+        int rows = left.length;
+        int inner = rows == 0 ? 0 : left[0].length;
+        int cols = right.length == 0 ? 0 : right[0].length;
+        if (inner != right.length) {
+            throw new IllegalArgumentException("関係の合成の形状が一致しません: 内側の次元 "
+                + inner + " と " + right.length);
+        }
+        double[] result = this == LOG_SUM_EXP
+            ? logSumExp(left, right, rows, inner, cols)
+            : fold(left, right, rows, inner, cols);
+        // 倍精度で畳み込み、入力の精度で返す
+        INDArray product = Nd4j.create(result, rows, cols);
+        return a.dataType() == product.dataType() ? product : product.castTo(a.dataType());
+    }
+
+    /**
+     * 出力の各要素に ⊕ で畳み込む合成（MAX_MIN・MAX_PRODUCT）
+     */
+    private double[] fold(double[][] left, double[][] right, int rows, int inner, int cols) {
+        double zero = zero();
+        double[] result = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            for (int k = 0; k < inner; k++) {
+                double x = left[i][k];
+                if (x == zero) {
+                    continue;
+                }
+                double[] row = right[k];
+                for (int j = 0; j < cols; j++) {
+                    result[offset + j] = add(result[offset + j], multiply(x, row[j]));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 対数空間の合成（出力の行ごとに最大値と指数和を逐次更新する、オンライン log-sum-exp）
+     *
+     * 要素ごとに log と exp を1回ずつ呼ぶのではなく、現在の最大値を基準にした指数和を保持し、
+     * 最大値が更新されたときだけ和を再スケールします。
+     */
+    private static double[] logSumExp(double[][] left, double[][] right, int rows, int inner, int cols) {
+        double[] result = new double[rows * cols];
+        double[] max = new double[cols];
+        double[] sum = new double[cols];
+        for (int i = 0; i < rows; i++) {
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            Arrays.fill(sum, 0.0);
+            for (int k = 0; k < inner; k++) {
+                double x = left[i][k];
+                if (x == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                double[] row = right[k];
+                for (int j = 0; j < cols; j++) {
+                    double value = x + row[j];
+                    if (value == Double.NEGATIVE_INFINITY) {
+                        continue;
+                    }
+                    if (value <= max[j]) {
+                        sum[j] += Math.exp(value - max[j]);
+                    } else {
+                        sum[j] = sum[j] * Math.exp(max[j] - value) + 1.0;
+                        max[j] = value;
+                    }
+                }
+            }
+            int offset = i * cols;
+            for (int j = 0; j < cols; j++) {
+                result[offset + j] = max[j] == Double.NEGATIVE_INFINITY
+                    ? Double.NEGATIVE_INFINITY
+                    : max[j] + Math.log(sum[j]);
+            }
+        }
+        return result;
+    }
+
+    private static INDArray asMatrix(INDArray array) {
+        return array.rank() == 1 ? array.reshape(1, array.length()) : array;
+    }
+}
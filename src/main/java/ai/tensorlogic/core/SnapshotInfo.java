@@ -0,0 +1,20 @@
+package ai.tensorlogic.core;
+
+/**
+ * 保存・復元したエンジンのスナップショットの概要
+ * 
+ * @param version スナップショットのバージョン
+ * @param ruleVersion ルール集合のバージョン
+ * @param factCount 密な事実の数（導出された事実を含む）
+ * @param relationCount 関係（疎・ビット）の数
+ * @param ruleCount ルールの数
+ * @param bytes ファイルの大きさ（バイト）
+ */
+public record SnapshotInfo(
+    long version,
+    long ruleVersion,
+    int factCount,
+    int relationCount,
+    int ruleCount,
+    long bytes
+) {}
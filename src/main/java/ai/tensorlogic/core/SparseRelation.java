@@ -0,0 +1,589 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * 疎な関係テンソル（CSR形式）
+ *
+ * 知識グラフの関係（is_friend など）のように、エンティティ数に比べて辺が非常に少ない
+ * 行列を保持します。メモリ使用量と演算量は辺の数（非ゼロ要素数）に比例し、
+ * エンティティ数の2乗には比例しません。
+ *
+ * 値は真理値（0以上）であることを前提とし、格納されていない要素は0として扱います。
+ * そのため論理積（最小値）は共通部分、論理和（最大値）は和集合として計算できます。
+ * インスタンスは不変です。
+ */
+public final class SparseRelation implements Relation {
+
+    private final int rows;
+    private final int cols;
+    /** 行 i の要素は colIndex[rowPointer[i]] 〜 colIndex[rowPointer[i + 1] - 1]（列番号の昇順） */
+    private final int[] rowPointer;
+    private final int[] colIndex;
+    private final double[] values;
+
+    private SparseRelation(int rows, int cols, int[] rowPointer, int[] colIndex, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPointer = rowPointer;
+        this.colIndex = colIndex;
+        this.values = values;
+    }
+
+    /**
+     * 辺のリスト（COO形式）から作成
+     *
+     * 同じ位置の辺が複数ある場合は最大値を採用し、0の辺は格納しません。
+     *
+     * @param rows 行数（始点のエンティティ数）
+     * @param cols 列数（終点のエンティティ数）
+     * @param from 辺の始点
+     * @param to 辺の終点
+     * @param weights 辺の値（真理値）
+     */
+    public static SparseRelation fromEdges(int rows, int cols, int[] from, int[] to, double[] weights) {
+        if (from.length != to.length || from.length != weights.length) {
+            throw new IllegalArgumentException("辺の始点・終点・値の数が一致しません");
+        }
+        // 行ごとの辺の数を数えて行ポインタを作成
+        int[] rowPointer = new int[rows + 1];
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] < 0 || from[i] >= rows || to[i] < 0 || to[i] >= cols) {
+                throw new IllegalArgumentException(String.format(
+                    "辺 (%d, %d) が形状 [%d, %d] の範囲外です", from[i], to[i], rows, cols));
+            }
+            rowPointer[from[i] + 1]++;
+        }
+        for (int r = 0; r < rows; r++) {
+            rowPointer[r + 1] += rowPointer[r];
+        }
+        int[] next = Arrays.copyOf(rowPointer, rows);
+        int[] colIndex = new int[from.length];
+        double[] vals = new double[from.length];
+        for (int i = 0; i < from.length; i++) {
+            int position = next[from[i]]++;
+            colIndex[position] = to[i];
+            vals[position] = weights[i];
+        }
+
+        // 各行を列番号順に並べ、重複をまとめて0を除く
+        Builder builder = new Builder(rows, cols, from.length);
+        for (int r = 0; r < rows; r++) {
+            int start = rowPointer[r];
+            int end = rowPointer[r + 1];
+            sortRow(colIndex, vals, start, end);
+            for (int p = start; p < end; p++) {
+                if (p + 1 < end && colIndex[p + 1] == colIndex[p]) {
+                    vals[p + 1] = Math.max(vals[p + 1], vals[p]);
+                    continue;
+                }
+                builder.add(colIndex[p], vals[p]);
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 密な行列から作成（非ゼロ要素だけを格納）
+     */
+    public static SparseRelation fromDense(INDArray matrix) {
+        double[][] dense = asMatrix(matrix).toDoubleMatrix();
+        int rows = dense.length;
+        int cols = rows == 0 ? 0 : dense[0].length;
+        Builder builder = new Builder(rows, cols, 16);
+        for (double[] row : dense) {
+            for (int c = 0; c < cols; c++) {
+                builder.add(c, row[c]);
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * 形状 [行数, 列数]
+     */
+    @Override
+    public long[] shape() {
+        return new long[]{rows, cols};
+    }
+
+    /**
+     * 格納している辺（非ゼロ要素）の数
+     */
+    @Override
+    public int nnz() {
+        return rowPointer[rows];
+    }
+
+    /**
+     * 行 r の要素の開始位置（{@link #colAt}・{@link #valueAt} の添字）
+     */
+    int rowStart(int r) {
+        return rowPointer[r];
+    }
+
+    /**
+     * 行 r の要素の終了位置（この位置は含まない）
+     */
+    int rowEnd(int r) {
+        return rowPointer[r + 1];
+    }
+
+    int colAt(int position) {
+        return colIndex[position];
+    }
+
+    double valueAt(int position) {
+        return values[position];
+    }
+
+    /**
+     * 要素の値（格納されていない要素は0）
+     */
+    @Override
+    public double get(int row, int col) {
+        int position = Arrays.binarySearch(colIndex, rowPointer[row], rowPointer[row + 1], col);
+        return position >= 0 ? values[position] : 0.0;
+    }
+
+    /**
+     * 密な行列に変換
+     */
+    @Override
+    public INDArray toDense() {
+        if ((long) rows * cols > Integer.MAX_VALUE) {
+            throw new IllegalStateException("密な行列に変換できない大きさです: " + this);
+        }
+        double[] dense = new double[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                dense[r * cols + colIndex[p]] = values[p];
+            }
+        }
+        return Nd4j.create(dense, rows, cols);
+    }
+
+    // ===== 疎なカーネル =====
+
+    /**
+     * 関係の合成（疎 × 疎、Gustavson法）
+     */
+    SparseRelation chain(SparseRelation other) {
+        return chain(other, Semiring.SUM_PRODUCT);
+    }
+
+    /**
+     * 半環を指定した関係の合成（疎 × 疎、Gustavson法）
+     *
+     * 行ごとに、左の行の辺ごとに右の対応する行を畳み込みます。
+     * 作業領域は列数分の配列を1つだけ使い、行ごとには触れた列だけをリセットします。
+     */
+    SparseRelation chain(SparseRelation other, Semiring semiring) {
+        checkInner(cols, other.rows, other.shape());
+        double[] accumulator = new double[other.cols];
+        int[] marker = new int[other.cols];
+        Arrays.fill(marker, -1);
+        int[] touched = new int[other.cols];
+        Builder builder = new Builder(rows, other.cols, Math.max(nnz(), other.nnz()));
+        for (int r = 0; r < rows; r++) {
+            int count = 0;
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                int k = colIndex[p];
+                double a = values[p];
+                for (int q = other.rowPointer[k]; q < other.rowPointer[k + 1]; q++) {
+                    int c = other.colIndex[q];
+                    double product = semiring.multiply(a, other.values[q]);
+                    if (marker[c] != r) {
+                        marker[c] = r;
+                        accumulator[c] = product;
+                        touched[count++] = c;
+                    } else {
+                        accumulator[c] = semiring.add(accumulator[c], product);
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, count);
+            for (int i = 0; i < count; i++) {
+                builder.add(touched[i], accumulator[touched[i]]);
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 関係の合成（疎 × 密）
+     */
+    INDArray chain(INDArray dense) {
+        return chain(dense, Semiring.SUM_PRODUCT);
+    }
+
+    /**
+     * 半環を指定した関係の合成（疎 × 密）
+     */
+    INDArray chain(INDArray dense, Semiring semiring) {
+        double[][] right = asMatrix(dense).toDoubleMatrix();
+        checkInner(cols, right.length, dense.shape());
+        int width = right.length == 0 ? 0 : right[0].length;
+        double[] result = new double[rows * width];
+        for (int r = 0; r < rows; r++) {
+            int offset = r * width;
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                double a = values[p];
+                double[] row = right[colIndex[p]];
+                for (int c = 0; c < width; c++) {
+                    result[offset + c] = semiring.add(result[offset + c], semiring.multiply(a, row[c]));
+                }
+            }
+        }
+        return Nd4j.create(result, rows, width);
+    }
+
+    /**
+     * 関係の合成（密 × 疎）
+     */
+    static INDArray chain(INDArray dense, SparseRelation sparse) {
+        return chain(dense, sparse, Semiring.SUM_PRODUCT);
+    }
+
+    /**
+     * 半環を指定した関係の合成（密 × 疎）
+     */
+    static INDArray chain(INDArray dense, SparseRelation sparse, Semiring semiring) {
+        double[][] left = asMatrix(dense).toDoubleMatrix();
+        int height = left.length;
+        int inner = height == 0 ? 0 : left[0].length;
+        checkInner(inner, sparse.rows, sparse.shape());
+        double[] result = new double[height * sparse.cols];
+        for (int r = 0; r < height; r++) {
+            int offset = r * sparse.cols;
+            for (int k = 0; k < inner; k++) {
+                double a = left[r][k];
+                if (a == 0.0) {
+                    continue;
+                }
+                for (int q = sparse.rowPointer[k]; q < sparse.rowPointer[k + 1]; q++) {
+                    int c = offset + sparse.colIndex[q];
+                    result[c] = semiring.add(result[c], semiring.multiply(a, sparse.values[q]));
+                }
+            }
+        }
+        return Nd4j.create(result, height, sparse.cols);
+    }
+
+    /**
+     * 論理積（疎 ∧ 疎）: 両方に存在する辺の最小値
+     */
+    SparseRelation conjunction(SparseRelation other) {
+        checkSameShape(other.shape());
+        Builder builder = new Builder(rows, cols, Math.min(nnz(), other.nnz()));
+        for (int r = 0; r < rows; r++) {
+            int p = rowPointer[r];
+            int q = other.rowPointer[r];
+            while (p < rowPointer[r + 1] && q < other.rowPointer[r + 1]) {
+                if (colIndex[p] < other.colIndex[q]) {
+                    p++;
+                } else if (colIndex[p] > other.colIndex[q]) {
+                    q++;
+                } else {
+                    builder.add(colIndex[p], Math.min(values[p], other.values[q]));
+                    p++;
+                    q++;
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 論理積（疎 ∧ 密）: 疎な側に存在する辺だけを評価するため結果も疎
+     */
+    SparseRelation conjunction(INDArray dense) {
+        checkSameShape(dense.shape());
+        Builder builder = new Builder(rows, cols, nnz());
+        for (int r = 0; r < rows; r++) {
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                builder.add(colIndex[p], Math.min(values[p], dense.getDouble(r, colIndex[p])));
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 論理和（疎 ∨ 疎）: どちらかに存在する辺の最大値
+     */
+    SparseRelation disjunction(SparseRelation other) {
+        return merge(other, Math::max);
+    }
+
+    /**
+     * 半環の和（疎 ⊕ 疎）: どちらかに存在する辺を半環の和でまとめる
+     */
+    SparseRelation plus(SparseRelation other, Semiring semiring) {
+        return merge(other, semiring::add);
+    }
+
+    /**
+     * 前の値から変化した辺だけを取り出す（セミナイーブ反復の差分）
+     *
+     * @param epsilon この値以下の変化は変化なしとみなす
+     */
+    SparseRelation changedFrom(SparseRelation previous, double epsilon) {
+        checkSameShape(previous.shape());
+        Builder builder = new Builder(rows, cols, 16);
+        for (int r = 0; r < rows; r++) {
+            int q = previous.rowPointer[r];
+            int qEnd = previous.rowPointer[r + 1];
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                while (q < qEnd && previous.colIndex[q] < colIndex[p]) {
+                    q++;
+                }
+                double before = q < qEnd && previous.colIndex[q] == colIndex[p] ? previous.values[q] : 0.0;
+                if (Math.abs(values[p] - before) > epsilon) {
+                    builder.add(colIndex[p], values[p]);
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 論理和（疎 ∨ 密）: 結果は密
+     */
+    INDArray disjunction(INDArray dense) {
+        checkSameShape(dense.shape());
+        INDArray result = dense.dup();
+        for (int r = 0; r < rows; r++) {
+            for (int p = rowPointer[r]; p < rowPointer[r + 1]; p++) {
+                result.putScalar(r, colIndex[p], Math.max(values[p], dense.getDouble(r, colIndex[p])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 要素ごとの差の絶対値の最大（不動点の収束判定に使用）
+     *
+     * @return 形状が異なる場合は正の無限大
+     */
+    double maxDifference(SparseRelation other) {
+        if (rows != other.rows || cols != other.cols) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double max = 0.0;
+        for (int r = 0; r < rows; r++) {
+            int p = rowPointer[r];
+            int q = other.rowPointer[r];
+            int pEnd = rowPointer[r + 1];
+            int qEnd = other.rowPointer[r + 1];
+            while (p < pEnd || q < qEnd) {
+                double diff;
+                if (q >= qEnd || (p < pEnd && colIndex[p] < other.colIndex[q])) {
+                    diff = values[p++];
+                } else if (p >= pEnd || colIndex[p] > other.colIndex[q]) {
+                    diff = other.values[q++];
+                } else {
+                    diff = values[p++] - other.values[q++];
+                }
+                max = Math.max(max, Math.abs(diff));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SparseRelation[%d x %d, nnz=%d]", rows, cols, nnz());
+    }
+
+    // ===== スナップショット =====
+
+    /**
+     * スナップショットに書き込む（形状・非ゼロ要素数・CSR の配列）
+     */
+    void writeTo(DataOutput out) throws IOException {
+        int nnz = nnz();
+        out.writeInt(rows);
+        out.writeInt(cols);
+        out.writeInt(nnz);
+        for (int r = 1; r <= rows; r++) {
+            out.writeInt(rowPointer[r]);
+        }
+        for (int p = 0; p < nnz; p++) {
+            out.writeInt(colIndex[p]);
+            out.writeDouble(values[p]);
+        }
+    }
+
+    /**
+     * {@link #writeTo} で書き込んだ関係を読み込む
+     */
+    static SparseRelation readFrom(DataInput in) throws IOException {
+        int rows = in.readInt();
+        int cols = in.readInt();
+        int nnz = in.readInt();
+        if (rows < 0 || cols < 0 || nnz < 0) {
+            throw new IOException("疎な関係の形状が不正です");
+        }
+        int[] rowPointer = new int[rows + 1];
+        for (int r = 1; r <= rows; r++) {
+            rowPointer[r] = in.readInt();
+            if (rowPointer[r] < rowPointer[r - 1] || rowPointer[r] > nnz) {
+                throw new IOException("疎な関係の行ポインタが不正です");
+            }
+        }
+        if (rowPointer[rows] != nnz) {
+            throw new IOException("疎な関係の非ゼロ要素数が行ポインタと一致しません");
+        }
+        int[] colIndex = new int[nnz];
+        double[] values = new double[nnz];
+        for (int p = 0; p < nnz; p++) {
+            colIndex[p] = in.readInt();
+            values[p] = in.readDouble();
+            if (colIndex[p] < 0 || colIndex[p] >= cols) {
+                throw new IOException("疎な関係の列番号が範囲外です: " + colIndex[p]);
+            }
+        }
+        return new SparseRelation(rows, cols, rowPointer, colIndex, values);
+    }
+
+    // ===== 内部処理 =====
+
+    /**
+     * 行ごとに列番号順でマージ（両方に存在する辺は combiner でまとめる）
+     */
+    private SparseRelation merge(SparseRelation other, DoubleBinaryOperator combiner) {
+        checkSameShape(other.shape());
+        Builder builder = new Builder(rows, cols, nnz() + other.nnz());
+        for (int r = 0; r < rows; r++) {
+            int p = rowPointer[r];
+            int q = other.rowPointer[r];
+            int pEnd = rowPointer[r + 1];
+            int qEnd = other.rowPointer[r + 1];
+            while (p < pEnd || q < qEnd) {
+                if (q >= qEnd || (p < pEnd && colIndex[p] < other.colIndex[q])) {
+                    builder.add(colIndex[p], values[p]);
+                    p++;
+                } else if (p >= pEnd || colIndex[p] > other.colIndex[q]) {
+                    builder.add(other.colIndex[q], other.values[q]);
+                    q++;
+                } else {
+                    builder.add(colIndex[p], combiner.applyAsDouble(values[p], other.values[q]));
+                    p++;
+                    q++;
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    private void checkSameShape(long[] shape) {
+        if (shape.length != 2 || shape[0] != rows || shape[1] != cols) {
+            throw new IllegalArgumentException("形状が一致しません: "
+                + Arrays.toString(shape()) + " と " + Arrays.toString(shape));
+        }
+    }
+
+    private static void checkInner(long left, long right, long[] rightShape) {
+        if (left != right) {
+            throw new IllegalArgumentException("関係の合成の形状が一致しません: 内側の次元 "
+                + left + " と " + right + " (" + Arrays.toString(rightShape) + ")");
+        }
+    }
+
+    /**
+     * ベクトルは行ベクトル [1, n] として扱う（密な演算と同じ規則）
+     */
+    private static INDArray asMatrix(INDArray array) {
+        return array.rank() == 1 ? array.reshape(1, array.length()) : array;
+    }
+
+    /**
+     * 行の要素を列番号順に並べる
+     *
+     * 列番号と行内の位置を1つのlongにまとめてソートし、値をその順に並べ替えます。
+     */
+    private static void sortRow(int[] cols, double[] vals, int start, int end) {
+        int length = end - start;
+        if (length < 2) {
+            return;
+        }
+        long[] keys = new long[length];
+        for (int i = 0; i < length; i++) {
+            keys[i] = ((long) cols[start + i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        double[] sorted = new double[length];
+        for (int i = 0; i < length; i++) {
+            cols[start + i] = (int) (keys[i] >>> 32);
+            sorted[i] = vals[start + (int) keys[i]];
+        }
+        System.arraycopy(sorted, 0, vals, start, length);
+    }
+
+    /**
+     * 行の順に要素を追加してCSRを組み立てる（0の要素は格納しない）
+     */
+    private static final class Builder {
+        private final int rows;
+        private final int cols;
+        private final int[] rowPointer;
+        private int[] colIndex;
+        private double[] values;
+        private int row;
+        private int size;
+
+        Builder(int rows, int cols, int capacity) {
+            this.rows = rows;
+            this.cols = cols;
+            this.rowPointer = new int[rows + 1];
+            this.colIndex = new int[Math.max(capacity, 4)];
+            this.values = new double[colIndex.length];
+        }
+
+        void add(int col, double value) {
+            if (value == 0.0) {
+                return;
+            }
+            if (size == colIndex.length) {
+                colIndex = Arrays.copyOf(colIndex, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            colIndex[size] = col;
+            values[size] = value;
+            size++;
+        }
+
+        void endRow() {
+            rowPointer[++row] = size;
+        }
+
+        SparseRelation build() {
+            return new SparseRelation(rows, cols, rowPointer,
+                Arrays.copyOf(colIndex, size), Arrays.copyOf(values, size));
+        }
+    }
+}
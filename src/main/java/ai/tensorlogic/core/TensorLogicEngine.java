@@ -1,13 +1,21 @@
 package ai.tensorlogic.core;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.ops.transforms.Transforms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -18,29 +26,219 @@ import java.util.stream.Collectors;
  * 
  * 主要機能:
  * - Forward Chaining（前向き推論）: 事実からルールを適用して新しい事実を導出
+ * - 不動点前向き推論: 差分（変化した事実）に依存するルールだけを収束まで繰り返し評価
+ * - 実行計画: ルール集合をトポロジカル順にコンパイルしてキャッシュ
+ * - 並列評価: 互いに依存しない同じ層のルールを ForkJoin プールで並列に評価
+ * - バッチ評価: N個のエンティティの事実をバッチ軸に積み重ね、1回のテンソル演算で評価
+ * - 差分更新: 事実の更新・削除時に、下流の導出済みの事実だけを再計算（削除はDRed方式）
  * - Backward Chaining（後向き推論）: 目標から逆向きに必要な条件を探索
+ * - 後向き推論の表: 解いたサブゴールを呼び出しをまたいで再利用し、
+ *   参照した事実またはそれを生成するルールが変更された場合にだけ無効化
+ * - スナップショットの保存・復元: 導出済みの事実を含む状態をバイナリ形式で保存し、再起動後に復元
+ * 
+ * スレッドセーフ性:
+ * 状態は不変のスナップショット（{@link EngineSnapshot}）として保持されます。
+ * 読み取り（事実の取得・推論）はロックなしで現在のスナップショットを参照し、
+ * 書き込みは新しいバージョンを作成してアトミックに公開します。
+ * 推論で導出された事実は、推論開始時のスナップショットに基づいて計算され、
+ * 評価で参照・導出した事実とルールが変更されていない場合にだけ最新のバージョンに追加する形で公開されます
+ * （変更されていた場合は最新のスナップショットで評価し直します）。
  */
 @ApplicationScoped
 public class TensorLogicEngine {
     
     private static final Logger LOG = LoggerFactory.getLogger(TensorLogicEngine.class);
     
-    private final Map<String, INDArray> facts = new HashMap<>();
-    private final Map<String, Rule> rules = new HashMap<>();
+    /** 前向き推論の結果が古くなった場合に、ロックの外で評価し直す回数の上限 */
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 3;
+    
+    /** 現在公開されているスナップショット（読み取りはロック不要） */
+    private final AtomicReference<EngineSnapshot> current = new AtomicReference<>(EngineSnapshot.empty());
+    
+    /** 書き込み（新しいバージョンの作成と公開）を直列化するロック */
+    private final Object writeLock = new Object();
+    
+    /** 後向き推論の表（全スナップショットで共有し、証明ごとにバージョンで有効性を判定） */
+    private final GoalTable goalTable = new GoalTable();
+    
+    /** 遅延導出した事実の表（後向き推論の表とは別に上限を持つ） */
+    private final GoalTable lazyTable = new GoalTable();
+
+    @ConfigProperty(name = "tensor.logic.forward-chain.epsilon", defaultValue = "1.0E-6")
+    double fixpointEpsilon;
+
+    @ConfigProperty(name = "tensor.logic.forward-chain.max-iterations", defaultValue = "100")
+    int fixpointMaxIterations;
+
+    @ConfigProperty(name = "tensor.logic.forward-chain.parallel.enabled", defaultValue = "true")
+    boolean parallelEnabled;
+
+    @ConfigProperty(name = "tensor.logic.forward-chain.parallel.min-elements", defaultValue = "65536")
+    long parallelMinElements;
+
+    @ConfigProperty(name = "tensor.logic.backward-chain.table.enabled", defaultValue = "true")
+    boolean tablingEnabled;
+
+    @ConfigProperty(name = "tensor.logic.backward-chain.table.max-entries", defaultValue = "10000")
+    int tableMaxEntries;
+
+    @ConfigProperty(name = "tensor.logic.fact.lazy", defaultValue = "false")
+    boolean lazyEnabled;
+
+    @ConfigProperty(name = "tensor.logic.fact.lazy-max-entries", defaultValue = "10000")
+    int lazyMaxEntries;
+
+    @ConfigProperty(name = "tensor.logic.relation.dense-max-elements", defaultValue = "16777216")
+    long relationDenseMaxElements;
+
+    /**
+     * 現在のスナップショットを取得
+     * 
+     * 複数の事実やルールを一貫した状態で参照したい場合に使用します。
+     * 取得したスナップショットは後続の書き込みの影響を受けません。
+     */
+    public EngineSnapshot snapshot() {
+        return current.get();
+    }
+    
+    /**
+     * 新しいバージョンを作成してアトミックに公開
+     */
+    private EngineSnapshot publish(Consumer<EngineSnapshot.Builder> changes) {
+        synchronized (writeLock) {
+            EngineSnapshot.Builder builder = current.get().toBuilder();
+            changes.accept(builder);
+            EngineSnapshot next = builder.build();
+            current.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * 前向き推論を評価して結果を公開
+     * 
+     * 評価はロックの外で取得したスナップショットに対して行い、公開の時点で
+     * ルール集合と、実行計画が参照・導出する事実のバージョンが評価したスナップショットと一致するかを確認します。
+     * 一致しない場合（評価中に入力の事実が更新された場合など）は古い結果を捨てて最新のスナップショットで評価し直し、
+     * 上限回数に達した場合は書き込みロックの中で評価して公開します。
+     */
+    private ForwardChainingResult evaluateAndPublish(String namespaceFilter,
+                                                     Function<EngineSnapshot, ForwardChainingResult> evaluate) {
+        for (int attempt = 1; attempt <= MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            EngineSnapshot snapshot = current.get();
+            ForwardChainingResult result = evaluate.apply(snapshot);
+            synchronized (writeLock) {
+                if (isUnchanged(snapshot, current.get(), namespaceFilter)) {
+                    publish(builder -> builder.putDerived(result));
+                    return result;
+                }
+            }
+            LOG.debug("前向き推論の評価中に入力が変更されたため評価し直します（{}回目）", attempt);
+        }
+        synchronized (writeLock) {
+            ForwardChainingResult result = evaluate.apply(current.get());
+            publish(builder -> builder.putDerived(result));
+            return result;
+        }
+    }
+    
+    /**
+     * 評価したスナップショット以降に、実行計画が参照・導出する事実とルール集合が変更されていないか
+     */
+    private static boolean isUnchanged(EngineSnapshot evaluated, EngineSnapshot latest, String namespaceFilter) {
+        if (evaluated == latest) {
+            return true;
+        }
+        if (evaluated.ruleVersion() != latest.ruleVersion()) {
+            return false;
+        }
+        for (String name : evaluated.plan(namespaceFilter).factNames()) {
+            if (evaluated.factVersion(name) != latest.factVersion(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
     
     /**
      * 事実（ファクト）を追加
+     * 
+     * 既存の事実を上書きした場合は、その事実から導出済みの事実だけを差分で再計算します
+     * （前向き推論全体を再実行する必要はありません）。
      */
     public void addFact(String name, INDArray tensor) {
-        facts.put(name, tensor);
-        LOG.info("事実 '{}' を追加: shape={}", name, java.util.Arrays.toString(tensor.shape()));
+        int[] recomputed = new int[1];
+        publish(builder -> {
+            boolean exists = builder.value(name) != null;
+            builder.putFact(name, tensor);
+            if (exists) {
+                recomputed[0] = IncrementalMaintenance.propagate(builder, List.of(name));
+            }
+        });
+        LOG.info("事実 '{}' を追加: shape={}, dtype={}", name, java.util.Arrays.toString(tensor.shape()),
+            tensor.dataType());
+        if (recomputed[0] > 0) {
+            LOG.info("  差分更新: 導出済みの事実{}個を再計算", recomputed[0]);
+        }
+    }
+    
+    /**
+     * 事実を指定した精度で保持して追加
+     * 
+     * 低い精度で保持した事実も、ルールの評価では FLOAT32 以上に拡張して演算します（{@link Precision}）。
+     */
+    public void addFact(String name, INDArray tensor, Precision precision) {
+        addFact(name, precision.store(tensor));
+    }
+    
+    /**
+     * 関係（知識グラフの疎な関係、0/1だけのビット関係など）を事実として追加
+     * 
+     * 関係を入力に持つルールは、密な行列に展開せずにそれぞれの形式のカーネルで評価されます。
+     * 同じ名前の密な事実は置き換えられ、既存の事実を上書きした場合は下流の導出済みの事実を差分で再計算します。
+     */
+    public void addRelation(String name, Relation relation) {
+        int[] recomputed = new int[1];
+        publish(builder -> {
+            boolean exists = builder.value(name) != null;
+            builder.putRelation(name, relation);
+            if (exists) {
+                recomputed[0] = IncrementalMaintenance.propagate(builder, List.of(name));
+            }
+        });
+        LOG.info("関係 '{}' を追加: {}", name, relation);
+        if (recomputed[0] > 0) {
+            LOG.info("  差分更新: 導出済みの事実{}個を再計算", recomputed[0]);
+        }
+    }
+    
+    /**
+     * 事実を削除
+     * 
+     * その事実に依存する導出済みの事実は DRed 方式で保守されます。
+     * いったん削除したうえで、残った事実から別の導出ができるものは再導出されます。
+     * 
+     * @return 事実が存在して削除された場合はtrue
+     */
+    public boolean removeFact(String name) {
+        int[] removed = new int[1];
+        publish(builder -> {
+            if (builder.value(name) != null) {
+                removed[0] = IncrementalMaintenance.retract(builder, name);
+            }
+        });
+        if (removed[0] == 0) {
+            return false;
+        }
+        LOG.info("事実 '{}' を削除（導出済みの事実を含めて{}個を削除）", name, removed[0]);
+        return true;
     }
     
     /**
      * 推論ルールを追加
      */
     public void addRule(String name, Rule rule) {
-        rules.put(name, rule);
+        publish(builder -> builder.putRule(name, rule));
         LOG.info("ルール '{}' を追加: {} -> {}", name, rule.inputs(), rule.output());
     }
     
@@ -52,26 +250,117 @@ public class TensorLogicEngine {
         addRule(ruleName, rule);
     }
     
+    /**
+     * 事実とルールをまとめて登録（1つのバージョンとしてアトミックに公開）
+     * 
+     * ルールファイルの読み込みなど、多数の事実とルールを登録する場合に使用します。
+     * 読み取り側から途中まで登録された状態が見えることはありません。
+     */
+    public void register(Map<String, INDArray> newFacts, Map<String, Rule> newRules) {
+        register(newFacts, Map.of(), newRules);
+    }
+    
+    /**
+     * 事実・関係・ルールをまとめて登録（1つのバージョンとしてアトミックに公開）
+     */
+    public void register(Map<String, INDArray> newFacts, Map<String, ? extends Relation> newRelations,
+                         Map<String, Rule> newRules) {
+        EngineSnapshot next = publish(builder -> {
+            List<String> overwritten = new ArrayList<>();
+            for (String name : newFacts.keySet()) {
+                if (builder.value(name) != null) {
+                    overwritten.add(name);
+                }
+            }
+            for (String name : newRelations.keySet()) {
+                if (builder.value(name) != null) {
+                    overwritten.add(name);
+                }
+            }
+            builder.putFacts(newFacts);
+            newRelations.forEach(builder::putRelation);
+            newRules.forEach(builder::putRule);
+            IncrementalMaintenance.propagate(builder, overwritten);
+        });
+        LOG.info("事実{}個, 関係{}個, ルール{}個を登録 (version={})",
+            newFacts.size(), newRelations.size(), newRules.size(), next.version());
+    }
+    
+    /**
+     * 現在の状態（事実・関係・ルール・バージョン）をファイルに保存
+     * 
+     * 導出された事実も保存されるため、復元後に前向き推論をやり直す必要はありません。
+     * 保存中の書き込みは保存内容に影響しません（保存開始時のスナップショットを書き込みます）。
+     */
+    public SnapshotInfo saveSnapshot(Path file) throws IOException {
+        SnapshotInfo info = EngineSnapshotFile.write(current.get(), file);
+        LOG.info("スナップショットを保存: {} (version={}, 事実{}個, 関係{}個, ルール{}個, {}バイト)",
+            file, info.version(), info.factCount(), info.relationCount(), info.ruleCount(), info.bytes());
+        return info;
+    }
+    
+    /**
+     * ファイルに保存した状態を復元（現在の状態を置き換える）
+     * 
+     * 復元した状態のバージョン（スナップショット・ルール集合・事実ごと）は、保存時の値のまま戻すと
+     * 以前に公開したバージョンと重なり、表の証明や実行中の推論が古い状態と一致してしまうため、
+     * 現在のバージョンより後に進めて公開します（相対的な前後関係は保存時のまま）。
+     * 後向き推論の表は破棄します。
+     * 
+     * @throws IOException 形式が不正、またはチェックサムが一致しない場合（現在の状態は変更されません）
+     */
+    public SnapshotInfo restoreSnapshot(Path file) throws IOException {
+        EngineSnapshot read = EngineSnapshotFile.read(file);
+        EngineSnapshot restored;
+        synchronized (writeLock) {
+            restored = read.rebase(current.get().version() + 1);
+            current.set(restored);
+            goalTable.clear();
+            lazyTable.clear();
+        }
+        SnapshotInfo info = new SnapshotInfo(restored.version(), restored.ruleVersion(), restored.facts().size(),
+            restored.relations().size(), restored.rules().size(), Files.size(file));
+        LOG.info("スナップショットを復元: {} (version={}, 事実{}個, 関係{}個, ルール{}個)",
+            file, info.version(), info.factCount(), info.relationCount(), info.ruleCount());
+        return info;
+    }
+    
     /**
      * 全てのルールを取得（読み取り専用）
      */
     public Map<String, Rule> getAllRules() {
-        return Map.copyOf(rules);
+        return current.get().rules();
     }
     
     /**
      * 全ての事実を取得（読み取り専用）
+     * 
+     * {@link #getFact} と同じく、INT8 で保持した事実は量子化を戻した値を、
+     * 関係（疎・ビット）は密な行列に変換した値を返します
+     * （保持している精度・形式のまま参照する場合は {@link #snapshot()} を使用）。
+     * 要素数が tensor.logic.relation.dense-max-elements を超える関係は含めません（{@link #getRelation} で取得）。
      */
     public Map<String, INDArray> getAllFacts() {
-        return Map.copyOf(facts);
+        EngineSnapshot snapshot = current.get();
+        Map<String, INDArray> facts = new LinkedHashMap<>();
+        snapshot.facts().forEach((name, fact) -> facts.put(name, Precision.decode(fact)));
+        snapshot.relations().forEach((name, relation) -> {
+            if (denseElements(relation) <= relationDenseMaxElements) {
+                facts.put(name, relation.toDense());
+            } else {
+                LOG.debug("関係 '{}' は密な行列に変換できる要素数の上限を超えるため一覧に含めません: {}", name, relation);
+            }
+        });
+        return Collections.unmodifiableMap(facts);
     }
     
     /**
      * 全ての事実とルールをクリア
      */
     public void clear() {
-        facts.clear();
-        rules.clear();
+        publish(EngineSnapshot.Builder::clear);
+        goalTable.clear();
+        lazyTable.clear();
         LOG.info("全ての事実とルールをクリアしました");
     }
     
@@ -85,6 +374,9 @@ public class TensorLogicEngine {
     /**
      * 前向き推論を実行（ネームスペース指定）
      * 
+     * コンパイル済みの実行計画をトポロジカル順に1回実行します。
+     * 同じ呼び出しの中で前段のルールが導出した事実も後段のルールで使用されます。
+     * 
      * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
      */
     public Map<String, INDArray> forwardChain(String namespaceFilter) {
@@ -94,37 +386,165 @@ public class TensorLogicEngine {
             LOG.info("=== 前向き推論を開始（ネームスペース: {}） ===", namespaceFilter);
         }
         
-        Map<String, INDArray> newFacts = new HashMap<>();
+        // 新しい事実を追加（差分更新のために導出元のルールも記録）
+        ForwardChainingResult result = evaluateAndPublish(namespaceFilter,
+            snapshot -> snapshot.plan(namespaceFilter).execute(snapshot, parallelism()));
+        Map<String, INDArray> newFacts = result.derivedFacts();
+        if (!result.derivedRelations().isEmpty()) {
+            LOG.info("  関係を{}個導出: {}", result.derivedRelations().size(), result.derivedRelations().keySet());
+        }
+        LOG.info("前向き推論完了: {}個の新しい事実を導出", newFacts.size());
+        return newFacts;
+    }
+
+    /**
+     * 不動点まで前向き推論を実行（設定値の許容誤差・最大反復回数を使用）
+     *
+     * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
+     */
+    public ForwardChainingResult forwardChainToFixpoint(String namespaceFilter) {
+        return forwardChainToFixpoint(namespaceFilter, fixpointEpsilon, fixpointMaxIterations);
+    }
+
+    /**
+     * 不動点まで前向き推論を実行（セミナイーブ評価）
+     *
+     * 1ラウンド目は対象の全ルールを評価し、2ラウンド目以降は
+     * 直前のラウンドで値が変化した事実（差分）を入力に持つルールだけを再評価します。
+     * 全ての導出値の変化が epsilon 以下になった時点で収束とみなします。
+     *
+     * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
+     * @param epsilon 収束判定の許容誤差（要素ごとの絶対誤差の最大値）
+     * @param maxIterations 最大ラウンド数
+     */
+    public ForwardChainingResult forwardChainToFixpoint(String namespaceFilter,
+                                                        double epsilon,
+                                                        int maxIterations) {
+        LOG.info("=== 不動点前向き推論を開始（ネームスペース: {}, epsilon={}, 最大ラウンド={}） ===",
+            namespaceFilter == null ? "*" : namespaceFilter, epsilon, maxIterations);
+
+        ForwardChainingResult result = evaluateAndPublish(namespaceFilter, snapshot -> snapshot.plan(namespaceFilter)
+            .executeToFixpoint(snapshot, epsilon, maxIterations, parallelism()));
+
+        LOG.info("不動点前向き推論完了: {}ラウンド, ルール評価{}回, {}個の事実を導出",
+            result.rounds(), result.ruleEvaluations(), result.getDerivedFactCount());
+        return result;
+    }
+
+    /**
+     * N個のエンティティ（申請者など）に対して前向き推論をバッチで実行
+     * 
+     * エンティティごとの事実は先頭のバッチ軸に積み重ね、エンティティが指定しない事実
+     * （age_implies_adult などの共有の事実）はエンジンの値をブロードキャストします。
+     * 共有の事実が関係（疎・ビット）の場合は、密な行列に変換して使用します。
+     * 各ルールはエンティティ数によらず1回のテンソル演算で評価されます。
+     * 導出された事実はエンジンには追加されません。
+     * 
+     * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
+     * @param entities エンティティごとの事実（全エンティティで同じ事実名・同じ形状であること）
+     * @return エンティティごとの導出結果
+     * @throws IllegalArgumentException 共有の関係の要素数が tensor.logic.relation.dense-max-elements を超える場合
+     */
+    public BatchForwardChainingResult forwardChainBatch(String namespaceFilter,
+                                                        List<Map<String, INDArray>> entities) {
+        if (entities.isEmpty()) {
+            return new BatchForwardChainingResult(0, Map.of(), Map.of());
+        }
+        int batchSize = entities.size();
+        LOG.info("=== バッチ前向き推論を開始（ネームスペース: {}, エンティティ{}件） ===",
+            namespaceFilter == null ? "*" : namespaceFilter, batchSize);
         
-        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
-            Rule rule = entry.getValue();
-            
-            // ネームスペースフィルタリング
-            if (namespaceFilter != null && !namespaceFilter.equals("*") 
-                && !rule.namespace().equals(namespaceFilter)) {
-                LOG.debug("ルール '{}' をスキップ（ネームスペース: {}）", 
-                    entry.getKey(), rule.namespace());
-                continue;
-            }
-            
-            // すべての入力が揃っているかチェック
-            boolean allInputsAvailable = rule.inputs().stream()
-                    .allMatch(facts::containsKey);
-            
-            if (allInputsAvailable) {
-                INDArray result = applyRule(rule);
-                newFacts.put(rule.output(), result);
-                LOG.info("推論: {} -> {} (namespace: {})", 
-                    rule.inputs(), rule.output(), rule.namespace());
+        // エンティティごとの事実を [N, L] に積み重ねる
+        Map<String, BatchKernels.Batched> stacked = new HashMap<>();
+        for (Map.Entry<String, INDArray> entry : entities.get(0).entrySet()) {
+            String name = entry.getKey();
+            long[] entityShape = entry.getValue().shape();
+            long length = BatchKernels.elementCount(entityShape);
+            INDArray[] rows = new INDArray[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                INDArray value = entities.get(i).get(name);
+                if (value == null || !Arrays.equals(value.shape(), entityShape)) {
+                    throw new IllegalArgumentException(String.format(
+                        "エンティティ%dの事実 '%s' がないか、形状が他のエンティティと異なります", i, name));
+                }
+                rows[i] = value.reshape(1, length);
             }
+            stacked.put(name, BatchKernels.Batched.stacked(Nd4j.vstack(rows), entityShape));
         }
         
-        // 新しい事実を追加
-        facts.putAll(newFacts);
-        LOG.info("前向き推論完了: {}個の新しい事実を導出", newFacts.size());
-        return newFacts;
+        EngineSnapshot snapshot = current.get();
+        Map<String, BatchKernels.Batched> derived = snapshot.plan(namespaceFilter)
+            .executeBatch(name -> factOrDenseRelation(snapshot, name), stacked, batchSize);
+        
+        Map<String, INDArray> batchedFacts = new LinkedHashMap<>();
+        Map<String, INDArray> sharedFacts = new LinkedHashMap<>();
+        derived.forEach((name, value) -> {
+            if (value.batched()) {
+                batchedFacts.put(name, value.unflatten(batchSize));
+            } else {
+                sharedFacts.put(name, value.data());
+            }
+        });
+        LOG.info("バッチ前向き推論完了: エンティティ{}件 × {}個の事実を導出", batchSize, derived.size());
+        return new BatchForwardChainingResult(batchSize, batchedFacts, sharedFacts);
+    }
+
+    /**
+     * 現在のスナップショットを基にしたセッションを開始
+     * 
+     * セッション内で追加した事実・ルール・導出結果はセッションだけに保持され、
+     * エンジン本体（他のリクエスト）からは見えません。
+     * 基となる事実のテンソルはコピーされないため、開始コストはほぼゼロです。
+     */
+    public ReasoningSession openSession() {
+        return new ReasoningSession(this, current.get());
     }
     
+    /**
+     * ネームスペースのコンパイル済み実行計画を取得
+     * 
+     * 実行計画はネームスペースごとにキャッシュされ、
+     * ルールの追加（addRule）またはクリア（clear）の際にのみ破棄されます。
+     * 
+     * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルール）
+     */
+    public ExecutionPlan getExecutionPlan(String namespaceFilter) {
+        return current.get().plan(namespaceFilter);
+    }
+
+    /**
+     * ルールがネームスペースフィルタに該当するか判定
+     */
+    private boolean inScope(Rule rule, String namespaceFilter) {
+        return namespaceFilter == null || namespaceFilter.equals("*")
+            || rule.namespace().equals(namespaceFilter);
+    }
+    
+    /**
+     * 前向き推論で層の中のルールを並列に評価する条件
+     * 
+     * 層の入力要素数の合計が parallel.min-elements 未満の場合は逐次実行します。
+     */
+    ExecutionPlan.Parallelism parallelism() {
+        return parallelEnabled
+            ? new ExecutionPlan.Parallelism(ForkJoinPool.commonPool(), parallelMinElements)
+            : ExecutionPlan.Parallelism.SEQUENTIAL;
+    }
+
+    /**
+     * 不動点前向き推論の既定の許容誤差
+     */
+    public double getFixpointEpsilon() {
+        return fixpointEpsilon;
+    }
+
+    /**
+     * 不動点前向き推論の既定の最大ラウンド数
+     */
+    public int getFixpointMaxIterations() {
+        return fixpointMaxIterations;
+    }
+
     /**
      * 後向き推論を実行（全ネームスペース）
      * 
@@ -140,6 +560,8 @@ public class TensorLogicEngine {
     /**
      * 後向き推論を実行（ネームスペース指定）
      * 
+     * 表（メモ化）が有効な場合、同じ目標・サブゴールの有効な証明があれば再利用します。
+     * 
      * @param goal 達成したい目標（事実の名前）
      * @param namespaceFilter ネームスペース（nullまたは"*"の場合は全ルールを適用）
      * @return 後向き推論の結果
@@ -151,273 +573,387 @@ public class TensorLogicEngine {
             LOG.info("=== 後向き推論を開始: 目標='{}' （ネームスペース: {}） ===", goal, namespaceFilter);
         }
         
-        List<String> path = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
-        Map<String, INDArray> requiredFacts = new HashMap<>();
+        // 1つのスナップショットに対して推論する（途中の書き込みの影響を受けない）
+        EngineSnapshot snapshot = current.get();
+        return backwardChain(snapshot, name -> factOrDenseRelation(snapshot, name),
+            tablingEnabled ? goalTable : null, goal, namespaceFilter);
+    }
+    
+    /**
+     * 後向き推論を実行（ルールはスナップショットから、事実は lookup から取得）
+     * 
+     * セッション（{@link ReasoningSession}）からも使用されます。
+     * セッション固有の事実は表の有効性判定の対象外のため、表は使用しません。
+     */
+    BackwardChainingResult backwardChain(EngineSnapshot snapshot, Function<String, INDArray> lookup,
+                                         String goal, String namespaceFilter) {
+        return backwardChain(snapshot, lookup, null, goal, namespaceFilter);
+    }
+    
+    private BackwardChainingResult backwardChain(EngineSnapshot snapshot, Function<String, INDArray> lookup,
+                                                 GoalTable table, String goal, String namespaceFilter) {
+        if (table != null) {
+            GoalTable.Entry cached = table.lookup(goal, namespaceFilter, snapshot);
+            if (cached != null) {
+                LOG.info("✓ 後向き推論: 目標 '{}' の証明を表から再利用 (success={})", goal, cached.success());
+                return cached.toResult(goal);
+            }
+        }
         
-        boolean success = backwardChainRecursive(goal, path, visited, requiredFacts, namespaceFilter);
+        Proof proof = new Proof(snapshot, lookup, table, tableMaxEntries, namespaceFilter, true);
+        boolean success = backwardChainRecursive(proof, goal);
         
         if (success) {
             LOG.info("✓ 後向き推論成功: 目標 '{}' は達成可能", goal);
-            LOG.info("  推論パス: {}", String.join(" <- ", path));
-            LOG.info("  必要な事実: {}", requiredFacts.keySet());
+            LOG.info("  推論パス: {}", String.join(" <- ", proof.path));
+            LOG.info("  必要な事実: {}", proof.requiredFacts.keySet());
         } else {
             LOG.warn("✗ 後向き推論失敗: 目標 '{}' は達成不可能", goal);
         }
         
-        return new BackwardChainingResult(success, goal, path, requiredFacts);
+        if (table != null) {
+            // 最上位の目標は新しい探索の結果なので、成功・失敗のどちらも保持できる
+            table.store(goal, namespaceFilter,
+                GoalTable.Entry.of(snapshot, success, proof.path, proof.requiredFacts, proof.consulted),
+                tableMaxEntries);
+        }
+        return new BackwardChainingResult(success, goal, proof.path, proof.requiredFacts);
+    }
+    
+    /**
+     * 1回の後向き推論の探索状態
+     */
+    private static final class Proof {
+        final EngineSnapshot snapshot;
+        final Function<String, INDArray> lookup;
+        final GoalTable table;
+        final int tableMaxEntries;
+        final String namespaceFilter;
+        /** 関係（疎・ビット）を入力として使用するか（falseの場合、関係を参照する導出は失敗） */
+        final boolean relationInputs;
+        final List<String> path = new ArrayList<>();
+        final Set<String> visited = new HashSet<>();
+        /** 証明で使用・導出した事実（挿入順に保持し、サブゴールごとの差分を取り出せるようにする） */
+        final Map<String, INDArray> requiredFacts = new LinkedHashMap<>();
+        /** 探索中に参照した事実名（見つからなかった事実を含む） */
+        final List<String> consulted = new ArrayList<>();
+        /** 探索の文脈に依存した打ち切り（計算済み・循環）の回数 */
+        int shortcuts;
+        
+        Proof(EngineSnapshot snapshot, Function<String, INDArray> lookup,
+              GoalTable table, int tableMaxEntries, String namespaceFilter, boolean relationInputs) {
+            this.snapshot = snapshot;
+            this.lookup = lookup;
+            this.table = table;
+            this.tableMaxEntries = tableMaxEntries;
+            this.namespaceFilter = namespaceFilter;
+            this.relationInputs = relationInputs;
+        }
+        
+        INDArray lookupFact(String name) {
+            consulted.add(name);
+            return Precision.decode(lookup.apply(name));
+        }
+        
+        /**
+         * 表の証明をこの探索に取り込む
+         */
+        void reuse(GoalTable.Entry entry) {
+            path.addAll(entry.path());
+            entry.requiredFacts().forEach(requiredFacts::putIfAbsent);
+            consulted.addAll(entry.dependencies().keySet());
+        }
     }
     
     /**
      * 後向き推論の再帰的実装
      */
-    private boolean backwardChainRecursive(String goal, List<String> path, 
-                                           Set<String> visited, Map<String, INDArray> requiredFacts,
-                                           String namespaceFilter) {
+    private boolean backwardChainRecursive(Proof proof, String goal) {
         // 既に計算済み（requiredFactsに存在）の場合
-        if (requiredFacts.containsKey(goal)) {
+        if (proof.requiredFacts.containsKey(goal)) {
             LOG.debug("  ✓ '{}' は既に計算済み", goal);
+            proof.shortcuts++;
             return true;
         }
         
         // 既に訪問済みの場合は無限ループを防ぐ
-        if (visited.contains(goal)) {
+        if (proof.visited.contains(goal)) {
             LOG.debug("  ⚠ '{}' は訪問済みだが計算されていない（循環参照の可能性）", goal);
+            proof.shortcuts++;
             return false;
         }
-        visited.add(goal);
+        proof.visited.add(goal);
+        
+        int pathStart = proof.path.size();
+        int factsStart = proof.requiredFacts.size();
+        int consultedStart = proof.consulted.size();
+        int shortcutsBefore = proof.shortcuts;
         
         // 既に事実として存在する場合
-        if (facts.containsKey(goal)) {
-            path.add(goal + " [既知]");
-            requiredFacts.put(goal, facts.get(goal));
+        INDArray known = proof.lookupFact(goal);
+        if (known != null) {
+            proof.path.add(goal + " [既知]");
+            proof.requiredFacts.put(goal, known);
             LOG.debug("  ✓ '{}' は既知の事実", goal);
             return true;
         }
+        if (!proof.relationInputs && proof.snapshot.getRelation(goal) != null) {
+            LOG.debug("  ✗ '{}' は関係のため入力として使用しない", goal);
+            return false;
+        }
         
-        // 目標を生成できるルールを探す
-        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
-            Rule rule = entry.getValue();
+        // 表に有効な証明があれば再利用
+        if (proof.table != null) {
+            GoalTable.Entry cached = proof.table.lookup(goal, proof.namespaceFilter, proof.snapshot);
+            if (cached != null) {
+                LOG.debug("  ✓ '{}' の証明を表から再利用", goal);
+                proof.reuse(cached);
+                return cached.success();
+            }
+        }
+        
+        // 目標を生成できるルールを出力索引から探す
+        for (String ruleName : proof.snapshot.index().producersOf(goal)) {
+            Rule rule = proof.snapshot.rules().get(ruleName);
             
             // ネームスペースフィルタリング
-            if (namespaceFilter != null && !namespaceFilter.equals("*") 
-                && !rule.namespace().equals(namespaceFilter)) {
+            if (!inScope(rule, proof.namespaceFilter)) {
                 LOG.debug("  → ルール '{}' をスキップ（ネームスペース: {}）", 
-                    entry.getKey(), rule.namespace());
+                    ruleName, rule.namespace());
                 continue;
             }
             
-            if (rule.output().equals(goal)) {
-                LOG.debug("  → ルール '{}' が目標 '{}' を生成可能: {} -> {} (namespace: {})", 
-                    entry.getKey(), goal, rule.inputs(), rule.output(), rule.namespace());
+            LOG.debug("  → ルール '{}' が目標 '{}' を生成可能: {} -> {} (namespace: {})", 
+                ruleName, goal, rule.inputs(), rule.output(), rule.namespace());
+            
+            // このルールのすべての入力を再帰的に解決
+            boolean allInputsResolved = true;
+            for (String input : rule.inputs()) {
+                if (!backwardChainRecursive(proof, input)) {
+                    allInputsResolved = false;
+                    break;
+                }
+            }
+            
+            if (allInputsResolved) {
+                // すべての入力が解決できた場合、ルールを適用
+                proof.path.add(goal + " ← [" + String.join(", ", rule.inputs()) + "] (ns: " + rule.namespace() + ")");
                 
-                // このルールのすべての入力を再帰的に解決
-                boolean allInputsResolved = true;
-                for (String input : rule.inputs()) {
-                    if (!backwardChainRecursive(input, path, visited, requiredFacts, namespaceFilter)) {
-                        allInputsResolved = false;
-                        break;
-                    }
+                // ルールを適用して目標を計算（後向き推論用: requiredFactsから取得）
+                INDArray result = applyRuleForBackwardChaining(proof, rule);
+                
+                // Nullチェック - ルール適用が失敗した場合
+                if (result == null) {
+                    LOG.warn("  ✗ ルール適用失敗: {} (namespace: {})", goal, rule.namespace());
+                    proof.path.remove(proof.path.size() - 1); // 失敗したパスを削除
+                    continue; // 次のルールを試す
                 }
                 
-                if (allInputsResolved) {
-                    // すべての入力が解決できた場合、ルールを適用
-                    path.add(goal + " ← [" + String.join(", ", rule.inputs()) + "] (ns: " + rule.namespace() + ")");
-                    
-                    // ルールを適用して目標を計算（後向き推論用: requiredFactsから取得）
-                    INDArray result = applyRuleForBackwardChaining(rule, requiredFacts);
-                    
-                    // Nullチェック - ルール適用が失敗した場合
-                    if (result == null) {
-                        LOG.warn("  ✗ ルール適用失敗: {} (namespace: {})", goal, rule.namespace());
-                        path.remove(path.size() - 1); // 失敗したパスを削除
-                        continue; // 次のルールを試す
-                    }
-                    
-                    requiredFacts.put(goal, result);
-                    
-                    LOG.debug("  ✓ ルール適用成功: {} = {} (namespace: {})", goal, result, rule.namespace());
-                    return true;
+                proof.requiredFacts.put(goal, result);
+                
+                LOG.debug("  ✓ ルール適用成功: {} = {} (namespace: {})", goal, result, rule.namespace());
+                
+                // 探索の文脈に依存しない証明だけをサブゴールとして表に保持
+                if (proof.table != null && proof.shortcuts == shortcutsBefore) {
+                    proof.table.store(goal, proof.namespaceFilter, GoalTable.Entry.of(proof.snapshot, true,
+                            proof.path.subList(pathStart, proof.path.size()),
+                            tail(proof.requiredFacts, factsStart),
+                            proof.consulted.subList(consultedStart, proof.consulted.size())),
+                        proof.tableMaxEntries);
                 }
+                return true;
             }
         }
         
-        LOG.debug("  ✗ '{}' を生成するルール（namespace={}）が見つかりません", goal, namespaceFilter);
+        LOG.debug("  ✗ '{}' を生成するルール（namespace={}）が見つかりません", goal, proof.namespaceFilter);
         return false;
     }
     
+    /**
+     * 挿入順のマップから指定位置以降の要素を取得
+     */
+    private static Map<String, INDArray> tail(Map<String, INDArray> map, int from) {
+        Map<String, INDArray> tail = new LinkedHashMap<>();
+        int i = 0;
+        for (Map.Entry<String, INDArray> entry : map.entrySet()) {
+            if (i++ >= from) {
+                tail.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return tail;
+    }
+    
     /**
      * ルールを適用（後向き推論用）
      * requiredFacts から値を取得し、なければ facts から取得
      */
-    private INDArray applyRuleForBackwardChaining(Rule rule, Map<String, INDArray> requiredFacts) {
-        return switch (rule.operation()) {
-            case MODUS_PONENS -> {
-                // A かつ (A→B) から B を導出
-                INDArray premise = getFactValue(rule.inputs().get(0), requiredFacts);
-                INDArray implication = getFactValue(rule.inputs().get(1), requiredFacts);
-                
-                // Nullチェック
-                if (premise == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (implication == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield premise.mmul(implication);
-            }
-            case CONJUNCTION -> {
-                // A と B の論理積（最小値）
-                INDArray a = getFactValue(rule.inputs().get(0), requiredFacts);
-                INDArray b = getFactValue(rule.inputs().get(1), requiredFacts);
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield Transforms.min(a, b);
-            }
-            case DISJUNCTION -> {
-                // A または B の論理和（最大値）
-                INDArray a = getFactValue(rule.inputs().get(0), requiredFacts);
-                INDArray b = getFactValue(rule.inputs().get(1), requiredFacts);
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield Transforms.max(a, b);
-            }
-            case CHAIN -> {
-                // 関係の合成（行列の積）
-                INDArray a = getFactValue(rule.inputs().get(0), requiredFacts);
-                INDArray b = getFactValue(rule.inputs().get(1), requiredFacts);
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield a.mmul(b);
+    private INDArray applyRuleForBackwardChaining(Proof proof, Rule rule) {
+        INDArray[] inputs = new INDArray[rule.inputs().size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = getFactValue(proof, rule.inputs().get(i));
+            
+            // Nullチェック
+            if (inputs[i] == null) {
+                LOG.warn("事実が見つかりません: {}", rule.inputs().get(i));
+                return null;
             }
-            default -> throw new IllegalArgumentException("Unknown operation: " + rule.operation());
-        };
+        }
+        return RuleKernels.forRule(rule).apply(inputs);
     }
     
     /**
      * 事実の値を取得（requiredFacts を優先、なければ facts から）
      */
-    private INDArray getFactValue(String factName, Map<String, INDArray> requiredFacts) {
+    private INDArray getFactValue(Proof proof, String factName) {
         // まず requiredFacts から探す（後向き推論で計算された中間結果）
-        if (requiredFacts.containsKey(factName)) {
-            return requiredFacts.get(factName);
+        if (proof.requiredFacts.containsKey(factName)) {
+            return proof.requiredFacts.get(factName);
         }
         // なければ facts から探す（既知の事実）
-        return facts.get(factName);
+        return proof.lookupFact(factName);
     }
     
     /**
-     * ルールを適用
+     * 後向き推論の表の統計情報
      */
-    private INDArray applyRule(Rule rule) {
-        return switch (rule.operation()) {
-            case MODUS_PONENS -> {
-                // A かつ (A→B) から B を導出
-                INDArray premise = facts.get(rule.inputs().get(0));
-                INDArray implication = facts.get(rule.inputs().get(1));
-                
-                // Nullチェック
-                if (premise == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (implication == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield premise.mmul(implication);
-            }
-            case CONJUNCTION -> {
-                // A と B の論理積（最小値）
-                INDArray a = facts.get(rule.inputs().get(0));
-                INDArray b = facts.get(rule.inputs().get(1));
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield Transforms.min(a, b);
-            }
-            case DISJUNCTION -> {
-                // A または B の論理和（最大値）
-                INDArray a = facts.get(rule.inputs().get(0));
-                INDArray b = facts.get(rule.inputs().get(1));
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield Transforms.max(a, b);
-            }
-            case CHAIN -> {
-                // 関係の合成（行列の積）
-                INDArray a = facts.get(rule.inputs().get(0));
-                INDArray b = facts.get(rule.inputs().get(1));
-                
-                // Nullチェック
-                if (a == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(0));
-                    yield null;
-                }
-                if (b == null) {
-                    LOG.warn("事実が見つかりません: {}", rule.inputs().get(1));
-                    yield null;
-                }
-                
-                yield a.mmul(b);
-            }
-            default -> throw new IllegalArgumentException("Unknown operation: " + rule.operation());
-        };
+    public GoalTableStats getGoalTableStats() {
+        return goalTable.stats();
     }
     
     /**
      * 事実を取得
+     * 
+     * 関係（疎・ビット）は密な行列に変換して返します（関係のまま参照する場合は {@link #getRelation}）。
+     * 遅延導出（tensor.logic.fact.lazy）が有効な場合、まだ導出されていない事実は
+     * {@link #deriveFact} で必要なルールだけを評価して返します。
+     * 
+     * @throws IllegalArgumentException 関係の要素数が tensor.logic.relation.dense-max-elements を超える場合
      */
     public INDArray getFact(String name) {
-        return facts.get(name);
+        EngineSnapshot snapshot = current.get();
+        INDArray fact = factOrDenseRelation(snapshot, name);
+        if (fact == null && lazyEnabled) {
+            return derive(snapshot, name);
+        }
+        return Precision.decode(fact);
+    }
+    
+    /**
+     * 事実を取得し、まだ導出されていない場合は必要なルールだけを評価して導出
+     * 
+     * 前向き推論のように全ての事実を実体化せず、目標から後向きにたどったルールだけを評価します。
+     * 後向き推論の表が有効な場合（tensor.logic.backward-chain.table.enabled）、導出した値は
+     * 参照した事実のバージョンとともに遅延導出用の表（上限 tensor.logic.fact.lazy-max-entries）に保持し、
+     * 参照した事実かそれを生成するルールが変更されるまで再利用します（スナップショットには追加しません）。
+     * 関係（疎・ビット）を入力に持つルールは密な行列に展開せず、前向き推論でのみ評価します。
+     * 導出の途中で関係を参照するルール（関係を出力するルールを含む）は使用しないため、
+     * 関係を参照しない別のルールで導出できない目標はnullになります。
+     * 
+     * 既にある関係は {@link #getFact} と同じく密な行列に変換して返します。
+     * 
+     * @return 事実（存在せず導出もできない場合はnull）
+     * @throws IllegalArgumentException 関係の要素数が tensor.logic.relation.dense-max-elements を超える場合
+     */
+    public INDArray deriveFact(String name) {
+        EngineSnapshot snapshot = current.get();
+        INDArray fact = factOrDenseRelation(snapshot, name);
+        return fact != null ? Precision.decode(fact) : derive(snapshot, name);
+    }
+    
+    private INDArray derive(EngineSnapshot snapshot, String name) {
+        // 関係（疎・ビット）は前向き推論でのみ導出する
+        if (snapshot.index().producersOf(name).isEmpty() || snapshot.getRelation(name) != null) {
+            return null;
+        }
+        GoalTable table = tablingEnabled ? lazyTable : null;
+        if (table != null) {
+            GoalTable.Entry cached = table.lookup(name, null, snapshot);
+            if (cached != null) {
+                return cached.success() ? cached.requiredFacts().get(name) : null;
+            }
+        }
+        Proof proof = new Proof(snapshot, snapshot::getFact, table, lazyMaxEntries, null, false);
+        boolean success = backwardChainRecursive(proof, name);
+        if (table != null) {
+            table.store(name, null,
+                GoalTable.Entry.of(snapshot, success, proof.path, proof.requiredFacts, proof.consulted),
+                lazyMaxEntries);
+        }
+        LOG.debug("事実 '{}' を遅延導出: success={}, 評価したルール={}", name, success, proof.path);
+        return success ? proof.requiredFacts.get(name) : null;
+    }
+    
+    /**
+     * 事実を取得し、なければ関係を密な行列に変換して取得
+     * 
+     * 密なテンソルだけを扱う参照（{@link #getFact}・後向き推論など）で関係を読めるようにするためのもので、
+     * 関係は呼び出しごとに変換します。
+     * 
+     * @return 事実（事実も関係も存在しない場合はnull）
+     * @throws IllegalArgumentException 関係の要素数が tensor.logic.relation.dense-max-elements を超える場合
+     */
+    INDArray factOrDenseRelation(FactSource source, String name) {
+        INDArray fact = source.getFact(name);
+        if (fact != null) {
+            return fact;
+        }
+        Relation relation = source.getRelation(name);
+        if (relation == null) {
+            return null;
+        }
+        if (denseElements(relation) > relationDenseMaxElements) {
+            throw new IllegalArgumentException(String.format(
+                "関係 '%s' %s は密な行列に変換できる要素数の上限 %d を超えています"
+                    + "（tensor.logic.relation.dense-max-elements。関係のまま参照する場合は getRelation を使用）",
+                name, Arrays.toString(relation.shape()), relationDenseMaxElements));
+        }
+        return relation.toDense();
+    }
+    
+    private static long denseElements(Relation relation) {
+        return (long) relation.rows() * relation.cols();
+    }
+    
+    /**
+     * 関係（疎・ビット）を取得
+     */
+    public Relation getRelation(String name) {
+        return current.get().getRelation(name);
+    }
+    
+    /**
+     * 合成した関係 (left ⊗ right) の行ごとの上位 k 件を取得
+     * 
+     * CHAIN ルールで合成結果の全体（行数 × 列数）を導出してから並べ替える代わりに、
+     * 1行ずつ計算して上位 k 件だけを保持します（例: 人ごとの「友人の友人」の候補上位10件）。
+     * 
+     * @param left 左の事実・関係の名前
+     * @param right 右の事実・関係の名前
+     * @param k 行ごとの件数
+     * @param semiring 合成に使用する半環（nullの場合は SUM_PRODUCT）
+     * @param rows 計算する行（nullの場合は全ての行）
+     * @throws IllegalArgumentException 事実が見つからない、または形状が合わない場合
+     */
+    public TopKResult topK(String left, String right, int k, Semiring semiring, int[] rows) {
+        EngineSnapshot snapshot = current.get();
+        return TopK.compute(operand(snapshot, left), operand(snapshot, right),
+            semiring != null ? semiring : Semiring.SUM_PRODUCT, k, rows);
+    }
+    
+    /**
+     * 事実または関係を取得（遅延導出が有効な場合は未導出の事実を導出）
+     */
+    private Object operand(EngineSnapshot snapshot, String name) {
+        Relation relation = snapshot.getRelation(name);
+        if (relation != null) {
+            return relation;
+        }
+        INDArray fact = snapshot.getFact(name);
+        INDArray value = fact != null ? Precision.decode(fact) : lazyEnabled ? derive(snapshot, name) : null;
+        if (value == null) {
+            throw new IllegalArgumentException("事実が見つかりません: " + name);
+        }
+        return value;
     }
     
     /**
@@ -0,0 +1,388 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 合成した関係 (A ⊗ B) の行ごとの上位 k 件
+ *
+ * 合成結果の全体（行数 × 列数）を作らずに1行ずつ計算し、上位 k 件だけをヒープに保持します。
+ * メモリ使用量は入力の大きさと1行分（右が密な場合は1ブロック分）の作業領域に比例します。
+ *
+ * <ul>
+ *   <li>右が密な行列: 列を {@link #BLOCK} 列ずつのブロックに分け、右の各行のブロック内の最大値から
+ *       値の上界 ⊕_k A[i, k] ⊗ max_j B[k, j] を求めます。上界の大きいブロックから評価し、
+ *       上界がヒープの k 番目の値を下回った時点で残りのブロックを省略します。</li>
+ *   <li>右が疎な関係: 左の行の各要素について右の行を足し込み（行ごとの Gustavson 法）、
+ *       経路のある列だけを候補にします。演算量は経路の数に比例します。</li>
+ * </ul>
+ *
+ * 経路のない（値が半環の零元の）列は結果に含めません。
+ */
+final class TopK {
+
+    /** 右が密な場合の列ブロックの幅 */
+    static final int BLOCK = 512;
+
+    private TopK() {
+    }
+
+    /**
+     * 行ごとの上位 k 件を計算
+     *
+     * @param left 左（密な行列・ベクトル、または関係）
+     * @param right 右（密な行列、または関係）
+     * @param k 行ごとの件数
+     * @param rows 計算する行（nullの場合は全ての行）
+     */
+    static TopKResult compute(Object left, Object right, Semiring semiring, int k, int[] rows) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k は1以上を指定してください: " + k);
+        }
+        if (semiring == Semiring.LOG_SUM_EXP && (left instanceof Relation || right instanceof Relation)) {
+            // 疎な関係の格納されていない要素は0（対数空間では確率1）になり、log 0 として扱えない
+            throw new IllegalArgumentException("LOG_SUM_EXP の合成は密な関係のみ対応しています");
+        }
+        left = normalize(left);
+        right = normalize(right);
+        long[] leftShape = shapeOf(left);
+        long[] rightShape = shapeOf(right);
+        if (leftShape[1] != rightShape[0]) {
+            throw new IllegalArgumentException("合成の形状が一致しません: "
+                + Arrays.toString(leftShape) + " と " + Arrays.toString(rightShape));
+        }
+        int height = Math.toIntExact(leftShape[0]);
+        int inner = Math.toIntExact(leftShape[1]);
+        int width = Math.toIntExact(rightShape[1]);
+        if (rows == null) {
+            rows = IntStream.range(0, height).toArray();
+        }
+        for (int row : rows) {
+            if (row < 0 || row >= height) {
+                throw new IllegalArgumentException("行番号が範囲外です: " + row + "（行数 " + height + "）");
+            }
+        }
+
+        Scan scan = right instanceof SparseRelation sparse
+            ? new SparseScan(sparse, semiring)
+            : new DenseScan((INDArray) right, semiring, inner, width);
+        int[] index = new int[inner];
+        double[] value = new double[inner];
+        Heap heap = new Heap(Math.max(1, Math.min(k, width)));
+        List<TopKResult.Row> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            int count = loadRow(left, row, semiring.zero(), index, value);
+            scan.run(index, value, count, heap);
+            result.add(new TopKResult.Row(row, heap.drain()));
+        }
+        return new TopKResult(k, semiring, result, scan.evaluated, scan.pruned);
+    }
+
+    /**
+     * 左の行の零元でない要素を取り出す
+     *
+     * @return 要素の数（index・value の先頭から格納）
+     */
+    private static int loadRow(Object left, int row, double zero, int[] index, double[] value) {
+        int count = 0;
+        if (left instanceof SparseRelation sparse) {
+            for (int p = sparse.rowStart(row); p < sparse.rowEnd(row); p++) {
+                index[count] = sparse.colAt(p);
+                value[count++] = sparse.valueAt(p);
+            }
+            return count;
+        }
+        double[] values = ((INDArray) left).getRow(row).toDoubleVector();
+        for (int i = 0; i < values.length; i++) {
+            // 零元との ⊗ は零元になり、⊕ の結果を変えない
+            if (values[i] != zero) {
+                index[count] = i;
+                value[count++] = values[i];
+            }
+        }
+        return count;
+    }
+
+    private static Object normalize(Object operand) {
+        if (operand instanceof BitRelation bits) {
+            return bits.toSparse();
+        }
+        if (operand instanceof INDArray tensor) {
+            // ベクトルは行ベクトル [1, n] として扱う
+            return tensor.rank() == 1 ? tensor.reshape(1, tensor.length()) : tensor;
+        }
+        return operand;
+    }
+
+    private static long[] shapeOf(Object operand) {
+        long[] shape = operand instanceof Relation relation ? relation.shape() : ((INDArray) operand).shape();
+        if (shape.length != 2) {
+            throw new IllegalArgumentException("合成はベクトルまたは行列のみ対応しています: " + Arrays.toString(shape));
+        }
+        return shape;
+    }
+
+    /**
+     * 左の1行と右から、合成した行の候補をヒープに追加する処理
+     */
+    private abstract static class Scan {
+        final Semiring semiring;
+        long evaluated;
+        long pruned;
+
+        Scan(Semiring semiring) {
+            this.semiring = semiring;
+        }
+
+        abstract void run(int[] index, double[] value, int count, Heap heap);
+    }
+
+    /**
+     * 右が密な行列の場合（列ブロックごとの上界で枝刈り）
+     */
+    private static final class DenseScan extends Scan {
+        private final int width;
+        private final int blocks;
+        /** 右の値（[inner, width] の C 順） */
+        private final double[] data;
+        /** blockMax[b][k]: 右の行 k のブロック b 内の最大値 */
+        private final double[][] blockMax;
+        /** 右の値が全て0以上か（和・積の上界が0なら値も0になる） */
+        private final boolean nonNegative;
+        private final double[] bounds;
+        private final Integer[] order;
+        private final double[] scores = new double[BLOCK];
+
+        DenseScan(INDArray right, Semiring semiring, int inner, int width) {
+            super(semiring);
+            long length = (long) inner * width;
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("右の行列が大きすぎます: " + Arrays.toString(right.shape()));
+            }
+            this.width = width;
+            this.blocks = (width + BLOCK - 1) / BLOCK;
+            this.data = right.reshape(length).toDoubleVector();
+            this.nonNegative = nonNegative(data, data.length);
+            this.blockMax = new double[blocks][inner];
+            for (int b = 0; b < blocks; b++) {
+                int start = b * BLOCK;
+                int end = Math.min(start + BLOCK, width);
+                for (int k = 0; k < inner; k++) {
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int j = start; j < end; j++) {
+                        max = Math.max(max, data[k * width + j]);
+                    }
+                    blockMax[b][k] = max;
+                }
+            }
+            this.bounds = new double[blocks];
+            this.order = new Integer[blocks];
+        }
+
+        @Override
+        void run(int[] index, double[] value, int count, Heap heap) {
+            double zero = semiring.zero();
+            // 上界は ⊗ が右の値について単調な場合のみ使える（積は左の値が0以上の場合）
+            boolean bounded = semiring == Semiring.MAX_MIN || semiring == Semiring.LOG_SUM_EXP
+                || nonNegative(value, count);
+            for (int b = 0; b < blocks; b++) {
+                order[b] = b;
+                double bound = zero;
+                if (bounded) {
+                    for (int p = 0; p < count; p++) {
+                        bound = semiring.add(bound, semiring.multiply(value[p], blockMax[b][index[p]]));
+                    }
+                }
+                bounds[b] = bounded ? bound : Double.POSITIVE_INFINITY;
+            }
+            if (bounded) {
+                Arrays.sort(order, (x, y) -> Double.compare(bounds[y], bounds[x]));
+            }
+
+            // 上界が零元のブロックは全ての値が零元（最大を取る半環では値は零元以上になる）
+            boolean exhaustible = semiring != Semiring.SUM_PRODUCT || nonNegative;
+            for (int o = 0; o < blocks; o++) {
+                int b = order[o];
+                // 上界の降順に評価しているため、以降のブロックも上位 k 件に入らない
+                if ((exhaustible && bounds[b] == zero) || (heap.isFull() && bounds[b] < heap.minScore())) {
+                    pruned += blocks - o;
+                    return;
+                }
+                evaluated++;
+                int start = b * BLOCK;
+                int end = Math.min(start + BLOCK, width);
+                Arrays.fill(scores, 0, end - start, zero);
+                for (int p = 0; p < count; p++) {
+                    double a = value[p];
+                    int base = index[p] * width;
+                    for (int j = start; j < end; j++) {
+                        scores[j - start] = semiring.add(scores[j - start], semiring.multiply(a, data[base + j]));
+                    }
+                }
+                for (int j = start; j < end; j++) {
+                    if (scores[j - start] != zero) {
+                        heap.offer(j, scores[j - start]);
+                    }
+                }
+            }
+        }
+
+        private static boolean nonNegative(double[] value, int count) {
+            for (int p = 0; p < count; p++) {
+                if (value[p] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 右が疎な関係の場合（経路のある列だけを足し込む。1行を1ブロックとして数える）
+     */
+    private static final class SparseScan extends Scan {
+        private final SparseRelation right;
+        private final double[] scores;
+        private final boolean[] touched;
+        private final int[] columns;
+
+        SparseScan(SparseRelation right, Semiring semiring) {
+            super(semiring);
+            this.right = right;
+            this.scores = new double[right.cols()];
+            this.touched = new boolean[right.cols()];
+            this.columns = new int[right.cols()];
+        }
+
+        @Override
+        void run(int[] index, double[] value, int count, Heap heap) {
+            double zero = semiring.zero();
+            int reached = 0;
+            for (int p = 0; p < count; p++) {
+                double a = value[p];
+                for (int q = right.rowStart(index[p]); q < right.rowEnd(index[p]); q++) {
+                    int column = right.colAt(q);
+                    if (!touched[column]) {
+                        touched[column] = true;
+                        scores[column] = zero;
+                        columns[reached++] = column;
+                    }
+                    scores[column] = semiring.add(scores[column], semiring.multiply(a, right.valueAt(q)));
+                }
+            }
+            for (int t = 0; t < reached; t++) {
+                int column = columns[t];
+                touched[column] = false;
+                if (scores[column] != zero) {
+                    heap.offer(column, scores[column]);
+                }
+            }
+            evaluated++;
+        }
+    }
+
+    /**
+     * 上位 k 件を保持する最小ヒープ（根が k 件の中で最も下位）
+     *
+     * 値の大きい方を上位とし、同じ値の場合は列番号の小さい方を上位とします。
+     */
+    private static final class Heap {
+        private final double[] scores;
+        private final int[] columns;
+        private int size;
+
+        Heap(int capacity) {
+            this.scores = new double[capacity];
+            this.columns = new int[capacity];
+        }
+
+        boolean isFull() {
+            return size == scores.length;
+        }
+
+        double minScore() {
+            return scores[0];
+        }
+
+        void offer(int column, double score) {
+            if (size < scores.length) {
+                scores[size] = score;
+                columns[size] = column;
+                siftUp(size++);
+            } else if (lower(scores[0], columns[0], score, column)) {
+                scores[0] = score;
+                columns[0] = column;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * 保持している候補を上位から順に取り出し、ヒープを空にする
+         */
+        List<TopKResult.Match> drain() {
+            TopKResult.Match[] matches = new TopKResult.Match[size];
+            while (size > 0) {
+                matches[size - 1] = new TopKResult.Match(columns[0], scores[0]);
+                size--;
+                scores[0] = scores[size];
+                columns[0] = columns[size];
+                siftDown(0);
+            }
+            return List.of(matches);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!lower(i, parent)) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int lowest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && lower(left, lowest)) {
+                    lowest = left;
+                }
+                if (right < size && lower(right, lowest)) {
+                    lowest = right;
+                }
+                if (lowest == i) {
+                    return;
+                }
+                swap(i, lowest);
+                i = lowest;
+            }
+        }
+
+        private boolean lower(int i, int j) {
+            return lower(scores[i], columns[i], scores[j], columns[j]);
+        }
+
+        /**
+         * (scoreA, columnA) が (scoreB, columnB) より下位か
+         */
+        private static boolean lower(double scoreA, int columnA, double scoreB, int columnB) {
+            return scoreA < scoreB || (scoreA == scoreB && columnA > columnB);
+        }
+
+        private void swap(int i, int j) {
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+            int column = columns[i];
+            columns[i] = columns[j];
+            columns[j] = column;
+        }
+    }
+}
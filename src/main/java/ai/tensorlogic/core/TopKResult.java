@@ -0,0 +1,37 @@
+package ai.tensorlogic.core;
+
+import java.util.List;
+
+/**
+ * 合成した関係の行ごとの上位 k 件を保持するレコード
+ *
+ * @param k 行ごとの件数の上限
+ * @param semiring 合成に使用した半環
+ * @param rows 行ごとの結果（指定した行の順）
+ * @param evaluatedBlocks 評価した列ブロックの数
+ * @param prunedBlocks 上界が上位 k 件に届かないため評価を省略した列ブロックの数
+ */
+public record TopKResult(
+    int k,
+    Semiring semiring,
+    List<Row> rows,
+    long evaluatedBlocks,
+    long prunedBlocks
+) {
+
+    /**
+     * 1行分の結果
+     *
+     * @param row 行番号（左の関係の始点）
+     * @param matches 上位の列（値の降順、同じ値は列番号の昇順）
+     */
+    public record Row(int row, List<Match> matches) {}
+
+    /**
+     * 合成した関係の1要素
+     *
+     * @param column 列番号（右の関係の終点）
+     * @param score 合成した値
+     */
+    public record Match(int column, double score) {}
+}
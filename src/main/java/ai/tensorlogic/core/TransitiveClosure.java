@@ -0,0 +1,197 @@
+package ai.tensorlogic.core;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * 関係の推移閉包 R⁺ = R ⊕ R² ⊕ R³ ⊕ …（CLOSURE ルール）
+ *
+ * 祖先・到達可能性のように任意の段数の合成を、1つのルールの評価の中で計算します。
+ * 値に変化がなくなった時点で打ち切ります。
+ *
+ * <ul>
+ *   <li>密な関係・冪等な半環（MAX_MIN, MAX_PRODUCT）: 反復二乗 A ← A ⊕ A⊗A。
+ *       1回ごとに扱える経路長が2倍になるため、行列積は O(log 段数) 回で済みます。</li>
+ *   <li>密な関係・SUM_PRODUCT: 二乗すると同じ経路を重複して数えるため、
+ *       差分 D ← D⊗R を足し込む反復で計算します。</li>
+ *   <li>疎な関係: 二乗すると密になりやすいため、前の反復で変化した要素（差分）だけを
+ *       R と合成するセミナイーブ反復で計算します。</li>
+ * </ul>
+ *
+ * SUM_PRODUCT の閉包は循環のある関係では収束しないため、反復を始める前に非ゼロ要素（辺）の循環を調べ、
+ * 循環があれば直ちに {@link DivergenceException} を投げます（前向き推論ではそのルールの出力だけを設定しません）。
+ * 密な関係は辺の有無の反復二乗（行列積 O(log n) 回）の対角成分で、疎な関係は辺をたどるトポロジカルソートで調べます。
+ */
+final class TransitiveClosure {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransitiveClosure.class);
+
+    /** この値以下の変化は変化なしとみなす */
+    private static final double EPSILON = 1e-12;
+
+    private TransitiveClosure() {
+    }
+
+    /**
+     * SUM_PRODUCT の推移閉包が循環のある関係で収束しない場合の例外
+     */
+    static final class DivergenceException extends IllegalArgumentException {
+        DivergenceException() {
+            super("SUM_PRODUCT の推移閉包は循環のある関係では収束しません");
+        }
+    }
+
+    /**
+     * 密な関係の推移閉包
+     */
+    static INDArray dense(INDArray relation, Semiring semiring) {
+        long n = checkSquare(relation.shape());
+        if (!semiring.isIdempotent()) {
+            return denseDelta(relation, n);
+        }
+        // 経路は高々 n 段で十分なので、2^k ≥ n となる回数と収束の確認1回で打ち切る
+        int limit = 64 - Long.numberOfLeadingZeros(Math.max(n - 1, 1)) + 1;
+        INDArray closure = relation;
+        for (int i = 1; i <= limit; i++) {
+            INDArray next = semiring.plus(closure, semiring.matmul(closure, closure));
+            if (Transforms.abs(next.sub(closure)).maxNumber().doubleValue() <= EPSILON) {
+                LOG.debug("推移閉包: 反復二乗{}回で収束 (n={}, {})", i, n, semiring);
+                return next;
+            }
+            closure = next;
+        }
+        LOG.debug("推移閉包: 反復二乗の上限{}回に到達 (n={}, {})", limit, n, semiring);
+        return closure;
+    }
+
+    /**
+     * 密な関係の推移閉包（SUM_PRODUCT: R + R² + … を差分で足し込む）
+     */
+    private static INDArray denseDelta(INDArray relation, long n) {
+        if (hasCycle(relation, n)) {
+            throw new DivergenceException();
+        }
+        INDArray closure = relation;
+        INDArray delta = relation;
+        for (long i = 1; i <= n; i++) {
+            delta = delta.mmul(relation);
+            if (Transforms.abs(delta).maxNumber().doubleValue() <= EPSILON) {
+                LOG.debug("推移閉包: {}段で収束 (n={}, SUM_PRODUCT)", i, n);
+                return closure;
+            }
+            closure = closure.add(delta);
+        }
+        throw new DivergenceException();
+    }
+
+    /**
+     * 疎な関係の推移閉包（セミナイーブ反復）
+     */
+    static SparseRelation sparse(SparseRelation relation, Semiring semiring) {
+        long n = checkSquare(relation.shape());
+        if (!semiring.isIdempotent() && hasCycle(relation)) {
+            throw new DivergenceException();
+        }
+        SparseRelation closure = relation;
+        SparseRelation delta = relation;
+        for (long i = 1; i <= n; i++) {
+            // 前の反復で変化した経路だけを1段延ばす
+            SparseRelation extended = delta.chain(relation, semiring);
+            if (semiring.isIdempotent()) {
+                SparseRelation next = closure.plus(extended, semiring);
+                delta = next.changedFrom(closure, EPSILON);
+                closure = next;
+            } else {
+                delta = extended;
+                if (delta.nnz() > 0) {
+                    closure = closure.plus(delta, semiring);
+                }
+            }
+            if (delta.nnz() == 0) {
+                LOG.debug("推移閉包: {}回の反復で収束 ({}, {})", i, closure, semiring);
+                return closure;
+            }
+        }
+        if (!semiring.isIdempotent()) {
+            throw new DivergenceException();
+        }
+        LOG.debug("推移閉包: 反復の上限{}回に到達 ({}, {})", n, closure, semiring);
+        return closure;
+    }
+
+    /**
+     * 密な関係の辺（非ゼロ要素）に循環があるか
+     *
+     * 辺の有無を0/1の行列にして A ← sign(A + A·A) を反復二乗し、到達可能性の対角成分を調べます。
+     * 1回ごとに扱える経路長が2倍になるため、行列積は高々 O(log n) 回です。
+     */
+    private static boolean hasCycle(INDArray relation, long n) {
+        INDArray reach = Transforms.sign(Transforms.abs(relation));
+        int limit = 64 - Long.numberOfLeadingZeros(Math.max(n - 1, 1)) + 1;
+        for (int i = 1; i <= limit; i++) {
+            INDArray next = Transforms.sign(reach.add(reach.mmul(reach)));
+            if (next.equalsWithEps(reach, 0.0)) {
+                break;
+            }
+            reach = next;
+        }
+        for (long i = 0; i < n; i++) {
+            if (reach.getDouble(i, i) != 0.0) {
+                LOG.debug("推移閉包: 頂点{}を通る循環を検出 (n={}, SUM_PRODUCT)", i, n);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 疎な関係の辺（非ゼロ要素）に循環があるか（入次数によるトポロジカルソート、O(n + 辺の数)）
+     */
+    private static boolean hasCycle(SparseRelation relation) {
+        int n = relation.rows();
+        int[] inDegree = new int[n];
+        for (int r = 0; r < n; r++) {
+            for (int p = relation.rowStart(r); p < relation.rowEnd(r); p++) {
+                if (relation.valueAt(p) != 0.0) {
+                    inDegree[relation.colAt(p)]++;
+                }
+            }
+        }
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (inDegree[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int r = queue[head++];
+            for (int p = relation.rowStart(r); p < relation.rowEnd(r); p++) {
+                if (relation.valueAt(p) != 0.0 && --inDegree[relation.colAt(p)] == 0) {
+                    queue[tail++] = relation.colAt(p);
+                }
+            }
+        }
+        // 入次数が0にならなかった頂点は循環の上にあるか、循環から到達できる
+        return tail < n;
+    }
+
+    /**
+     * 出力の形状（入力と同じ正方行列、それ以外はnull）
+     */
+    static long[] resolveShape(long[] shape) {
+        return shape.length == 2 && shape[0] == shape[1] ? shape.clone() : null;
+    }
+
+    private static long checkSquare(long[] shape) {
+        if (resolveShape(shape) == null) {
+            throw new IllegalArgumentException("推移閉包は正方行列の関係のみ対応しています: " + Arrays.toString(shape));
+        }
+        return shape[0];
+    }
+}
@@ -1,5 +1,6 @@
 package ai.tensorlogic.integration;
 
+import ai.tensorlogic.core.ReasoningSession;
 import ai.tensorlogic.core.TensorLogicEngine;
 import ai.tensorlogic.llm.LLMResponse;
 import ai.tensorlogic.llm.LLMService;
@@ -63,32 +64,37 @@ public class GenericLLMVerifier {
             LOG.info("LLMの回答: {}", llmResponse.answer());
             LOG.info("LLM確信度: {}", llmResponse.confidence());
             
-            // 3. LLMの回答から事実を抽出・登録
-            extractAndRegisterFacts(llmResponse, request);
-            
-            // 4. 推論エンジンで前向き推論を実行
-            if (request.namespace() != null && !request.namespace().isBlank()) {
-                LOG.info("推論エンジンで検証を実行（ネームスペース: {}）...", request.namespace());
-            } else {
-                LOG.info("推論エンジンで検証を実行（全ネームスペース）...");
+            // リクエスト固有の事実と推論結果はセッションに閉じ込め、
+            // 共有のエンジン（他のリクエスト）には書き込まない
+            try (ReasoningSession session = engine.openSession()) {
+                // 3. LLMの回答から事実を抽出・登録
+                extractAndRegisterFacts(session, llmResponse, request);
+                
+                // 4. 推論エンジンで前向き推論を実行
+                if (request.namespace() != null && !request.namespace().isBlank()) {
+                    LOG.info("推論エンジンで検証を実行（ネームスペース: {}）...", request.namespace());
+                } else {
+                    LOG.info("推論エンジンで検証を実行（全ネームスペース）...");
+                }
+                Map<String, INDArray> inferredFacts = session.forwardChain(request.namespace());
+                LOG.info("推論完了: {}個の新しい事実を推論", inferredFacts.size());
+                
+                // 5. 期待される結果と比較
+                VerificationStatus status = verifyAgainstExpectedResults(
+                    session,
+                    inferredFacts, 
+                    request.expectedOutputs(),
+                    request.tolerance()
+                );
+                
+                // 6. 結果を構築
+                return buildVerificationResult(
+                    llmResponse,
+                    inferredFacts,
+                    status,
+                    request
+                );
             }
-            Map<String, INDArray> inferredFacts = engine.forwardChain(request.namespace());
-            LOG.info("推論完了: {}個の新しい事実を推論", inferredFacts.size());
-            
-            // 5. 期待される結果と比較
-            VerificationStatus status = verifyAgainstExpectedResults(
-                inferredFacts, 
-                request.expectedOutputs(),
-                request.tolerance()
-            );
-            
-            // 6. 結果を構築
-            return buildVerificationResult(
-                llmResponse,
-                inferredFacts,
-                status,
-                request
-            );
             
         } catch (Exception e) {
             LOG.error("検証中にエラーが発生: {}", e.getMessage(), e);
@@ -100,9 +106,10 @@ public class GenericLLMVerifier {
     }
     
     /**
-     * LLMの回答から事実を抽出してエンジンに登録
+     * LLMの回答から事実を抽出してセッションに登録
      */
-    private void extractAndRegisterFacts(LLMResponse llmResponse, GenericVerificationRequest request) {
+    private void extractAndRegisterFacts(ReasoningSession session, LLMResponse llmResponse,
+                                         GenericVerificationRequest request) {
         // カスタム事実が指定されている場合
         if (request.customFacts() != null && !request.customFacts().isEmpty()) {
             LOG.info("カスタム事実を登録: {}個", request.customFacts().size());
@@ -115,7 +122,7 @@ public class GenericLLMVerifier {
                 double[] valueArray = values.stream().mapToDouble(Double::doubleValue).toArray();
                 INDArray tensor = org.nd4j.linalg.factory.Nd4j.create(valueArray);
                 
-                engine.addFact(factName, tensor);
+                session.addFact(factName, tensor, converter.defaultPrecision());
                 LOG.debug("事実を登録: {} = {}", factName, tensor);
             }
         }
@@ -126,7 +133,7 @@ public class GenericLLMVerifier {
             INDArray llmConfidenceTensor = org.nd4j.linalg.factory.Nd4j.create(
                 new double[]{llmResponse.confidence()}
             );
-            engine.addFact(llmFactName, llmConfidenceTensor);
+            session.addFact(llmFactName, llmConfidenceTensor, converter.defaultPrecision());
             LOG.debug("LLM確信度を事実として登録: {} = {}", llmFactName, llmResponse.confidence());
         }
     }
@@ -135,6 +142,7 @@ public class GenericLLMVerifier {
      * 推論結果を期待される結果と比較
      */
     private VerificationStatus verifyAgainstExpectedResults(
+            ReasoningSession session,
             Map<String, INDArray> inferredFacts,
             Map<String, Double> expectedOutputs,
             double tolerance) {
@@ -152,7 +160,7 @@ public class GenericLLMVerifier {
             String factName = expected.getKey();
             double expectedValue = expected.getValue();
             
-            INDArray actualTensor = engine.getFact(factName);
+            INDArray actualTensor = session.getFact(factName);
             
             if (actualTensor == null) {
                 missing.add(factName);
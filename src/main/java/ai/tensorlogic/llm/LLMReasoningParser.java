@@ -61,7 +61,8 @@ public class LLMReasoningParser {
             "1.0",
             "LLMの推論プロセスをTensor Logicで形式化",
             "LLM Parser",
-            "llm-reasoning-" + timestamp.replace(":", "-")
+            "llm-reasoning-" + timestamp.replace(":", "-"),
+            null
         );
     }
     
@@ -172,6 +173,8 @@ public class LLMReasoningParser {
             List.of(1),
             values,
             confidence,
+            null,
+            null,
             null
         );
         
@@ -223,7 +226,9 @@ public class LLMReasoningParser {
             output,
             operation,
             stepNumber,
-            true
+            true,
+            null,
+            null
         );
     }
     
@@ -231,7 +236,7 @@ public class LLMReasoningParser {
      * デフォルトのルールを作成（最後のステップから）
      */
     private RuleDefinition.RuleSpec createDefaultRule(List<RuleDefinition.Fact> facts) {
-        // 全てのFactを入力とする（2つ以上の場合）
+        // 全てのFactを入力とする（CONJUNCTION は全入力の最小確信度を1回で計算する）
         List<String> inputs;
         
         if (facts.size() >= 2) {
@@ -247,24 +252,6 @@ public class LLMReasoningParser {
             );
         }
         
-        // CONJUNCTIONは2入力しか取れないので、
-        // 複数のFactがある場合は最初の2つだけを使うか、
-        // または新しい演算を定義する必要がある
-        // 今回は簡易的に最小確信度のFactを選択
-        if (facts.size() > 2) {
-            // 確信度が最も低い2つのFactを選択
-            inputs = facts.stream()
-                .sorted((f1, f2) -> Double.compare(
-                    f1.tensor().confidence(),
-                    f2.tensor().confidence()
-                ))
-                .limit(2)
-                .map(RuleDefinition.Fact::name)
-                .toList();
-            
-            LOG.info("{}個のFactから確信度が最も低い2つを選択: {}", facts.size(), inputs);
-        }
-        
         return new RuleDefinition.RuleSpec(
             "final_conclusion_rule",
             "最終的な結論を導出（全Factsの最小確信度を反映）",
@@ -273,7 +260,9 @@ public class LLMReasoningParser {
             "final_conclusion",
             "CONJUNCTION",
             999,
-            true
+            true,
+            null,
+            null
         );
     }
     
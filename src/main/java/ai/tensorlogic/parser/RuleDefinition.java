@@ -1,6 +1,7 @@
 package ai.tensorlogic.parser;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import java.util.List;
 import java.util.Map;
 
@@ -25,7 +26,8 @@ public record RuleDefinition(
         String version,
         String description,
         String author,
-        String namespace  // ルールセットのネームスペース
+        String namespace, // ルールセットのネームスペース
+        String dtype      // 事実を保持する精度の既定（"float64", "float32", "bfloat16", "int8"）
     ) {}
     
     /**
@@ -50,13 +52,19 @@ public record RuleDefinition(
     
     /**
      * テンソル仕様
+     *
+     * 密なテンソルの values は {@link TensorSpecDeserializer} がトークン列から直接読み込みます。
+     * source を指定した場合は values の代わりに外部のファイル（.npy または値だけのファイル）から読み込みます。
      */
+    @JsonDeserialize(using = TensorSpecDeserializer.class)
     public record TensorSpec(
         String type,        // "vector", "matrix", "tensor"
         List<Integer> shape,
-        Object values,      // List<Double> or List<List<Double>>
+        Object values,      // StreamedValues または List（密なテンソル）, 辺のリスト（sparse）, Number（scalar）
         Double confidence,
-        Map<String, List<String>> labels
+        Map<String, List<String>> labels,
+        String dtype,       // 保持する精度（省略時はメタデータ・設定の既定）
+        String source       // 値のファイル（.npy、またはリトルエンディアンの値だけのファイル。相対パスはYAMLのディレクトリ基準。JAR内のYAMLでは絶対パスのみ）
     ) {}
     
     /**
@@ -68,9 +76,11 @@ public record RuleDefinition(
         String notation,
         List<String> inputs,
         String output,
-        String operation,   // "MODUS_PONENS", "CONJUNCTION", "CHAIN"
+        String operation,   // "MODUS_PONENS", "CONJUNCTION", "CHAIN", "EINSUM", "CLOSURE"
         Integer priority,
-        Boolean enabled
+        Boolean enabled,
+        String equation,    // EINSUM の添字の指定（例: "xy,yz,zw->xw"）
+        String semiring     // CHAIN・MODUS_PONENS・CLOSURE の半環（"SUM_PRODUCT", "MAX_MIN", "MAX_PRODUCT", "LOG_SUM_EXP"）
     ) {}
     
     /**
@@ -1,20 +1,33 @@
 package ai.tensorlogic.parser;
 
 import ai.tensorlogic.core.Rule;
+import ai.tensorlogic.core.Relation;
+import ai.tensorlogic.core.RulePackFile;
 import ai.tensorlogic.core.TensorLogicEngine;
+import ai.tensorlogic.store.MappedFactStore;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 /**
  * ルールローダー
  * 
  * ルール定義ファイルを読み込み、TensorLogicEngineに登録します。
+ * 変換済みのルール定義のキャッシュが有効な場合、内容が変わっていないファイルは解析・変換を省略します。
  */
 @ApplicationScoped
 public class RuleLoader {
@@ -30,24 +43,20 @@ public class RuleLoader {
     @Inject
     TensorLogicEngine engine;
     
+    @Inject
+    MappedFactStore factStore;
+    
+    @Inject
+    RulePackCache cache;
+    
     /**
      * ルールファイルを読み込んでエンジンに登録
      */
     public LoadResult loadFromFile(String filePath) {
         try {
             LOG.info("ルールファイルを読み込み開始: {}", filePath);
-            
-            // 1. ルール定義を読み込み
-            RuleDefinition definition = parser.parseFile(filePath);
-            
-            // 2. 検証
-            RuleParser.ValidationResult validation = parser.validate(definition);
-            if (!validation.isValid()) {
-                throw new RuntimeException("検証エラー: " + validation.errorMessage());
-            }
-            
-            // 3. ルールとテンソルを登録
-            return load(definition);
+            byte[] content = Files.readAllBytes(Path.of(filePath));
+            return register(prepare(filePath, content, () -> parser.parseFile(filePath)));
             
         } catch (Exception e) {
             LOG.error("ルールファイルの読み込みに失敗: {}", e.getMessage(), e);
@@ -61,18 +70,7 @@ public class RuleLoader {
     public LoadResult loadFromResource(String resourcePath) {
         try {
             LOG.info("リソースからルールを読み込み開始: {}", resourcePath);
-            
-            // 1. ルール定義を読み込み
-            RuleDefinition definition = parser.parseResource(resourcePath);
-            
-            // 2. 検証
-            RuleParser.ValidationResult validation = parser.validate(definition);
-            if (!validation.isValid()) {
-                throw new RuntimeException("検証エラー: " + validation.errorMessage());
-            }
-            
-            // 3. ルールとテンソルを登録
-            return load(definition);
+            return register(prepareResource(resourcePath));
             
         } catch (Exception e) {
             LOG.error("リソースの読み込みに失敗: {}", e.getMessage(), e);
@@ -81,49 +79,204 @@ public class RuleLoader {
     }
     
     /**
-     * ルール定義をエンジンに登録
+     * リソースファイルを読み込んで変換する（エンジンには登録しない）
+     * 
+     * 解析・検証・変換だけを行うため、複数のファイルを並列に準備できます。
+     * 準備した結果は {@link #registerAll} でまとめて登録します。
+     * 
+     * @throws Exception 読み込み・検証・変換に失敗した場合
+     */
+    public PreparedRules prepareResource(String resourcePath) throws Exception {
+        byte[] content;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            if (is == null) {
+                throw new IllegalArgumentException("リソースが見つかりません: " + resourcePath);
+            }
+            content = is.readAllBytes();
+        }
+        Path directory = parser.resourceDirectory(resourcePath);
+        return prepare(resourcePath, content, () -> parser.parseStream(new ByteArrayInputStream(content), directory));
+    }
+    
+    /**
+     * 準備したルール定義をまとめてエンジンに登録（全体を1つのバージョンとしてアトミックに公開）
+     * 
+     * 同じ名前の事実・ルールは、後のルール定義のものが優先されます（順に登録した場合と同じ）。
+     * 
+     * @return ルール定義ごとの登録の準備（事実のストアへの移動を含む）に要した時間（ナノ秒、引数の順）
+     */
+    public long[] registerAll(List<PreparedRules> prepared) {
+        Map<String, INDArray> tensors = new LinkedHashMap<>();
+        Map<String, Relation> relations = new LinkedHashMap<>();
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        long[] stageNanos = new long[prepared.size()];
+        for (int i = 0; i < prepared.size(); i++) {
+            long start = System.nanoTime();
+            PreparedRules rulePack = prepared.get(i);
+            LOG.info("ルールを登録中: {}", rulePack.ruleName());
+            tensors.putAll(offload(rulePack));
+            relations.putAll(rulePack.relations());
+            rules.putAll(rulePack.rules());
+            stageNanos[i] = System.nanoTime() - start;
+        }
+        
+        engine.register(tensors, relations, rules);
+        LOG.info("ルール登録完了: ルール定義{}個, 事実{}個, 関係{}個, ルール{}個",
+            prepared.size(), tensors.size(), relations.size(), rules.size());
+        return stageNanos;
+    }
+    
+    /**
+     * 準備したルール定義をエンジンに登録
+     */
+    private LoadResult register(PreparedRules prepared) {
+        registerAll(List.of(prepared));
+        
+        return new LoadResult(
+            true,
+            prepared.ruleName(),
+            prepared.factCount(),
+            prepared.ruleCount(),
+            null
+        );
+    }
+    
+    /**
+     * ルール定義を解析・検証・変換（キャッシュが有効で内容が同じ変換済みの結果がある場合は解析を省略）
+     * 
+     * @param reader キャッシュにない場合にルール定義を解析する処理
      */
-    private LoadResult load(RuleDefinition definition) {
-        LOG.info("ルールを登録中: {}", definition.metadata().name());
+    private PreparedRules prepare(String source, byte[] content, Callable<RuleDefinition> reader)
+            throws Exception {
+        String key = cache.key(content);
+        if (cache.isEnabled()) {
+            long start = System.nanoTime();
+            RulePackFile.Pack pack = cache.get(key);
+            if (pack != null) {
+                LOG.info("変換済みのルール定義を使用: {} ({})", source, pack.name());
+                return new PreparedRules(source, key, pack.name(), pack.facts(), pack.relations(), pack.rules(),
+                    Set.of(), System.nanoTime() - start, 0, true);
+            }
+        }
         
-        int factCount = 0;
-        int ruleCount = 0;
+        long start = System.nanoTime();
+        RuleDefinition definition = reader.call();
+        long parseNanos = System.nanoTime() - start;
         
-        // 1. 事実（テンソル）を登録
+        RuleParser.ValidationResult validation = parser.validate(definition);
+        if (!validation.isValid()) {
+            throw new IllegalArgumentException("検証エラー: " + validation.errorMessage());
+        }
+        PreparedRules prepared = prepare(source, key, definition, parseNanos);
+        
+        // source のファイルを参照する事実はファイルの内容がキーに含まれないためキャッシュしない
+        if (cache.isEnabled() && prepared.sourcedFacts().isEmpty()) {
+            cache.put(key, new RulePackFile.Pack(prepared.ruleName(), prepared.tensors(),
+                prepared.relations(), prepared.rules()));
+        }
+        return prepared;
+    }
+    
+    /**
+     * 事実・関係・ルールを変換
+     */
+    private PreparedRules prepare(String source, String contentHash, RuleDefinition definition, long parseNanos) {
+        long start = System.nanoTime();
+        
+        // 1. 事実（テンソル）を変換
         Map<String, INDArray> tensors = converter.convertAllFacts(definition);
         for (Map.Entry<String, INDArray> entry : tensors.entrySet()) {
-            engine.addFact(entry.getKey(), entry.getValue());
-            factCount++;
-            
-            LOG.debug("事実を登録: {} {}", 
+            LOG.debug("事実を変換: {} {}", 
                 entry.getKey(), 
                 converter.tensorInfo(entry.getValue()));
         }
+        Map<String, Relation> relations = converter.convertAllRelations(definition);
+        for (Map.Entry<String, Relation> entry : relations.entrySet()) {
+            LOG.debug("関係を変換: {} {}", entry.getKey(), entry.getValue());
+        }
         
-        // 2. ルールを登録
+        // 2. ルールを変換
         List<Rule> rules = parser.convertAllRules(definition);
+        Map<String, Rule> namedRules = new LinkedHashMap<>();
         for (int i = 0; i < rules.size(); i++) {
             Rule rule = rules.get(i);
             RuleDefinition.RuleSpec spec = definition.rules().get(i);
             
-            engine.addRule(spec.name(), rule);
-            ruleCount++;
+            namedRules.put(spec.name(), rule);
             
-            LOG.debug("ルールを登録: {} ({} -> {})", 
+            LOG.debug("ルールを変換: {} ({} -> {})", 
                 spec.name(), 
                 spec.inputs(), 
                 spec.output());
         }
         
-        LOG.info("ルール登録完了: 事実{}個, ルール{}個", factCount, ruleCount);
+        Set<String> sourced = definition.facts().stream()
+            .filter(fact -> fact.tensor() != null && fact.tensor().source() != null)
+            .map(RuleDefinition.Fact::name)
+            .collect(Collectors.toSet());
+        return new PreparedRules(source, contentHash, definition.metadata().name(), tensors, relations, namedRules,
+            sourced, parseNanos, System.nanoTime() - start, false);
+    }
+    
+    /**
+     * 大きな事実をストアに移す（ストアが有効な場合）
+     * 
+     * source のファイルから読み込んだ事実は既にメモリマップしているため移しません。
+     * ルール定義ファイルと内容が前回と同じ事実は、ストアに保存済みのファイルをそのまま使います。
+     */
+    private Map<String, INDArray> offload(PreparedRules prepared) {
+        String origin = prepared.source() + "@" + prepared.contentHash();
+        Map<String, INDArray> tensors = new LinkedHashMap<>(prepared.tensors());
+        tensors.replaceAll((name, tensor) ->
+            prepared.sourcedFacts().contains(name) ? tensor : factStore.offload(name, tensor, origin));
+        return tensors;
+    }
+    
+    /**
+     * 準備したルール定義のうち、ストアに移す事実の名前
+     */
+    public Set<String> storedFacts(List<PreparedRules> prepared) {
+        Set<String> names = new HashSet<>();
+        for (PreparedRules rulePack : prepared) {
+            rulePack.tensors().forEach((name, tensor) -> {
+                if (!rulePack.sourcedFacts().contains(name) && factStore.shouldOffload(tensor)) {
+                    names.add(name);
+                }
+            });
+        }
+        return names;
+    }
+    
+    /**
+     * 変換済みでエンジンへの登録を待つルール定義
+     * 
+     * @param source 読み込んだファイル（リソースのパス）
+     * @param contentHash ファイルの内容と変換の設定のハッシュ（{@link RulePackCache#key}）
+     * @param ruleName ルール定義の名前（メタデータの name）
+     * @param sourcedFacts source のファイルから読み込んだ事実の名前
+     * @param parseNanos 解析（キャッシュを使用した場合は変換済みの結果の読み込み）に要した時間（ナノ秒）
+     * @param convertNanos 事実・関係・ルールの変換に要した時間（ナノ秒）
+     * @param cached 変換済みのルール定義のキャッシュを使用したかどうか
+     */
+    public record PreparedRules(
+        String source,
+        String contentHash,
+        String ruleName,
+        Map<String, INDArray> tensors,
+        Map<String, Relation> relations,
+        Map<String, Rule> rules,
+        Set<String> sourcedFacts,
+        long parseNanos,
+        long convertNanos,
+        boolean cached
+    ) {
+        public int factCount() {
+            return tensors.size() + relations.size();
+        }
         
-        return new LoadResult(
-            true,
-            definition.metadata().name(),
-            factCount,
-            ruleCount,
-            null
-        );
+        public int ruleCount() {
+            return rules.size();
+        }
     }
     
     /**
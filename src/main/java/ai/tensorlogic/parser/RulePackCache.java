@@ -0,0 +1,147 @@
+package ai.tensorlogic.parser;
+
+import ai.tensorlogic.core.RulePackFile;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 変換済みのルール定義のキャッシュ
+ *
+ * ルール定義ファイルの内容の SHA-256 をキーとして、検証・変換した結果（{@link RulePackFile}）を
+ * ディレクトリに1ファイルずつ保存します。内容が変わっていないファイルは、次回から YAML を解析せずに
+ * バイナリの読み込みだけで登録できます。
+ *
+ * キーには変換の結果に影響する設定（既定の精度・ビット関係の条件）と、変換の処理のバージョン・
+ * アプリケーションのバージョンも含めるため、設定を変えた場合やアップグレードした場合は作り直されます。
+ * 読み込めないキャッシュのファイル（壊れている・形式が古い）は削除して作り直します。
+ * 使われなくなったファイル（内容が変わった・削除されたルール定義のもの）は {@link #prune} で削除します。
+ */
+@ApplicationScoped
+public class RulePackCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RulePackCache.class);
+
+    private static final String EXTENSION = ".rulepack";
+
+    @ConfigProperty(name = "tensor.logic.rule-cache.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "tensor.logic.rule-cache.directory", defaultValue = "data/rule-cache")
+    String directory;
+
+    @ConfigProperty(name = "quarkus.application.version", defaultValue = "unknown")
+    String applicationVersion;
+
+    @Inject
+    TensorConverter converter;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * ルール定義ファイルの内容からキーを計算
+     */
+    public String key(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("app=" + applicationVersion + "," + converter.cacheSettings())
+                .getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 を利用できません", e);
+        }
+    }
+
+    /**
+     * 変換済みのルール定義を取得
+     *
+     * @return キャッシュにない、または読み込めない場合はnull
+     */
+    public RulePackFile.Pack get(String key) {
+        Path file = fileOf(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return RulePackFile.read(file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("変換済みのルール定義を読み込めないため削除します: {} ({})", file, e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // 次回の保存で置き換える
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 変換済みのルール定義を保存（失敗してもルール定義の読み込みは続ける）
+     */
+    public void put(String key, RulePackFile.Pack pack) {
+        Path file = fileOf(key);
+        try {
+            RulePackFile.write(file, pack);
+            LOG.debug("変換済みのルール定義を保存: {} ({}バイト)", file, Files.size(file));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("変換済みのルール定義を保存できませんでした: {} ({})", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 指定したキー以外のキャッシュのファイルを削除
+     *
+     * @param retained 残すキー（今回読み込んだルール定義のキー）
+     * @return 削除したファイルの数
+     */
+    public int prune(Set<String> retained) {
+        Path root = Paths.get(directory);
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        List<Path> stale;
+        try (Stream<Path> files = Files.list(root)) {
+            stale = files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(EXTENSION)
+                    && !retained.contains(name.substring(0, name.length() - EXTENSION.length()));
+            }).toList();
+        } catch (IOException e) {
+            LOG.warn("変換済みのルール定義の一覧を取得できませんでした: {} ({})", root, e.getMessage());
+            return 0;
+        }
+        int removed = 0;
+        for (Path file : stale) {
+            try {
+                if (Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            } catch (IOException e) {
+                LOG.warn("使われなくなった変換済みのルール定義を削除できませんでした: {} ({})", file, e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    private Path fileOf(String key) {
+        return Paths.get(directory, key + EXTENSION);
+    }
+}
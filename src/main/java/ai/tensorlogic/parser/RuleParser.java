@@ -1,6 +1,7 @@
 package ai.tensorlogic.parser;
 
 import ai.tensorlogic.core.Rule;
+import ai.tensorlogic.core.Semiring;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -9,6 +10,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -36,7 +40,8 @@ public class RuleParser {
         LOG.info("ルールファイルを読み込み: {}", filePath);
         
         File file = new File(filePath);
-        RuleDefinition definition = yamlMapper.readValue(file, RuleDefinition.class);
+        RuleDefinition definition = resolveSources(
+            yamlMapper.readValue(file, RuleDefinition.class), file.getAbsoluteFile().toPath().getParent());
         
         LOG.info("ルール定義を読み込みました: {} (ルール数: {})", 
             definition.metadata().name(), 
@@ -47,11 +52,24 @@ public class RuleParser {
     
     /**
      * InputStreamからルール定義を読み込み
+     * 
+     * 読み込み元の場所がわからないため、source に相対パスを指定した事実を含む場合はエラーになります。
      */
     public RuleDefinition parseStream(InputStream inputStream) throws Exception {
+        return parseStream(inputStream, null);
+    }
+    
+    /**
+     * InputStreamからルール定義を読み込み（source の相対パスは指定したディレクトリを基準に解決）
+     * 
+     * @param directory 相対パスの基準のディレクトリ（nullの場合、相対パスの source はエラー）
+     * @throws IllegalArgumentException 基準のディレクトリがないのに相対パスの source を含む場合
+     */
+    public RuleDefinition parseStream(InputStream inputStream, Path directory) throws Exception {
         LOG.info("ルール定義を読み込み中...");
         
-        RuleDefinition definition = yamlMapper.readValue(inputStream, RuleDefinition.class);
+        RuleDefinition definition = resolveSources(
+            yamlMapper.readValue(inputStream, RuleDefinition.class), directory);
         
         LOG.info("ルール定義を読み込みました: {} (ルール数: {})", 
             definition.metadata().name(), 
@@ -62,6 +80,8 @@ public class RuleParser {
     
     /**
      * リソースファイルから読み込み
+     * 
+     * source の相対パスはリソースのディレクトリを基準に解決します（JAR に含まれるリソースでは相対パスは指定できません）。
      */
     public RuleDefinition parseResource(String resourcePath) throws Exception {
         LOG.info("リソースからルール定義を読み込み: {}", resourcePath);
@@ -71,7 +91,57 @@ public class RuleParser {
             throw new IllegalArgumentException("リソースが見つかりません: " + resourcePath);
         }
         
-        return parseStream(is);
+        try (is) {
+            return parseStream(is, resourceDirectory(resourcePath));
+        }
+    }
+    
+    /**
+     * リソースのあるディレクトリ（source の相対パスの基準）
+     * 
+     * @return ファイルシステム上のディレクトリ（リソースが見つからない、または JAR などファイルシステムの外にある場合はnull）
+     */
+    public Path resourceDirectory(String resourcePath) {
+        URL url = getClass().getClassLoader().getResource(resourcePath);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Path.of(url.toURI()).getParent();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 事実の source の相対パスを、ルール定義ファイルのディレクトリを基準にしたパスに置き換える
+     * 
+     * @param directory 基準のディレクトリ（nullの場合、相対パスの source があれば IllegalArgumentException）
+     */
+    private RuleDefinition resolveSources(RuleDefinition definition, Path directory) {
+        if (definition.facts() == null) {
+            return definition;
+        }
+        List<RuleDefinition.Fact> facts = definition.facts().stream()
+            .map(fact -> {
+                RuleDefinition.TensorSpec spec = fact.tensor();
+                if (spec == null || spec.source() == null || Path.of(spec.source()).isAbsolute()) {
+                    return fact;
+                }
+                if (directory == null) {
+                    throw new IllegalArgumentException(String.format(
+                        "事実 '%s' の source '%s' は相対パスですが、ルール定義がファイルシステム上にないため基準のディレクトリがありません"
+                            + "（絶対パスを指定するか、ファイルから読み込んでください）",
+                        fact.name(), spec.source()));
+                }
+                RuleDefinition.TensorSpec resolved = new RuleDefinition.TensorSpec(spec.type(), spec.shape(),
+                    spec.values(), spec.confidence(), spec.labels(), spec.dtype(),
+                    directory.resolve(spec.source()).toString());
+                return new RuleDefinition.Fact(fact.name(), fact.description(), fact.notation(), resolved);
+            })
+            .collect(Collectors.toList());
+        return new RuleDefinition(definition.metadata(), definition.entities(), facts,
+            definition.rules(), definition.expectedResults());
     }
     
     /**
@@ -92,6 +162,8 @@ public class RuleParser {
             .inputs(spec.inputs().toArray(new String[0]))
             .output(spec.output())
             .operation(operation)
+            .equation(spec.equation())
+            .semiring(spec.semiring() != null ? Semiring.valueOf(spec.semiring()) : null)
             .build();
     }
     
@@ -139,6 +211,17 @@ public class RuleParser {
             return new ValidationResult(false, "メタデータが必要です");
         }
         
+        // 事実の検証（source と values はどちらか一方）
+        if (definition.facts() != null) {
+            for (RuleDefinition.Fact fact : definition.facts()) {
+                RuleDefinition.TensorSpec spec = fact.tensor();
+                if (spec != null && spec.source() != null && spec.values() != null) {
+                    return new ValidationResult(false, 
+                        "事実 '" + fact.name() + "' には source と values の一方だけを指定してください");
+                }
+            }
+        }
+        
         // ルールの検証
         for (RuleDefinition.RuleSpec rule : definition.rules()) {
             if (rule.inputs() == null || rule.inputs().isEmpty()) {
@@ -158,6 +241,14 @@ public class RuleParser {
                 return new ValidationResult(false, 
                     "ルール '" + rule.name() + "' の演算タイプが不正です: " + rule.operation());
             }
+            
+            // 演算ごとの指定（添字の指定・半環・入力の数）の検証
+            try {
+                convertToRule(rule, null);
+            } catch (IllegalArgumentException e) {
+                return new ValidationResult(false, 
+                    "ルール '" + rule.name() + "' の指定が不正です: " + e.getMessage());
+            }
         }
         
         LOG.info("ルール定義の検証が成功しました");
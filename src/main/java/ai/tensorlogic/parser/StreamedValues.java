@@ -0,0 +1,19 @@
+package ai.tensorlogic.parser;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * ルール定義ファイルから直接ヒープ外のバッファに読み込んだ密な値
+ *
+ * {@link TensorSpecDeserializer} が values を要素ごとの Number のリストにせずに読み込んだ結果で、
+ * {@link RuleDefinition.TensorSpec#values()} に格納されます。
+ *
+ * @param tensor 値（FLOAT64、形状は宣言された shape）
+ * @param binary 全ての値が0または1かどうか（ビット関係への変換の判定に使用）
+ */
+public record StreamedValues(
+    @JsonIgnore INDArray tensor,
+    boolean binary
+) {
+}
@@ -1,12 +1,24 @@
 package ai.tensorlogic.parser;
 
+import ai.tensorlogic.core.BitRelation;
+import ai.tensorlogic.core.Precision;
+import ai.tensorlogic.core.Relation;
+import ai.tensorlogic.core.SparseRelation;
+import ai.tensorlogic.store.MappedFactFile;
+import ai.tensorlogic.store.NpyFactFile;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -15,12 +27,29 @@ import java.util.HashMap;
  * 
  * ルール定義ファイルのテンソル仕様を
  * INDArrayに変換します。
+ * タイプが sparse の事実は疎な関係（SparseRelation）に変換します。
+ * 値が0/1だけの十分に大きな行列は、ビット関係（BitRelation）に自動で変換します（tensor.logic.bit-relation.enabled）。
+ * 密な事実は dtype（事実ごと → メタデータ → 設定の既定の順）で指定された精度で保持します。
+ * ファイルから読み込んだ密な値（{@link StreamedValues}）は、読み込み済みのテンソルをそのまま使用します。
+ * source を指定した事実は、外部のファイルをメモリマップして要素ごとの解析なしに読み込みます。
  */
 @ApplicationScoped
 public class TensorConverter {
     
     private static final Logger LOG = LoggerFactory.getLogger(TensorConverter.class);
     
+    /** 変換の処理のバージョン（変換の結果が変わる修正をした場合に上げ、変換済みのルール定義のキャッシュを作り直させる） */
+    static final int CONVERTER_VERSION = 1;
+    
+    @ConfigProperty(name = "tensor.logic.bit-relation.enabled", defaultValue = "true")
+    boolean bitRelationEnabled;
+    
+    @ConfigProperty(name = "tensor.logic.bit-relation.min-elements", defaultValue = "1024")
+    long bitRelationMinElements;
+    
+    @ConfigProperty(name = "tensor.logic.fact.dtype", defaultValue = "float64")
+    String defaultDtype;
+    
     /**
      * テンソル仕様からINDArrayに変換
      */
@@ -31,15 +60,133 @@ public class TensorConverter {
         
         String type = spec.type().toLowerCase();
         
+        if (spec.source() != null) {
+            return convertSource(spec);
+        }
+        
+        if (spec.values() instanceof StreamedValues streamed) {
+            LOG.debug("読み込み済みの値を使用: type={}, shape={}", type, spec.shape());
+            return streamed.tensor();
+        }
+        
         return switch (type) {
             case "vector" -> convertVector(spec);
             case "matrix" -> convertMatrix(spec);
             case "tensor" -> convertTensor(spec);
             case "scalar" -> convertScalar(spec);
+            case "sparse" -> throw new IllegalArgumentException("疎な関係は convertRelation で変換してください");
             default -> throw new IllegalArgumentException("未対応のテンソルタイプ: " + type);
         };
     }
     
+    /**
+     * 事実を保持する精度を解決（事実ごとの指定 → メタデータの既定 → 設定の既定）
+     */
+    public Precision precisionOf(RuleDefinition.TensorSpec spec, RuleDefinition.Metadata metadata) {
+        if (spec != null && spec.dtype() != null) {
+            return Precision.parse(spec.dtype());
+        }
+        if (metadata != null && metadata.dtype() != null) {
+            return Precision.parse(metadata.dtype());
+        }
+        return defaultPrecision();
+    }
+    
+    /**
+     * 設定の既定の精度（tensor.logic.fact.dtype）
+     */
+    public Precision defaultPrecision() {
+        return Precision.parse(defaultDtype);
+    }
+    
+    /**
+     * 変換の結果に影響する設定と変換の処理のバージョン（変換済みのルール定義のキャッシュのキーに含める）
+     */
+    String cacheSettings() {
+        return "converter=" + CONVERTER_VERSION + ",dtype=" + defaultDtype
+            + ",bit-relation=" + bitRelationEnabled + "/" + bitRelationMinElements;
+    }
+    
+    /**
+     * 疎な関係として定義されているかどうか
+     */
+    public boolean isSparse(RuleDefinition.TensorSpec spec) {
+        return spec != null && "sparse".equalsIgnoreCase(spec.type());
+    }
+    
+    /**
+     * ビット関係として保持するかどうか
+     * 
+     * タイプが matrix で値が全て0または1の行列のうち、要素数が設定値以上のものが対象です。
+     * 小さな行列は、1ビットに詰めても節約にならないため密な事実のまま保持します。
+     * ビット関係も getFact・getAllFacts・後向き推論では密な行列に変換して参照できます
+     * （要素数の上限は tensor.logic.relation.dense-max-elements）。
+     */
+    public boolean isCrisp(RuleDefinition.TensorSpec spec) {
+        if (!bitRelationEnabled || spec == null || !"matrix".equalsIgnoreCase(spec.type())) {
+            return false;
+        }
+        if (spec.values() instanceof StreamedValues streamed) {
+            return streamed.binary() && streamed.tensor().length() >= bitRelationMinElements;
+        }
+        if (!(spec.values() instanceof List<?> rows)) {
+            return false;
+        }
+        long elements = 0;
+        for (Object row : rows) {
+            if (!(row instanceof List<?> cells)) {
+                return false;
+            }
+            for (Object cell : cells) {
+                if (!(cell instanceof Number number)
+                        || (number.doubleValue() != 0.0 && number.doubleValue() != 1.0)) {
+                    return false;
+                }
+            }
+            elements += cells.size();
+        }
+        return elements >= bitRelationMinElements;
+    }
+    
+    /**
+     * ビット関係に変換
+     */
+    public BitRelation convertBitRelation(RuleDefinition.TensorSpec spec) {
+        LOG.debug("ビット関係に変換: shape={}", spec.shape());
+        if (spec.values() instanceof StreamedValues streamed) {
+            return BitRelation.fromDense(streamed.tensor());
+        }
+        return BitRelation.fromMatrix(toMatrix(spec));
+    }
+    
+    /**
+     * 疎な関係に変換
+     * 
+     * shape は [行数, 列数]、values は辺のリスト [始点, 終点, 値] です（値を省略した場合は1.0）。
+     */
+    public SparseRelation convertRelation(RuleDefinition.TensorSpec spec) {
+        if (spec.shape() == null || spec.shape().size() != 2) {
+            throw new IllegalArgumentException("疎な関係のshapeは [行数, 列数] である必要があります");
+        }
+        if (!(spec.values() instanceof List<?> list)) {
+            throw new IllegalArgumentException("疎な関係のvaluesは辺のリスト [始点, 終点, 値] である必要があります");
+        }
+        LOG.debug("疎な関係に変換: shape={}, 辺={}個", spec.shape(), list.size());
+        
+        int[] from = new int[list.size()];
+        int[] to = new int[list.size()];
+        double[] weights = new double[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            if (!(list.get(i) instanceof List<?> edge) || edge.size() < 2) {
+                throw new IllegalArgumentException("辺は [始点, 終点, 値] である必要があります: " + list.get(i));
+            }
+            from[i] = ((Number) edge.get(0)).intValue();
+            to[i] = ((Number) edge.get(1)).intValue();
+            weights[i] = edge.size() > 2 ? ((Number) edge.get(2)).doubleValue() : 1.0;
+        }
+        return SparseRelation.fromEdges(spec.shape().get(0), spec.shape().get(1), from, to, weights);
+    }
+    
     /**
      * ベクトルに変換
      */
@@ -61,10 +208,19 @@ public class TensorConverter {
     /**
      * 行列に変換
      */
-    @SuppressWarnings("unchecked")
     private INDArray convertMatrix(RuleDefinition.TensorSpec spec) {
         LOG.debug("行列に変換: shape={}", spec.shape());
-        
+        if (spec.values() instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Number) {
+            return fill(spec);
+        }
+        return Nd4j.create(toMatrix(spec));
+    }
+    
+    /**
+     * 行列の値を2次元配列に変換
+     */
+    @SuppressWarnings("unchecked")
+    private double[][] toMatrix(RuleDefinition.TensorSpec spec) {
         if (spec.values() instanceof List<?> list) {
             int rows = list.size();
             int cols = ((List<?>) list.get(0)).size();
@@ -76,7 +232,7 @@ public class TensorConverter {
                     array[i][j] = row.get(j).doubleValue();
                 }
             }
-            return Nd4j.create(array);
+            return array;
         }
         
         throw new IllegalArgumentException("行列のvaluesはList<List<Number>>である必要があります");
@@ -87,9 +243,121 @@ public class TensorConverter {
      */
     private INDArray convertTensor(RuleDefinition.TensorSpec spec) {
         LOG.debug("テンソルに変換: shape={}", spec.shape());
+        return fill(spec);
+    }
+    
+    /**
+     * shape の大きさの1つのバッファに C 順で値を詰めて変換
+     * 
+     * values は shape と同じ構造の入れ子のリストか、C 順に並べた平坦なリストです。
+     */
+    private INDArray fill(RuleDefinition.TensorSpec spec) {
+        if (spec.shape() == null || spec.shape().isEmpty()) {
+            throw new IllegalArgumentException("テンソルにはshapeが必要です");
+        }
+        if (!(spec.values() instanceof List<?> list)) {
+            throw new IllegalArgumentException("テンソルのvaluesはリストである必要があります");
+        }
+        long[] shape = new long[spec.shape().size()];
+        long length = 1;
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = spec.shape().get(i);
+            if (shape[i] <= 0) {
+                throw new IllegalArgumentException("shapeの各次元は1以上である必要があります: " + spec.shape());
+            }
+            length = Math.multiplyExact(length, shape[i]);
+        }
+        double[] buffer = new double[Math.toIntExact(length)];
+        if (!list.isEmpty() && list.get(0) instanceof Number) {
+            if (list.size() != buffer.length) {
+                throw new IllegalArgumentException(String.format(
+                    "valuesの要素数 %d がshapeの積 %d と一致しません", list.size(), buffer.length));
+            }
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = toDouble(list.get(i));
+            }
+        } else {
+            fillNested(list, shape, 0, buffer, 0);
+        }
+        return Nd4j.create(buffer, shape, 'c');
+    }
+    
+    /**
+     * 入れ子のリストの1階層を詰める
+     * 
+     * @return 次に書き込む位置
+     */
+    private int fillNested(List<?> list, long[] shape, int depth, double[] buffer, int offset) {
+        if (list.size() != shape[depth]) {
+            throw new IllegalArgumentException(String.format(
+                "valuesの構造がshapeと一致しません（%d次元目の要素数は %d である必要があります）",
+                depth + 1, shape[depth]));
+        }
+        for (Object element : list) {
+            if (depth == shape.length - 1) {
+                buffer[offset++] = toDouble(element);
+            } else if (element instanceof List<?> child) {
+                offset = fillNested(child, shape, depth + 1, buffer, offset);
+            } else {
+                throw new IllegalArgumentException(String.format(
+                    "valuesの構造がshapeと一致しません（%d次元目はリストである必要があります）", depth + 2));
+            }
+        }
+        return offset;
+    }
+    
+    private static double toDouble(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        throw new IllegalArgumentException("valuesの要素は数値である必要があります: " + value);
+    }
+    
+    /**
+     * 外部のファイルから読み込み
+     * 
+     * 拡張子が .npy のファイルは NumPy の形式として形状・要素の型をファイルから読み込みます。
+     * それ以外は値だけのファイル（C 順、リトルエンディアン）として、shape と dtype（省略時は float64）で読み込みます。
+     */
+    private INDArray convertSource(RuleDefinition.TensorSpec spec) {
+        Path path = Path.of(spec.source());
+        LOG.debug("ファイルから読み込み: source={}, shape={}", path, spec.shape());
+        INDArray tensor;
+        try {
+            if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".npy")) {
+                tensor = NpyFactFile.map(path);
+            } else {
+                if (spec.shape() == null || spec.shape().isEmpty()) {
+                    throw new IllegalArgumentException("値だけのファイルを読み込むにはshapeが必要です: " + path);
+                }
+                Precision precision = spec.dtype() != null ? Precision.parse(spec.dtype()) : Precision.FLOAT64;
+                tensor = MappedFactFile.mapRaw(path, precision,
+                    spec.shape().stream().mapToLong(Integer::longValue).toArray());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("事実のファイルを読み込めません: " + path, e);
+        }
         
-        // 再帰的に変換（今後実装）
-        throw new UnsupportedOperationException("3次元以上のテンソルは今後実装予定");
+        if (spec.shape() != null && !spec.shape().isEmpty()
+                && !Arrays.equals(tensor.shape(), spec.shape().stream().mapToLong(Integer::longValue).toArray())) {
+            throw new IllegalArgumentException(String.format("ファイルの形状 %s がshape %s と一致しません: %s",
+                Arrays.toString(tensor.shape()), spec.shape(), path));
+        }
+        int rank = tensor.rank();
+        switch (spec.type().toLowerCase(Locale.ROOT)) {
+            case "vector" -> requireRank(rank, 1, path);
+            case "matrix" -> requireRank(rank, 2, path);
+            case "tensor" -> { }
+            default -> throw new IllegalArgumentException("source を指定できるのは vector・matrix・tensor です: " + spec.type());
+        }
+        return tensor;
+    }
+    
+    private static void requireRank(int rank, int expected, Path path) {
+        if (rank != expected) {
+            throw new IllegalArgumentException(String.format("ファイルの次元数 %d がタイプと一致しません（%d次元である必要があります）: %s",
+                rank, expected, path));
+        }
     }
     
     /**
@@ -118,13 +386,22 @@ public class TensorConverter {
         Map<String, INDArray> tensors = new HashMap<>();
         
         for (RuleDefinition.Fact fact : definition.facts()) {
+            if (isSparse(fact.tensor()) || isCrisp(fact.tensor())) {
+                continue;
+            }
             try {
-                INDArray tensor = convert(fact.tensor());
+                INDArray converted = convert(fact.tensor());
+                // ファイルから読み込んだ事実は、dtype を指定しない限りファイルの精度のまま保持する（コピーしない）
+                Precision precision = fact.tensor().source() != null && fact.tensor().dtype() == null
+                    ? Precision.of(converted.dataType())
+                    : precisionOf(fact.tensor(), definition.metadata());
+                INDArray tensor = precision.store(converted);
                 tensors.put(fact.name(), tensor);
                 
-                LOG.debug("事実 '{}' を変換: shape={}, 記法={}", 
+                LOG.debug("事実 '{}' を変換: shape={}, dtype={}, 記法={}", 
                     fact.name(), 
                     tensor.shape(), 
+                    precision,
                     fact.notation());
                 
             } catch (Exception e) {
@@ -137,15 +414,36 @@ public class TensorConverter {
         return tensors;
     }
     
+    /**
+     * 関係（疎な関係・ビット関係）として保持する事実を全て変換
+     */
+    public Map<String, Relation> convertAllRelations(RuleDefinition definition) {
+        Map<String, Relation> relations = new HashMap<>();
+        for (RuleDefinition.Fact fact : definition.facts()) {
+            try {
+                if (isSparse(fact.tensor())) {
+                    relations.put(fact.name(), convertRelation(fact.tensor()));
+                } else if (isCrisp(fact.tensor())) {
+                    relations.put(fact.name(), convertBitRelation(fact.tensor()));
+                }
+            } catch (Exception e) {
+                LOG.error("事実 '{}' の変換に失敗: {}", fact.name(), e.getMessage());
+                throw new RuntimeException("関係の変換エラー: " + fact.name(), e);
+            }
+        }
+        return relations;
+    }
+    
     /**
      * テンソル情報の表示
      */
     public String tensorInfo(INDArray tensor) {
+        INDArray values = Precision.decode(tensor);
         return String.format("shape=%s, dtype=%s, min=%.3f, max=%.3f", 
             java.util.Arrays.toString(tensor.shape()),
             tensor.dataType(),
-            tensor.minNumber().doubleValue(),
-            tensor.maxNumber().doubleValue()
+            values.minNumber().doubleValue(),
+            values.maxNumber().doubleValue()
         );
     }
 }
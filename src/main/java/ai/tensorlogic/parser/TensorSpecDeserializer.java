@@ -0,0 +1,199 @@
+package ai.tensorlogic.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * テンソル仕様のストリーミング読み込み
+ *
+ * 密なテンソル（vector・matrix・tensor）の values を、Jackson のトークン列から
+ * 宣言された shape の大きさで確保したヒープ外のバッファ（FLOAT64）に C 順で直接書き込みます。
+ * 要素ごとの Double やリストを作らないため、大きな事実もヒープの使用量を増やさずに読み込めます。
+ *
+ * ストリーミングで読み込むのは、type と shape が values より前に書かれ、
+ * shape の次元数が type と合っている場合です（vector は1次元、matrix は2次元、tensor は任意）。
+ * values は shape と同じ構造の入れ子のリストか、C 順に並べた平坦なリスト（要素数は shape の積）で書けます。
+ * それ以外（疎な関係の辺のリスト、スカラーなど）は従来どおり汎用の値として読み込みます。
+ */
+public class TensorSpecDeserializer extends StdDeserializer<RuleDefinition.TensorSpec> {
+
+    public TensorSpecDeserializer() {
+        super(RuleDefinition.TensorSpec.class);
+    }
+
+    @Override
+    public RuleDefinition.TensorSpec deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            p.nextToken();
+        }
+        String type = null;
+        List<Integer> shape = null;
+        Object values = null;
+        Double confidence = null;
+        Map<String, List<String>> labels = null;
+        String dtype = null;
+        String source = null;
+
+        for (; p.currentToken() == JsonToken.FIELD_NAME; p.nextToken()) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "type" -> type = p.getValueAsString();
+                case "shape" -> shape = readShape(p, ctxt);
+                case "values" -> values = isStreamable(type, shape, p)
+                    ? stream(p, shape)
+                    : ctxt.readValue(p, Object.class);
+                case "confidence" -> confidence = p.currentToken() == JsonToken.VALUE_NULL ? null : p.getValueAsDouble();
+                case "labels" -> labels = ctxt.readValue(p, labelsType(ctxt));
+                case "dtype" -> dtype = p.getValueAsString();
+                case "source" -> source = p.getValueAsString();
+                default -> ctxt.handleUnknownProperty(p, this, RuleDefinition.TensorSpec.class, field);
+            }
+        }
+        return new RuleDefinition.TensorSpec(type, shape, values, confidence, labels, dtype, source);
+    }
+
+    private static List<Integer> readShape(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            throw JsonMappingException.from(p, "shape は整数のリストである必要があります");
+        }
+        List<Integer> shape = new ArrayList<>();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            shape.add(p.getValueAsInt());
+        }
+        return shape;
+    }
+
+    private static JavaType labelsType(DeserializationContext ctxt) {
+        return ctxt.getTypeFactory().constructMapType(Map.class,
+            ctxt.getTypeFactory().constructType(String.class),
+            ctxt.getTypeFactory().constructCollectionType(List.class, String.class));
+    }
+
+    /**
+     * values を宣言された shape でストリーミング読み込みできるか
+     */
+    private static boolean isStreamable(String type, List<Integer> shape, JsonParser p) {
+        if (type == null || shape == null || shape.isEmpty() || p.currentToken() != JsonToken.START_ARRAY) {
+            return false;
+        }
+        for (int dim : shape) {
+            if (dim <= 0) {
+                return false;
+            }
+        }
+        return switch (type.toLowerCase(Locale.ROOT)) {
+            case "vector" -> shape.size() == 1;
+            case "matrix" -> shape.size() == 2;
+            case "tensor" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * values を宣言された shape の大きさのバッファに直接書き込む
+     */
+    private static StreamedValues stream(JsonParser p, List<Integer> shape) throws IOException {
+        long[] dims = new long[shape.size()];
+        long length = 1;
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = shape.get(i);
+            length = Math.multiplyExact(length, dims[i]);
+        }
+        DataBuffer buffer = Nd4j.createBuffer(DataType.DOUBLE, length, false);
+        Fill fill = new Fill(p, dims, buffer);
+        fill.values();
+        return new StreamedValues(Nd4j.create(buffer, dims), fill.binary);
+    }
+
+    /**
+     * 入れ子の配列を C 順にバッファへ書き込む処理の状態
+     */
+    private static final class Fill {
+        private final JsonParser p;
+        private final long[] dims;
+        private final DataBuffer buffer;
+        private long offset;
+        private boolean binary = true;
+
+        Fill(JsonParser p, long[] dims, DataBuffer buffer) {
+            this.p = p;
+            this.dims = dims;
+            this.buffer = buffer;
+        }
+
+        /**
+         * values 全体を読み込む（最初の要素が数値なら平坦なリストとして読み込む）
+         */
+        void values() throws IOException {
+            if (p.nextToken() == JsonToken.END_ARRAY || p.currentToken() == JsonToken.START_ARRAY) {
+                nested(0);
+                return;
+            }
+            long length = buffer.length();
+            for (; p.currentToken() != JsonToken.END_ARRAY; p.nextToken()) {
+                if (offset == length) {
+                    throw JsonMappingException.from(p, "values の要素数が shape の積 " + length + " を超えています");
+                }
+                put();
+            }
+            if (offset != length) {
+                throw JsonMappingException.from(p, "values の要素数 " + offset + " が shape の積 " + length + " と一致しません");
+            }
+        }
+
+        /**
+         * 入れ子のリストの1階層を、現在のトークン（最初の要素）から対応する END_ARRAY まで読み込む
+         */
+        void nested(int depth) throws IOException {
+            long count = 0;
+            for (; p.currentToken() != JsonToken.END_ARRAY; p.nextToken()) {
+                if (count == dims[depth]) {
+                    throw mismatch(depth);
+                }
+                if (depth == dims.length - 1) {
+                    put();
+                } else if (p.currentToken() == JsonToken.START_ARRAY) {
+                    p.nextToken();
+                    nested(depth + 1);
+                } else {
+                    throw mismatch(depth + 1);
+                }
+                count++;
+            }
+            if (count != dims[depth]) {
+                throw mismatch(depth);
+            }
+        }
+
+        private void put() throws IOException {
+            if (!p.currentToken().isNumeric()) {
+                throw JsonMappingException.from(p, "values の要素は数値である必要があります: " + p.getText());
+            }
+            double value = p.getDoubleValue();
+            binary &= value == 0.0 || value == 1.0;
+            buffer.put(offset++, value);
+        }
+
+        private JsonMappingException mismatch(int depth) {
+            return JsonMappingException.from(p, "values の構造が shape と一致しません（" + (depth + 1)
+                + "次元目の要素数は " + dims[depth] + " である必要があります）");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ai.tensorlogic.startup;
+
+import java.util.List;
+
+/**
+ * 起動時のルールの自動ロードの所要時間
+ *
+ * @param parallelism 解析・変換を並列に実行したスレッド数
+ * @param totalMillis 自動ロード全体の所要時間（ミリ秒）
+ * @param publishMillis エンジンへのアトミックな登録（全ファイル分をまとめた1回）の所要時間（ミリ秒）
+ * @param files ファイルごとの内訳（ファイル名の順）
+ */
+public record AutoLoadReport(
+    int parallelism,
+    double totalMillis,
+    double publishMillis,
+    List<FileTiming> files
+) {
+
+    /**
+     * 1ファイル分の内訳
+     *
+     * @param file リソースのパス（例: "rules/example.yaml"）
+     * @param ruleName ルール定義の名前（読み込めなかった場合はnull）
+     * @param success 読み込み・登録できたかどうか
+     * @param factCount 事実（関係を含む）の数
+     * @param ruleCount ルールの数
+     * @param cached 変換済みのルール定義のキャッシュを使用したかどうか
+     * @param parseMillis YAML の解析（キャッシュを使用した場合は変換済みの結果の読み込み）の所要時間（ミリ秒）
+     * @param convertMillis 事実・関係・ルールの変換の所要時間（ミリ秒）
+     * @param registerMillis 登録の準備（事実のストアへの移動を含む）の所要時間（ミリ秒）
+     * @param errorMessage 失敗した場合のエラーメッセージ
+     */
+    public record FileTiming(
+        String file,
+        String ruleName,
+        boolean success,
+        int factCount,
+        int ruleCount,
+        boolean cached,
+        double parseMillis,
+        double convertMillis,
+        double registerMillis,
+        String errorMessage
+    ) {}
+}
@@ -1,11 +1,16 @@
 package ai.tensorlogic.startup;
 
+import ai.tensorlogic.core.SnapshotInfo;
+import ai.tensorlogic.core.TensorLogicEngine;
 import ai.tensorlogic.parser.RuleLoader;
+import ai.tensorlogic.parser.RulePackCache;
+import ai.tensorlogic.store.MappedFactStore;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,8 +19,18 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -23,6 +38,14 @@ import java.util.stream.Stream;
  * 
  * アプリケーション起動時に rules/ ディレクトリ内の
  * 全ての .yaml ファイルを自動的にロードします。
+ * ファイルの解析・変換は固定数のスレッドで並列に行い、全ファイル分をまとめて1回でエンジンに登録します。
+ * ファイルごとの解析・変換・登録の所要時間はログに出力し、{@link #report()} で取得できます。
+ * 事実のストアが有効な場合、大きな事実はストアに移して登録し、内容が変わっていないルールファイルの事実は
+ * 保存済みのファイルをそのままメモリマップします。全てのファイルを登録できた場合は、
+ * どのルールファイルからも登録されなかった事実をストアから削除します。
+ * 自動ロードが無効な場合は、ストアに保存された事実をそのまま登録します。
+ * スナップショットの復元が有効でファイルがある場合は、保存した状態を復元し、
+ * ルールファイルの読み込みは行いません（導出済みの事実も復元されるため前向き推論も不要です）。
  */
 @ApplicationScoped
 public class RuleAutoLoader {
@@ -35,14 +58,42 @@ public class RuleAutoLoader {
     @ConfigProperty(name = "tensor.logic.rules.auto-load.enabled", defaultValue = "true")
     boolean autoLoadEnabled;
     
+    /** 解析・変換を並列に実行するスレッド数（0以下は利用可能なプロセッサ数） */
+    @ConfigProperty(name = "tensor.logic.rules.auto-load.parallelism", defaultValue = "0")
+    int parallelism;
+    
+    @ConfigProperty(name = "tensor.logic.snapshot.restore-on-start", defaultValue = "false")
+    boolean restoreOnStart;
+    
+    @ConfigProperty(name = "tensor.logic.snapshot.path", defaultValue = "data/engine.snapshot")
+    String snapshotPath;
+    
     @Inject
     RuleLoader ruleLoader;
     
+    @Inject
+    MappedFactStore factStore;
+    
+    @Inject
+    RulePackCache ruleCache;
+    
+    @Inject
+    TensorLogicEngine engine;
+    
+    /** 最後の自動ロードの所要時間（自動ロードしていない場合はnull） */
+    private volatile AutoLoadReport report;
+    
     /**
      * アプリケーション起動時に実行
      */
     void onStart(@Observes StartupEvent ev) {
+        if (restoreOnStart && restoreSnapshot()) {
+            return;
+        }
         if (!autoLoadEnabled) {
+            if (factStore.isEnabled()) {
+                loadFactStore();
+            }
             LOG.info("ℹ️  ルールの自動ロードは無効化されています (tensor.logic.rules.auto-load.enabled=false)");
             return;
         }
@@ -61,39 +112,17 @@ public class RuleAutoLoader {
             
             LOG.info("📁 {}個のルールファイルが見つかりました", ruleFiles.size());
             
-            int successCount = 0;
-            int failureCount = 0;
-            
-            for (String ruleFile : ruleFiles) {
-                try {
-                    LOG.info("📥 ロード中: {}", ruleFile);
-                    RuleLoader.LoadResult result = ruleLoader.loadFromResource(ruleFile);
-                    
-                    if (result.success()) {
-                        successCount++;
-                        LOG.info("  ✅ {}: {} (事実: {}, ルール: {})", 
-                            result.ruleName(), 
-                            "成功",
-                            result.factCount(), 
-                            result.ruleCount());
-                    } else {
-                        failureCount++;
-                        LOG.error("  ❌ {}: 失敗 - {}", 
-                            ruleFile, 
-                            result.errorMessage());
-                    }
-                    
-                } catch (Exception e) {
-                    failureCount++;
-                    LOG.error("  ❌ {}: 例外発生 - {}", ruleFile, e.getMessage(), e);
-                }
-            }
+            report = loadAll(ruleFiles);
+            long successCount = report.files().stream().filter(AutoLoadReport.FileTiming::success).count();
+            long failureCount = ruleFiles.size() - successCount;
             
             LOG.info("========================================");
             LOG.info("✨ ルールの自動ロード完了");
             LOG.info("  成功: {}", successCount);
             LOG.info("  失敗: {}", failureCount);
             LOG.info("  合計: {}", ruleFiles.size());
+            LOG.info("  所要時間: {}ms (並列数: {}, 登録: {}ms)", String.format("%.1f", report.totalMillis()),
+                report.parallelism(), String.format("%.1f", report.publishMillis()));
             LOG.info("========================================");
             
         } catch (Exception e) {
@@ -101,6 +130,176 @@ public class RuleAutoLoader {
         }
     }
     
+    /**
+     * 最後の自動ロードの所要時間（自動ロードしていない場合はnull）
+     */
+    public AutoLoadReport report() {
+        return report;
+    }
+    
+    /**
+     * ルールファイルを並列に解析・変換し、まとめてエンジンに登録
+     * 
+     * 読み込めなかったファイルは除き、残りのファイルを登録します。
+     */
+    private AutoLoadReport loadAll(List<String> ruleFiles) throws InterruptedException {
+        long start = System.nanoTime();
+        int threads = Math.min(ruleFiles.size(),
+            parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        
+        List<Future<RuleLoader.PreparedRules>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            for (String ruleFile : ruleFiles) {
+                futures.add(pool.submit(() -> {
+                    LOG.info("📥 ロード中: {}", ruleFile);
+                    return ruleLoader.prepareResource(ruleFile);
+                }));
+            }
+        }
+        
+        // ファイル名の順に登録する（同じ名前の事実・ルールは後のファイルが優先）
+        List<RuleLoader.PreparedRules> prepared = new ArrayList<>();
+        Map<String, String> errors = new HashMap<>();
+        for (int i = 0; i < ruleFiles.size(); i++) {
+            try {
+                prepared.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                errors.put(ruleFiles.get(i), cause.getMessage());
+                LOG.error("  ❌ {}: 例外発生 - {}", ruleFiles.get(i), cause.getMessage(), cause);
+            }
+        }
+        
+        long[] registerNanos = new long[prepared.size()];
+        long publishNanos = 0;
+        String registerError = null;
+        if (!prepared.isEmpty()) {
+            long publishStart = System.nanoTime();
+            try {
+                registerNanos = ruleLoader.registerAll(prepared);
+            } catch (Exception e) {
+                registerError = e.getMessage();
+                LOG.error("  ❌ ルールの登録に失敗しました - {}", e.getMessage(), e);
+            }
+            publishNanos = System.nanoTime() - publishStart - Arrays.stream(registerNanos).sum();
+        }
+        if (errors.isEmpty() && registerError == null) {
+            if (factStore.isEnabled()) {
+                pruneFactStore(prepared);
+            }
+            if (ruleCache.isEnabled()) {
+                pruneRuleCache(prepared);
+            }
+        }
+        
+        List<AutoLoadReport.FileTiming> files = new ArrayList<>();
+        int next = 0;
+        for (String ruleFile : ruleFiles) {
+            if (errors.containsKey(ruleFile)) {
+                files.add(new AutoLoadReport.FileTiming(ruleFile, null, false, 0, 0, false, 0, 0, 0,
+                    errors.get(ruleFile)));
+                continue;
+            }
+            RuleLoader.PreparedRules rulePack = prepared.get(next);
+            AutoLoadReport.FileTiming timing = new AutoLoadReport.FileTiming(
+                ruleFile,
+                rulePack.ruleName(),
+                registerError == null,
+                rulePack.factCount(),
+                rulePack.ruleCount(),
+                rulePack.cached(),
+                millis(rulePack.parseNanos()),
+                millis(rulePack.convertNanos()),
+                millis(registerNanos[next]),
+                registerError);
+            next++;
+            files.add(timing);
+            if (timing.success()) {
+                LOG.info("  ✅ {}: {} (事実: {}, ルール: {}, 解析: {}ms, 変換: {}ms, 登録: {}ms)", 
+                    timing.ruleName(), 
+                    timing.cached() ? "成功（変換済み）" : "成功",
+                    timing.factCount(), 
+                    timing.ruleCount(),
+                    String.format("%.1f", timing.parseMillis()),
+                    String.format("%.1f", timing.convertMillis()),
+                    String.format("%.1f", timing.registerMillis()));
+            }
+        }
+        return new AutoLoadReport(threads, millis(System.nanoTime() - start), millis(publishNanos), files);
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+    
+    /**
+     * 保存したスナップショットを復元
+     * 
+     * @return 復元できた場合はtrue（ファイルがない・壊れている場合はfalse）
+     */
+    private boolean restoreSnapshot() {
+        Path file = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(file)) {
+            LOG.info("ℹ️  スナップショットがないため、ルールファイルから読み込みます: {}", file);
+            return false;
+        }
+        try {
+            long start = System.nanoTime();
+            SnapshotInfo info = engine.restoreSnapshot(file);
+            LOG.info("💾 スナップショットを復元しました: {} (事実{}個, 関係{}個, ルール{}個, {}ms)",
+                file, info.factCount(), info.relationCount(), info.ruleCount(),
+                (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (Exception e) {
+            LOG.error("❌ スナップショットの復元に失敗したため、ルールファイルから読み込みます: {}", file, e);
+            return false;
+        }
+    }
+    
+    /**
+     * どのルールファイルからもストアに移されなかった事実をストアから削除
+     * 
+     * 読み込めなかったファイルがある場合は、そのファイルの事実を消さないよう呼び出しません。
+     */
+    private void pruneFactStore(List<RuleLoader.PreparedRules> prepared) {
+        try {
+            SortedSet<String> removed = factStore.prune(ruleLoader.storedFacts(prepared));
+            if (!removed.isEmpty()) {
+                LOG.info("🧹 ルールファイルから登録されなかったストアの事実{}個を削除しました: {}", removed.size(), removed);
+            }
+        } catch (Exception e) {
+            LOG.error("❌ ストアの事実の削除に失敗しました", e);
+        }
+    }
+    
+    /**
+     * 今回読み込んだルールファイルのもの以外の変換済みのルール定義をキャッシュから削除
+     */
+    private void pruneRuleCache(List<RuleLoader.PreparedRules> prepared) {
+        Set<String> keys = prepared.stream()
+            .map(RuleLoader.PreparedRules::contentHash)
+            .collect(Collectors.toSet());
+        int removed = ruleCache.prune(keys);
+        if (removed > 0) {
+            LOG.info("🧹 使われなくなった変換済みのルール定義{}個を削除しました", removed);
+        }
+    }
+    
+    /**
+     * ストアに保存された事実をメモリマップで登録（値はアクセスされたときに OS が読み込む）
+     */
+    private void loadFactStore() {
+        try {
+            Map<String, INDArray> facts = factStore.loadAll();
+            if (!facts.isEmpty()) {
+                engine.register(facts, Map.of());
+                LOG.info("💾 ストアの事実{}個をメモリマップで登録しました", facts.size());
+            }
+        } catch (Exception e) {
+            LOG.error("❌ ストアの事実の読み込みに失敗しました", e);
+        }
+    }
+    
     /**
      * rules/ ディレクトリ内の全ての .yaml ファイルを検索
      * 
@@ -0,0 +1,226 @@
+package ai.tensorlogic.store;
+
+import ai.tensorlogic.core.Precision;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacpp.indexer.Bfloat16Indexer;
+import org.bytedeco.javacpp.indexer.ByteIndexer;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * メモリマップして読み込む事実のファイル形式
+ *
+ * <pre>
+ *   0: int   マジックナンバー "TLMF"
+ *   4: int   形式のバージョン
+ *   8: int   精度（1: FLOAT64, 2: FLOAT32, 3: BFLOAT16, 4: INT8）
+ *  12: int   階数 r
+ *  16: long  形状 × r
+ *   …        64バイト境界までの詰め物
+ *   H: 要素の値（C順、リトルエンディアン）
+ * </pre>
+ *
+ * 値の領域は {@link FileChannel#map} で読み取り専用にマップし、コピーせずに ND4J の DataBuffer として包みます
+ * （{@code Nd4j.createBuffer(ByteBuffer, ...)} はヒープ外の新しい領域に値をコピーするため使わず、
+ * マップしたアドレスを JavaCPP のポインタとして渡します）。
+ * ページは参照されたときに OS が読み込むため、ヒープにも物理メモリにも事実全体を載せる必要はなく、
+ * 同じファイルをマップした別のプロセス・再起動後のプロセスとページキャッシュを共有します。
+ *
+ * マップした事実は読み取り専用です（エンジンは事実をその場で書き換えません）。
+ * 1つの事実の値の領域は2GB未満である必要があります。
+ */
+public final class MappedFactFile {
+
+    private static final int MAGIC = 0x544C4D46;
+    private static final int VERSION = 1;
+    private static final int ALIGNMENT = 64;
+
+    private MappedFactFile() {
+    }
+
+    /**
+     * 事実をファイルに書き込む
+     *
+     * 一時ファイルに書き込んでから置き換えるため、既存のファイルをマップしているプロセスは
+     * 置き換え前の内容を参照し続けます。
+     *
+     * @throws IllegalArgumentException 対応していない型、または2GB以上の事実の場合
+     */
+    public static void write(Path file, INDArray tensor) throws IOException {
+        Precision precision = Precision.of(tensor.dataType());
+        long length = tensor.length();
+        long[] shape = tensor.shape();
+        int header = headerSize(shape.length);
+        long bytes = length * precision.width();
+        if (header + bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("2GB以上の事実はメモリマップのファイルに保存できません: "
+                + Arrays.toString(shape));
+        }
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".fact-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, header + bytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(precision.code()).putInt(shape.length);
+                for (long dim : shape) {
+                    buffer.putLong(dim);
+                }
+                buffer.position(header);
+                precision.write(tensor, buffer);
+                buffer.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * ファイルをメモリマップして事実として読み込む
+     *
+     * @throws IOException ファイルの形式が不正な場合
+     */
+    public static INDArray map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16 || size > Integer.MAX_VALUE) {
+                throw new IOException("事実のファイルの大きさが不正です: " + file + " (" + size + "バイト)");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC) {
+                throw new IOException("事実のファイルではありません: " + file);
+            }
+            int version = mapped.getInt();
+            if (version != VERSION) {
+                throw new IOException("未対応の形式のバージョンです: " + version + " (" + file + ")");
+            }
+            Precision precision;
+            try {
+                precision = Precision.fromCode(mapped.getInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage() + " (" + file + ")", e);
+            }
+            int rank = mapped.getInt();
+            int header = headerSize(rank);
+            if (rank < 0 || header > size) {
+                throw new IOException("事実のファイルのヘッダーが不正です: " + file);
+            }
+            long[] shape = new long[rank];
+            long length = 1;
+            for (int i = 0; i < rank; i++) {
+                shape[i] = mapped.getLong();
+                length *= shape[i];
+            }
+            if (header + length * precision.width() != size) {
+                throw new IOException("事実のファイルの大きさが形状と一致しません: " + file);
+            }
+
+            // ND4J はネイティブのバイト順で値を読むため、ファイルの値をそのまま使えるのはリトルエンディアンの環境のみ
+            if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+                throw new IOException("メモリマップの事実はリトルエンディアンの環境のみ対応しています");
+            }
+            ByteBuffer values = mapped.position(header).slice().order(ByteOrder.LITTLE_ENDIAN);
+            return Nd4j.create(wrap(values, precision.dataType(), length), shape);
+        }
+    }
+
+    /**
+     * ヘッダーのない値だけのファイル（C順、リトルエンディアン）をメモリマップして事実として読み込む
+     *
+     * NumPy の {@code ndarray.tofile} で書き出したファイルなどを対象とします。
+     * 要素の型と形状はファイルに含まれないため、呼び出し側で指定します。
+     *
+     * @param precision 要素の型（INT8 は {@link Precision} の量子化した値として扱う）
+     * @throws IOException ファイルの大きさが形状と一致しない場合
+     */
+    public static INDArray mapRaw(Path file, Precision precision, long[] shape) throws IOException {
+        long length = 1;
+        for (long dim : shape) {
+            length = Math.multiplyExact(length, dim);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size != length * precision.width()) {
+                throw new IOException("値のファイルの大きさが形状と一致しません: " + file + " (" + size
+                    + "バイト, 形状 " + Arrays.toString(shape) + ", " + precision + ")");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("2GB以上の値のファイルはメモリマップできません: " + file);
+            }
+            if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+                throw new IOException("メモリマップの事実はリトルエンディアンの環境のみ対応しています");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return Nd4j.create(wrap(mapped, precision.dataType(), length), shape);
+        }
+    }
+
+    /**
+     * マップした値の領域をコピーせずに DataBuffer として包む
+     *
+     * ポインタのサブクラスから元のバッファを参照し続けるため、DataBuffer が使われている間はマップが解放されません。
+     * 包めない型（整数・真偽値）は ND4J の領域にコピーします。
+     *
+     * @param values ネイティブのバイト順の値（ダイレクトバッファ）
+     */
+    static DataBuffer wrap(ByteBuffer values, DataType dataType, long length) {
+        return switch (dataType) {
+            case DOUBLE -> {
+                DoublePointer pointer = new DoublePointer(values.asDoubleBuffer()) {
+                    private final Buffer mapping = values;
+                };
+                yield Nd4j.createBuffer(pointer, dataType, length, DoubleIndexer.create(pointer));
+            }
+            case FLOAT -> {
+                FloatPointer pointer = new FloatPointer(values.asFloatBuffer()) {
+                    private final Buffer mapping = values;
+                };
+                yield Nd4j.createBuffer(pointer, dataType, length, FloatIndexer.create(pointer));
+            }
+            case BFLOAT16, HALF -> {
+                ShortPointer pointer = new ShortPointer(values.asShortBuffer()) {
+                    private final Buffer mapping = values;
+                };
+                yield Nd4j.createBuffer(pointer, dataType, length, dataType == DataType.HALF
+                    ? HalfIndexer.create(pointer) : Bfloat16Indexer.create(pointer));
+            }
+            case INT8 -> {
+                BytePointer pointer = new BytePointer(values) {
+                    private final Buffer mapping = values;
+                };
+                yield Nd4j.createBuffer(pointer, dataType, length, ByteIndexer.create(pointer));
+            }
+            default -> Nd4j.createBuffer(values, dataType, Math.toIntExact(length));
+        };
+    }
+
+    // ===== 内部処理 =====
+
+    private static int headerSize(int rank) {
+        int size = 16 + 8 * rank;
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,232 @@
+package ai.tensorlogic.store;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * ファイルに保存した事実をメモリマップで読み込むストア
+ *
+ * 大きな事実をヒープ外（ページキャッシュ）に置き、OS が必要なページだけを読み込みます。
+ * ストアのファイルは再起動後やほかのプロセスと共有でき、保存済みの事実は数値を解析せずに登録できます。
+ * 物理メモリより大きな事実の集合も扱えます。
+ *
+ * 事実1つにつき1ファイル（{@code <ディレクトリ>/<事実名>.fact}、形式は {@link MappedFactFile}）です。
+ * ルール定義から移した事実は、由来（ルール定義ファイルと内容のハッシュ）を {@code <事実名>.origin} に記録し、
+ * 由来が変わっていなければ次回は書き直さずに保存済みのファイルをマップします。
+ */
+@ApplicationScoped
+public class MappedFactStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFactStore.class);
+
+    private static final String EXTENSION = ".fact";
+    private static final String ORIGIN_EXTENSION = ".origin";
+
+    @ConfigProperty(name = "tensor.logic.fact-store.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "tensor.logic.fact-store.directory", defaultValue = "data/facts")
+    String directory;
+
+    @ConfigProperty(name = "tensor.logic.fact-store.min-bytes", defaultValue = "16777216")
+    long minBytes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 事実を保存してメモリマップした事実を返す
+     */
+    public INDArray save(String name, INDArray tensor) {
+        Path file = fileOf(name);
+        try {
+            Files.createDirectories(file.getParent());
+            MappedFactFile.write(file, tensor);
+            LOG.debug("事実 '{}' をストアに保存: {}", name, file);
+            return MappedFactFile.map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("事実をストアに保存できませんでした: " + name, e);
+        }
+    }
+
+    /**
+     * 保存した事実をメモリマップで読み込む
+     *
+     * @return 事実（保存されていない場合はnull）
+     */
+    public INDArray load(String name) {
+        Path file = fileOf(name);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return MappedFactFile.map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("ストアの事実を読み込めませんでした: " + name, e);
+        }
+    }
+
+    /**
+     * 保存した全ての事実をメモリマップで読み込む（事実名の順）
+     */
+    public Map<String, INDArray> loadAll() {
+        Map<String, INDArray> facts = new LinkedHashMap<>();
+        for (String name : names()) {
+            facts.put(name, load(name));
+        }
+        return facts;
+    }
+
+    /**
+     * 保存した事実の名前
+     */
+    public SortedSet<String> names() {
+        TreeSet<String> names = new TreeSet<>();
+        Path root = Paths.get(directory);
+        if (!Files.isDirectory(root)) {
+            return names;
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(file -> file.endsWith(EXTENSION))
+                .map(file -> URLDecoder.decode(file.substring(0, file.length() - EXTENSION.length()),
+                    StandardCharsets.UTF_8))
+                .forEach(names::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("ストアの一覧を取得できませんでした: " + root, e);
+        }
+        return names;
+    }
+
+    /**
+     * 保存した事実を削除（マップ済みの事実は、参照がなくなるまで元の内容を参照できる）
+     *
+     * @return 事実が保存されていて削除された場合はtrue
+     */
+    public boolean delete(String name) {
+        try {
+            Files.deleteIfExists(originOf(name));
+            return Files.deleteIfExists(fileOf(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException("ストアの事実を削除できませんでした: " + name, e);
+        }
+    }
+
+    /**
+     * 指定した事実以外を削除（ルール定義から削除された事実・小さくなった事実のファイルを片付ける）
+     *
+     * @param retained 残す事実の名前
+     * @return 削除した事実の名前
+     */
+    public SortedSet<String> prune(Set<String> retained) {
+        SortedSet<String> removed = new TreeSet<>();
+        for (String name : names()) {
+            if (!retained.contains(name) && delete(name)) {
+                removed.add(name);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 事実がストアに移す大きさかどうか（ストアが有効で、大きさが tensor.logic.fact-store.min-bytes 以上）
+     */
+    public boolean shouldOffload(INDArray tensor) {
+        return enabled && tensor.length() * tensor.dataType().width() >= minBytes;
+    }
+
+    /**
+     * 大きな事実をストアに移す
+     *
+     * ストアに移す大きさの事実（{@link #shouldOffload}）は、保存してメモリマップした事実を返します。
+     * それ以外は元の事実をそのまま返します。
+     * 同じ由来で保存済みの事実は書き直さず、保存済みのファイルをマップして返します。
+     *
+     * @param origin 事実の由来（ルール定義ファイルと内容のハッシュなど、内容が変われば変わる文字列）
+     */
+    public INDArray offload(String name, INDArray tensor, String origin) {
+        if (!shouldOffload(tensor)) {
+            return tensor;
+        }
+        if (origin.equals(origin(name))) {
+            INDArray stored = reuse(name, tensor);
+            if (stored != null) {
+                LOG.debug("事実 '{}' は由来が同じため保存済みのファイルを使用: {}", name, origin);
+                return stored;
+            }
+        }
+        try {
+            // 書き込み中に失敗した場合に古い由来で新しい内容を再利用しないよう、先に由来を消す
+            Files.deleteIfExists(originOf(name));
+            INDArray stored = save(name, tensor);
+            Files.writeString(originOf(name), origin, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            return stored;
+        } catch (IOException e) {
+            throw new UncheckedIOException("事実の由来をストアに記録できませんでした: " + name, e);
+        }
+    }
+
+    /**
+     * 保存した事実の由来
+     *
+     * @return 由来（記録されていない場合はnull）
+     */
+    public String origin(String name) {
+        Path file = originOf(name);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("事実の由来を読み込めません: {} ({})", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 保存済みの事実が形状・型とも同じ場合はマップして返す（読み込めない場合はnull）
+     */
+    private INDArray reuse(String name, INDArray tensor) {
+        try {
+            INDArray stored = load(name);
+            if (stored != null && stored.dataType() == tensor.dataType()
+                    && Arrays.equals(stored.shape(), tensor.shape())) {
+                return stored;
+            }
+        } catch (UncheckedIOException e) {
+            LOG.warn("保存済みの事実を読み込めないため書き直します: {} ({})", name, e.getMessage());
+        }
+        return null;
+    }
+
+    private Path fileOf(String name) {
+        return Paths.get(directory, URLEncoder.encode(name, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    private Path originOf(String name) {
+        return Paths.get(directory, URLEncoder.encode(name, StandardCharsets.UTF_8) + ORIGIN_EXTENSION);
+    }
+}
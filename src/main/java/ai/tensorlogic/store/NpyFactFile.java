@@ -0,0 +1,173 @@
+package ai.tensorlogic.store;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * NumPy の .npy ファイルを事実として読み込む
+ *
+ * <pre>
+ *   0: byte[6] マジックナンバー "\x93NUMPY"
+ *   6: byte    メジャーバージョン（1, 2, 3）
+ *   7: byte    マイナーバージョン
+ *   8: ushort（バージョン1）または uint（バージョン2以降） ヘッダーの長さ
+ *   …: ヘッダー（Python の辞書のリテラル: descr, fortran_order, shape）
+ *   …: 要素の値
+ * </pre>
+ *
+ * 値の領域は {@link MappedFactFile} と同じく読み取り専用にマップし、ND4J の DataBuffer として包みます。
+ * 要素ごとの解析は行いません。
+ * float64（'&lt;f8'）・float32（'&lt;f4'）はコピーせずにマップしたまま保持し、
+ * float16・int8 はマップした値から、それ以外の整数・真偽値はコピーした値から ND4J で1度だけ浮動小数点数に変換します。
+ * fortran_order が True のファイルは F 順のまま参照します。
+ */
+public final class NpyFactFile {
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+
+    private static final Pattern DESCR = Pattern.compile("'descr'\\s*:\\s*'([<>|=])([a-z])(\\d+)'");
+    private static final Pattern FORTRAN_ORDER = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+    private static final Pattern SHAPE = Pattern.compile("'shape'\\s*:\\s*\\(([^)]*)\\)");
+
+    private NpyFactFile() {
+    }
+
+    /**
+     * .npy ファイルをメモリマップして事実として読み込む
+     *
+     * @throws IOException ファイルの形式が不正、または未対応の要素の型の場合
+     */
+    public static INDArray map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 10 || size > Integer.MAX_VALUE) {
+                throw new IOException(".npy ファイルの大きさが不正です: " + file + " (" + size + "バイト)");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            for (byte b : MAGIC) {
+                if (mapped.get() != b) {
+                    throw new IOException(".npy ファイルではありません: " + file);
+                }
+            }
+            int major = mapped.get();
+            mapped.get();
+            long headerLength = switch (major) {
+                case 1 -> Short.toUnsignedInt(mapped.getShort());
+                case 2, 3 -> Integer.toUnsignedLong(mapped.getInt());
+                default -> throw new IOException("未対応の .npy のバージョンです: " + major + " (" + file + ")");
+            };
+            if (mapped.position() + headerLength > size) {
+                throw new IOException(".npy ファイルのヘッダーが不正です: " + file);
+            }
+            byte[] headerBytes = new byte[(int) headerLength];
+            mapped.get(headerBytes);
+            String header = new String(headerBytes, major == 3 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+            Matcher descr = DESCR.matcher(header);
+            Matcher fortran = FORTRAN_ORDER.matcher(header);
+            Matcher shapeMatch = SHAPE.matcher(header);
+            if (!descr.find() || !fortran.find() || !shapeMatch.find()) {
+                throw new IOException(".npy ファイルのヘッダーを解析できません: " + header.trim() + " (" + file + ")");
+            }
+            int width = Integer.parseInt(descr.group(3));
+            DataType dataType = dataType(descr.group(2), width, file);
+            if (descr.group(1).equals(">") && width > 1) {
+                throw new IOException("ビッグエンディアンの .npy ファイルは未対応です（astype('<"
+                    + descr.group(2) + width + "') で保存してください）: " + file);
+            }
+            long[] shape = parseShape(shapeMatch.group(1), file);
+            long length = 1;
+            for (long dim : shape) {
+                length = Math.multiplyExact(length, dim);
+            }
+            int data = mapped.position();
+            if (data + length * width != size) {
+                throw new IOException(".npy ファイルの大きさが形状と一致しません: " + file);
+            }
+
+            // ND4J はネイティブのバイト順で値を読むため、ファイルの値をそのまま使えるのはリトルエンディアンの環境のみ
+            if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+                throw new IOException("メモリマップの事実はリトルエンディアンの環境のみ対応しています");
+            }
+            ByteBuffer values = mapped.position(data).slice().order(ByteOrder.LITTLE_ENDIAN);
+            DataBuffer buffer = MappedFactFile.wrap(values, dataType, length);
+            INDArray tensor = fortran.group(1).equals("True")
+                ? Nd4j.create(buffer, shape, fortranStrides(shape), 0, 'f')
+                : Nd4j.create(buffer, shape);
+
+            return switch (dataType) {
+                case DOUBLE, FLOAT -> tensor;
+                case HALF -> tensor.castTo(DataType.FLOAT);
+                default -> tensor.castTo(DataType.DOUBLE);
+            };
+        }
+    }
+
+    // ===== 内部処理 =====
+
+    /**
+     * 要素の型（descr の種類と大きさ）に対応する ND4J の型
+     */
+    private static DataType dataType(String kind, int width, Path file) throws IOException {
+        DataType dataType = switch (kind + width) {
+            case "f8" -> DataType.DOUBLE;
+            case "f4" -> DataType.FLOAT;
+            case "f2" -> DataType.HALF;
+            case "i1" -> DataType.INT8;
+            case "u1" -> DataType.UINT8;
+            case "i2" -> DataType.INT16;
+            case "i4" -> DataType.INT32;
+            case "i8" -> DataType.INT64;
+            case "b1" -> DataType.BOOL;
+            default -> null;
+        };
+        if (dataType == null) {
+            throw new IOException("未対応の .npy の要素の型です: " + kind + width + " (" + file + ")");
+        }
+        return dataType;
+    }
+
+    /**
+     * shape のタプル（例: "3, 4" や "5,"）を解析
+     */
+    private static long[] parseShape(String tuple, Path file) throws IOException {
+        String[] parts = tuple.trim().split("\\s*,\\s*");
+        int rank = parts.length == 1 && parts[0].isEmpty() ? 0 : parts.length;
+        long[] shape = new long[rank];
+        try {
+            for (int i = 0; i < rank; i++) {
+                shape[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(".npy ファイルの shape が不正です: (" + tuple + ") " + file, e);
+        }
+        return shape;
+    }
+
+    /**
+     * F 順の要素単位のストライド
+     */
+    private static long[] fortranStrides(long[] shape) {
+        long[] strides = new long[shape.length];
+        long stride = 1;
+        for (int i = 0; i < shape.length; i++) {
+            strides[i] = stride;
+            stride *= shape[i];
+        }
+        return strides;
+    }
+}
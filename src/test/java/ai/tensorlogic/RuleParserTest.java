@@ -1,14 +1,25 @@
 package ai.tensorlogic;
 
 import ai.tensorlogic.core.Rule;
+import ai.tensorlogic.core.RulePackFile;
 import ai.tensorlogic.parser.RuleDefinition;
 import ai.tensorlogic.parser.RuleLoader;
 import ai.tensorlogic.parser.RuleParser;
+import ai.tensorlogic.parser.StreamedValues;
+import ai.tensorlogic.parser.TensorConverter;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,6 +36,9 @@ class RuleParserTest {
     @Inject
     RuleLoader loader;
     
+    @Inject
+    TensorConverter converter;
+    
     @Test
     @DisplayName("リソースからのルール読み込み")
     void testParseResource() throws Exception {
@@ -165,5 +179,235 @@ class RuleParserTest {
         assertEquals(rulesCount, result.ruleCount(), 
             "ルールの数が一致すること");
     }
+    
+    @Test
+    @DisplayName("密なテンソルの値のストリーミング読み込み")
+    void testStreamedTensorValues() throws Exception {
+        // Given: type と shape を values より前に書いた行列とベクトル
+        String yaml = """
+            metadata:
+              name: streamed
+              namespace: streamed
+            facts:
+              - name: streamed_matrix
+                tensor:
+                  type: matrix
+                  shape: [2, 3]
+                  values: [[0.5, 1, 0], [2, 3.25, -1]]
+              - name: streamed_vector
+                tensor:
+                  type: vector
+                  shape: [3]
+                  values: [1, 0, 1]
+            rules: []
+            """;
+        
+        // When
+        RuleDefinition definition = parser.parseStream(
+            new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+        
+        // Then: 値はリストではなく宣言された shape のテンソルとして読み込まれること
+        StreamedValues matrix = assertInstanceOf(StreamedValues.class,
+            definition.facts().get(0).tensor().values());
+        assertArrayEquals(new long[]{2, 3}, matrix.tensor().shape(), "形状が shape と一致すること");
+        assertArrayEquals(new double[]{0.5, 1, 0, 2, 3.25, -1},
+            matrix.tensor().reshape(6).toDoubleVector(), 1e-12, "値が C 順で格納されること");
+        assertFalse(matrix.binary(), "0/1以外の値を含む場合は binary でないこと");
+        
+        StreamedValues vector = assertInstanceOf(StreamedValues.class,
+            definition.facts().get(1).tensor().values());
+        assertTrue(vector.binary(), "0/1だけの値は binary であること");
+    }
+    
+    @Test
+    @DisplayName("値が0/1だけの大きな行列は既定でビット関係として保持する")
+    void testBitRelationDetection() throws Exception {
+        // Given: 32×32（1024要素）の0/1の行列と、0/1以外の値を含む同じ大きさの行列
+        String binary = "[" + String.join(", ", Collections.nCopies(32,
+            "[" + String.join(", ", Collections.nCopies(32, "1")) + "]")) + "]";
+        String yaml = """
+            metadata:
+              name: crisp
+              namespace: crisp
+            facts:
+              - name: crisp_matrix
+                tensor:
+                  type: matrix
+                  shape: [32, 32]
+                  values: %s
+              - name: crisp_weighted
+                tensor:
+                  type: matrix
+                  shape: [32, 32]
+                  values: %s
+            rules: []
+            """.formatted(binary, binary.replaceFirst("1", "0.5"));
+        
+        // When
+        RuleDefinition definition = parser.parseStream(
+            new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+        
+        // Then
+        assertTrue(converter.isCrisp(definition.facts().get(0).tensor()), "0/1だけの行列はビット関係になること");
+        assertFalse(converter.isCrisp(definition.facts().get(1).tensor()), "0/1以外の値を含む行列は密なままであること");
+    }
+    
+    @Test
+    @DisplayName("密なテンソルの値が shape と一致しない場合はエラー")
+    void testStreamedTensorValues_ShapeMismatch() {
+        // Given: 2行目の要素数が shape と異なる行列
+        String yaml = """
+            metadata:
+              name: streamed
+              namespace: streamed
+            facts:
+              - name: streamed_bad
+                tensor:
+                  type: matrix
+                  shape: [2, 3]
+                  values: [[1, 2, 3], [4, 5]]
+            rules: []
+            """;
+        
+        // When & Then
+        assertThrows(Exception.class, () -> parser.parseStream(
+            new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8))),
+            "shape と一致しない values は読み込みに失敗すること");
+    }
+    
+    @Test
+    @DisplayName("3次元テンソル - 入れ子のリストと平坦なリストが同じテンソルになる")
+    void testRankNTensor_FlatAndNested() throws Exception {
+        // Given: 同じ 2×3×2 のテンソルを、平坦なリスト・入れ子のリスト（values を先に書いたもの）で定義
+        String yaml = """
+            metadata:
+              name: rank3
+              namespace: rank3
+            facts:
+              - name: rank3_flat
+                tensor:
+                  type: tensor
+                  shape: [2, 3, 2]
+                  values: [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12]
+              - name: rank3_nested
+                tensor:
+                  values: [[[1, 2], [3, 4], [5, 6]], [[7, 8], [9, 10], [11, 12]]]
+                  type: tensor
+                  shape: [2, 3, 2]
+            rules: []
+            """;
+        RuleDefinition definition = parser.parseStream(
+            new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+        
+        // When
+        INDArray flat = converter.convert(definition.facts().get(0).tensor());
+        INDArray nested = converter.convert(definition.facts().get(1).tensor());
+        
+        // Then: どちらも C 順の1つのテンソルになること
+        assertArrayEquals(new long[]{2, 3, 2}, flat.shape(), "形状が shape と一致すること");
+        assertArrayEquals(new long[]{2, 3, 2}, nested.shape(), "形状が shape と一致すること");
+        assertEquals(10.0, flat.getDouble(1, 1, 1), 1e-12, "C 順で格納されること");
+        assertTrue(flat.equalsWithEps(nested, 1e-12), "平坦なリストと入れ子のリストが同じ値になること");
+    }
+    
+    @Test
+    @DisplayName("source - .npy と値だけのファイルから事実を読み込む")
+    void testSourceFiles() throws Exception {
+        // Given: NumPy の np.save・ndarray.tofile と同じ形式のファイルと、それを相対パスで参照する YAML
+        Path directory = Files.createTempDirectory("source-facts");
+        double[] values = {0.1, 0.2, 0.3, 0.4, 0.5, 0.6};
+        ByteBuffer data = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        data.asDoubleBuffer().put(values);
+        String header = "{'descr': '<f8', 'fortran_order': False, 'shape': (2, 3), }";
+        header += " ".repeat(63 - (10 + header.length()) % 64) + "\n";
+        ByteBuffer npy = ByteBuffer.allocate(10 + header.length() + data.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        npy.put(new byte[]{(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0})
+            .putShort((short) header.length())
+            .put(header.getBytes(StandardCharsets.ISO_8859_1))
+            .put(data.array());
+        Files.write(directory.resolve("relation.npy"), npy.array());
+        Files.write(directory.resolve("relation.bin"), data.array());
+        Files.writeString(directory.resolve("rules.yaml"), """
+            metadata:
+              name: source
+              namespace: source
+            facts:
+              - name: source_npy
+                tensor:
+                  type: matrix
+                  source: relation.npy
+              - name: source_raw
+                tensor:
+                  type: tensor
+                  shape: [3, 2]
+                  source: relation.bin
+            rules: []
+            """);
+        
+        // When
+        RuleDefinition definition = parser.parseFile(directory.resolve("rules.yaml").toString());
+        INDArray fromNpy = converter.convert(definition.facts().get(0).tensor());
+        INDArray fromRaw = converter.convert(definition.facts().get(1).tensor());
+        
+        // Then: 形状はファイル（.npy）または shape（値だけのファイル）の通りで、値は C 順で読み込まれること
+        assertTrue(parser.validate(definition).isValid(), "検証が成功すること");
+        assertArrayEquals(new long[]{2, 3}, fromNpy.shape(), ".npy の形状で読み込まれること");
+        assertEquals(0.6, fromNpy.getDouble(1, 2), 1e-12, ".npy の値が読み込まれること");
+        assertArrayEquals(new long[]{3, 2}, fromRaw.shape(), "shape の形状で読み込まれること");
+        assertEquals(0.4, fromRaw.getDouble(1, 1), 1e-12, "値だけのファイルの値が読み込まれること");
+    }
+    
+    @Test
+    @DisplayName("source - リソースの相対パスはリソースのディレクトリを基準に解決する")
+    void testSourceFiles_Resource() throws Exception {
+        // When: 自動ロードと同じ経路（prepareResource）で読み込む
+        RuleLoader.PreparedRules prepared = loader.prepareResource("source-facts/source-rules.yaml");
+        
+        // Then: 作業ディレクトリではなく YAML と同じディレクトリのファイルが読み込まれること
+        INDArray weights = prepared.tensors().get("resource_source_weights");
+        assertNotNull(weights, "source の事実が読み込まれること");
+        assertArrayEquals(new long[]{3, 2}, weights.shape(), "shape の形状で読み込まれること");
+        assertEquals(0.4, weights.getDouble(1, 1), 1e-12, "リソースのディレクトリのファイルが読み込まれること");
+        
+        // 場所のわからないストリームでは相対パスの source はエラー
+        String yaml = """
+            metadata:
+              name: stream-source
+              namespace: stream-source
+            facts:
+              - name: stream_source_weights
+                tensor:
+                  type: tensor
+                  shape: [3, 2]
+                  source: weights.bin
+            rules: []
+            """;
+        assertThrows(IllegalArgumentException.class, () -> parser.parseStream(
+            new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8))),
+            "基準のディレクトリがない相対パスはエラーになること");
+    }
+    
+    @Test
+    @DisplayName("変換済みのルール定義 - 保存と読み込みで同じ内容になる")
+    void testRulePackFile_RoundTrip() throws Exception {
+        // Given: 解析・検証・変換したルール定義
+        RuleLoader.PreparedRules prepared = loader.prepareResource("rules/loan-approval-from-drd.yaml");
+        Path file = Files.createTempDirectory("rule-pack").resolve("loan.rulepack");
+        
+        // When
+        RulePackFile.write(file, new RulePackFile.Pack(prepared.ruleName(), prepared.tensors(),
+            prepared.relations(), prepared.rules()));
+        RulePackFile.Pack restored = RulePackFile.read(file);
+        
+        // Then: 名前・ルール（登録の順）・事実が一致すること
+        assertEquals(prepared.ruleName(), restored.name(), "名前が一致すること");
+        assertEquals(List.copyOf(prepared.rules().keySet()), List.copyOf(restored.rules().keySet()),
+            "ルールの順序が保たれること");
+        assertEquals(prepared.rules(), restored.rules(), "ルールが一致すること");
+        assertEquals(prepared.tensors().keySet(), restored.facts().keySet(), "事実の名前が一致すること");
+        prepared.tensors().forEach((name, tensor) -> {
+            assertEquals(tensor.dataType(), restored.facts().get(name).dataType(), name + " の精度が保たれること");
+            assertTrue(tensor.equalsWithEps(restored.facts().get(name), 1e-12), name + " の値が一致すること");
+        });
+    }
 }
-
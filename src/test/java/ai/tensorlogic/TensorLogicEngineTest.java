@@ -1,17 +1,46 @@
 package ai.tensorlogic;
 
 import ai.tensorlogic.core.BackwardChainingResult;
+import ai.tensorlogic.core.BatchForwardChainingResult;
+import ai.tensorlogic.core.BitRelation;
+import ai.tensorlogic.core.EngineSnapshot;
+import ai.tensorlogic.core.EngineSnapshotFile;
+import ai.tensorlogic.core.GoalTableStats;
+import ai.tensorlogic.core.ReasoningSession;
+import ai.tensorlogic.core.ExecutionPlan;
+import ai.tensorlogic.core.ForwardChainingResult;
+import ai.tensorlogic.core.Precision;
+import ai.tensorlogic.core.Relation;
 import ai.tensorlogic.core.Rule;
+import ai.tensorlogic.core.Semiring;
+import ai.tensorlogic.core.SnapshotInfo;
+import ai.tensorlogic.core.SparseRelation;
 import ai.tensorlogic.core.TensorLogicEngine;
+import ai.tensorlogic.core.TopKResult;
+import ai.tensorlogic.store.MappedFactFile;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -286,5 +315,1101 @@ class TensorLogicEngineTest {
         double fact3Value = engine.getFact("fact3").getDouble(0);
         assertTrue(fact2Value >= fact3Value, "確信度が伝播すること");
     }
+    
+    @Test
+    @DisplayName("不動点前向き推論 - 多段ルールを1回の呼び出しで導出")
+    void testForwardChainToFixpoint_MultiLevel() {
+        // Given: fp_A → fp_B → fp_C の2段チェーン（後段のルールを先に登録）
+        engine.addFact("fp_A", Nd4j.create(new double[]{1.0}));
+        engine.addFact("fp_A_implies_B", Nd4j.create(new double[][]{{0.95}}));
+        engine.addFact("fp_B_implies_C", Nd4j.create(new double[][]{{0.90}}));
+        
+        engine.addRule("fp_rule2", Rule.builder()
+            .namespace("fixpoint")
+            .inputs("fp_B", "fp_B_implies_C")
+            .output("fp_C")
+            .operation(Rule.Operation.MODUS_PONENS)
+            .build());
+        engine.addRule("fp_rule1", Rule.builder()
+            .namespace("fixpoint")
+            .inputs("fp_A", "fp_A_implies_B")
+            .output("fp_B")
+            .operation(Rule.Operation.MODUS_PONENS)
+            .build());
+        
+        // When
+        ForwardChainingResult result = engine.forwardChainToFixpoint("fixpoint", 1e-6, 10);
+        
+        // Then
+        assertTrue(result.converged(), "収束すること");
+        assertTrue(result.derivedFacts().containsKey("fp_C"), "2段目の事実が導出されること");
+        assertEquals(0.855, engine.getFact("fp_C").getDouble(0), 0.001, "0.95 × 0.90 = 0.855");
+        assertTrue(result.ruleEvaluations() <= 3, "差分のあるルールだけが再評価されること");
+    }
+    
+    @Test
+    @DisplayName("不動点前向き推論 - 2回目は変化がなく1ラウンドで収束")
+    void testForwardChainToFixpoint_AlreadyConverged() {
+        // Given
+        engine.addFact("fp2_A", Nd4j.create(new double[]{0.7}));
+        engine.addFact("fp2_B", Nd4j.create(new double[]{0.6}));
+        engine.addRule("fp2_rule", Rule.builder()
+            .namespace("fixpoint2")
+            .inputs("fp2_A", "fp2_B")
+            .output("fp2_C")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        engine.forwardChainToFixpoint("fixpoint2", 1e-6, 10);
+        
+        // When
+        ForwardChainingResult result = engine.forwardChainToFixpoint("fixpoint2", 1e-6, 10);
+        
+        // Then
+        assertTrue(result.converged(), "収束すること");
+        assertEquals(1, result.rounds(), "1ラウンドで終了すること");
+        assertTrue(result.derivedFacts().isEmpty(), "変化した事実がないこと");
+    }
+    
+    @Test
+    @DisplayName("ルール索引 - 同名ルールの置換で古い出力が索引から外れること")
+    void testRuleIndex_ReplaceRule() {
+        // Given
+        engine.addFact("idx_A", Nd4j.create(new double[]{0.9}));
+        engine.addFact("idx_B", Nd4j.create(new double[]{0.4}));
+        engine.addRule("idx_rule", Rule.builder()
+            .namespace("index")
+            .inputs("idx_A", "idx_B")
+            .output("idx_old")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        
+        // When: 同じ名前で出力の異なるルールに置き換える
+        engine.addRule("idx_rule", Rule.builder()
+            .namespace("index")
+            .inputs("idx_A", "idx_B")
+            .output("idx_new")
+            .operation(Rule.Operation.DISJUNCTION)
+            .build());
+        
+        // Then
+        assertFalse(engine.backwardChain("idx_old", "index").success(), "旧ルールの出力は導出できないこと");
+        BackwardChainingResult result = engine.backwardChain("idx_new", "index");
+        assertTrue(result.success(), "新ルールの出力が導出できること");
+        assertEquals(0.9, result.getGoalConfidence(), 0.001, "max(0.9, 0.4) = 0.9");
+    }
+    
+    @Test
+    @DisplayName("実行計画 - トポロジカル順の層とキャッシュの無効化")
+    void testExecutionPlan_TopologicalOrderAndInvalidation() {
+        // Given: 後段のルールを先に登録
+        engine.addFact("plan_A", Nd4j.create(new double[]{0.9}));
+        engine.addFact("plan_B", Nd4j.create(new double[]{0.8}));
+        engine.addFact("plan_C", Nd4j.create(new double[]{0.7}));
+        engine.addRule("plan_rule2", Rule.builder()
+            .namespace("plan")
+            .inputs("plan_AB", "plan_C")
+            .output("plan_ABC")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        engine.addRule("plan_rule1", Rule.builder()
+            .namespace("plan")
+            .inputs("plan_A", "plan_B")
+            .output("plan_AB")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        
+        // When
+        ExecutionPlan plan = engine.getExecutionPlan("plan");
+        
+        // Then
+        assertEquals(List.of(List.of("plan_rule1"), List.of("plan_rule2")), plan.strata(),
+            "依存元のルールが先の層に配置されること");
+        assertSame(plan, engine.getExecutionPlan("plan"), "実行計画がキャッシュされること");
+        
+        Map<String, INDArray> results = engine.forwardChain("plan");
+        assertEquals(0.7, results.get("plan_ABC").getDouble(0), 0.001, "1回の前向き推論で2段目まで導出されること");
+        
+        engine.addRule("plan_rule3", Rule.builder()
+            .namespace("plan")
+            .inputs("plan_A", "plan_C")
+            .output("plan_AC")
+            .operation(Rule.Operation.DISJUNCTION)
+            .build());
+        assertNotSame(plan, engine.getExecutionPlan("plan"), "ルール追加で実行計画が再コンパイルされること");
+    }
+    
+    @Test
+    @DisplayName("スナップショット - 取得後の書き込みが見えないこと")
+    void testSnapshotIsolation() {
+        // Given
+        engine.addFact("snap_A", Nd4j.create(new double[]{0.5}));
+        EngineSnapshot before = engine.snapshot();
+        
+        // When
+        engine.addFact("snap_A", Nd4j.create(new double[]{0.9}));
+        engine.addFact("snap_B", Nd4j.create(new double[]{0.1}));
+        
+        // Then
+        assertEquals(0.5, before.getFact("snap_A").getDouble(0), 0.001, "古いスナップショットは古い値のままであること");
+        assertNull(before.getFact("snap_B"), "古いスナップショットに後から追加した事実が見えないこと");
+        assertEquals(0.9, engine.getFact("snap_A").getDouble(0), 0.001, "最新の値が取得できること");
+        assertTrue(engine.snapshot().version() > before.version(), "バージョンが進むこと");
+    }
+    
+    @Test
+    @DisplayName("スナップショット - 並行した書き込みと読み取り")
+    void testConcurrentWritesAndReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        String name = "conc_" + thread + "_" + i;
+                        engine.addFact(name, Nd4j.create(new double[]{0.5}));
+                        engine.addRule(name + "_rule", Rule.builder()
+                            .namespace("concurrent")
+                            .inputs(name, name)
+                            .output(name + "_out")
+                            .operation(Rule.Operation.CONJUNCTION)
+                            .build());
+                        // 読み取り側は反復中に状態が変わっても例外にならないこと
+                        engine.getAllFacts().keySet().forEach(key -> { });
+                        engine.backwardChain(name + "_out", "concurrent");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        Map<String, INDArray> results = engine.forwardChain("concurrent");
+        assertEquals(400, results.size(), "全てのルールが登録されていること");
+    }
+    
+    @Test
+    @DisplayName("推論セッション - セッション固有の事実がエンジンに漏れない")
+    void testReasoningSession_Isolation() {
+        // Given: エンジンに共有の事実とルールを登録
+        engine.addFact("sess_base", Nd4j.create(new double[]{0.8}));
+        engine.addRule(Rule.builder()
+            .namespace("session")
+            .inputs("sess_base", "sess_local")
+            .output("sess_out")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        
+        try (ReasoningSession session = engine.openSession()) {
+            // When: セッションにだけ事実を追加して推論
+            session.addFact("sess_local", Nd4j.create(new double[]{0.6}));
+            Map<String, INDArray> derived = session.forwardChain("session");
+            
+            // Then
+            assertTrue(derived.containsKey("sess_out"), "基の事実とセッションの事実から導出されること");
+            assertEquals(0.6, session.getFact("sess_out").getDouble(0), 0.001);
+            assertEquals(0.8, session.getFact("sess_base").getDouble(0), 0.001, "基の事実が参照できること");
+            assertNull(engine.getFact("sess_local"), "セッションの事実がエンジンに漏れないこと");
+            assertNull(engine.getFact("sess_out"), "セッションで導出した事実がエンジンに漏れないこと");
+        }
+    }
+    
+    @Test
+    @DisplayName("並列評価 - 独立したルールの結果が逐次評価と一致する")
+    void testForwardChain_ParallelStratum() {
+        // Given: 同じ層に入る独立したCHAINルール（閾値を超える大きさの行列）
+        INDArray a = Nd4j.rand(200, 200);
+        INDArray b = Nd4j.rand(200, 200);
+        engine.addFact("par_A", a);
+        engine.addFact("par_B", b);
+        for (int i = 0; i < 4; i++) {
+            engine.addRule("par_rule_" + i, Rule.builder()
+                .namespace("parallel")
+                .inputs(i % 2 == 0 ? "par_A" : "par_B", i % 2 == 0 ? "par_B" : "par_A")
+                .output("par_out_" + i)
+                .operation(Rule.Operation.CHAIN)
+                .build());
+        }
+        
+        // When
+        Map<String, INDArray> results = engine.forwardChain("parallel");
+        
+        // Then: 計画の順序でマージされ、値は逐次評価と同じ
+        assertEquals(List.of("par_out_0", "par_out_1", "par_out_2", "par_out_3"),
+            new ArrayList<>(results.keySet()), "結果の順序が決定的であること");
+        assertTrue(a.mmul(b).equalsWithEps(results.get("par_out_0"), 1e-6));
+        assertTrue(b.mmul(a).equalsWithEps(results.get("par_out_1"), 1e-6));
+        assertTrue(a.mmul(b).equalsWithEps(engine.getFact("par_out_2"), 1e-6));
+    }
+    
+    @Test
+    @DisplayName("後向き推論の表 - 証明の再利用と事実の変更による無効化")
+    void testBackwardChaining_Tabling() {
+        // Given
+        engine.addFact("tab_A", Nd4j.create(new double[]{0.9}));
+        engine.addFact("tab_B", Nd4j.create(new double[]{0.7}));
+        engine.addRule(Rule.builder()
+            .namespace("tabling")
+            .inputs("tab_A", "tab_B")
+            .output("tab_goal")
+            .operation(Rule.Operation.CONJUNCTION)
+            .build());
+        
+        BackwardChainingResult first = engine.backwardChain("tab_goal", "tabling");
+        GoalTableStats before = engine.getGoalTableStats();
+        
+        // When: 同じ目標をもう一度問い合わせる
+        BackwardChainingResult second = engine.backwardChain("tab_goal", "tabling");
+        
+        // Then: 表の証明が再利用される
+        assertTrue(engine.getGoalTableStats().hits() > before.hits(), "表の証明が再利用されること");
+        assertEquals(first.reasoningPath(), second.reasoningPath());
+        assertEquals(0.7, second.getGoalConfidence(), 0.001);
+        
+        // When: 証明に関係しない事実を生成するルールを追加する
+        engine.addRule(Rule.builder()
+            .namespace("tabling_other")
+            .inputs("tab_A", "tab_A")
+            .output("tab_unrelated")
+            .operation(Rule.Operation.DISJUNCTION)
+            .build());
+        GoalTableStats beforeUnrelated = engine.getGoalTableStats();
+        engine.backwardChain("tab_goal", "tabling");
+        
+        // Then: 証明は無効にならず再利用される
+        assertTrue(engine.getGoalTableStats().hits() > beforeUnrelated.hits(),
+            "関係しないルールの追加では証明が再利用されること");
+        
+        // When: 証明が参照した目標を生成するルールを追加する
+        engine.addRule("tab_goal_alt", Rule.builder()
+            .namespace("tabling")
+            .inputs("tab_A", "tab_B")
+            .output("tab_goal")
+            .operation(Rule.Operation.DISJUNCTION)
+            .build());
+        GoalTableStats beforeProducer = engine.getGoalTableStats();
+        engine.backwardChain("tab_goal", "tabling");
+        
+        // Then: 証明は無効になり探索し直される
+        assertEquals(beforeProducer.hits(), engine.getGoalTableStats().hits(),
+            "目標を生成するルールが変わると証明は再利用されないこと");
+        
+        // When: 証明が参照した事実を変更する
+        engine.addFact("tab_B", Nd4j.create(new double[]{0.4}));
+        BackwardChainingResult third = engine.backwardChain("tab_goal", "tabling");
+        
+        // Then: 証明が無効化され、新しい値で再計算される
+        assertTrue(third.success());
+        assertEquals(0.4, third.getGoalConfidence(), 0.001, "変更後の事実で再計算されること");
+    }
+    
+    @Test
+    @DisplayName("差分更新 - 事実の更新で下流の導出済みの事実だけを再計算")
+    void testIncrementalMaintenance_Update() {
+        // Given: inc_A ∧ inc_B → inc_C, inc_C ∧ inc_D → inc_E
+        engine.addFact("inc_A", Nd4j.create(new double[]{0.9}));
+        engine.addFact("inc_B", Nd4j.create(new double[]{0.8}));
+        engine.addFact("inc_D", Nd4j.create(new double[]{0.7}));
+        engine.addRule("inc_rule1", Rule.builder()
+            .namespace("incremental").inputs("inc_A", "inc_B").output("inc_C")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.addRule("inc_rule2", Rule.builder()
+            .namespace("incremental").inputs("inc_C", "inc_D").output("inc_E")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.forwardChain("incremental");
+        assertEquals(0.7, engine.getFact("inc_E").getDouble(0), 0.001);
+        
+        // When: 入力の事実を上書き（前向き推論は再実行しない）
+        engine.addFact("inc_B", Nd4j.create(new double[]{0.3}));
+        
+        // Then
+        assertEquals(0.3, engine.getFact("inc_C").getDouble(0), 0.001, "直接の下流が再計算されること");
+        assertEquals(0.3, engine.getFact("inc_E").getDouble(0), 0.001, "間接の下流も再計算されること");
+        assertTrue(engine.snapshot().isDerived("inc_E"));
+    }
+    
+    @Test
+    @DisplayName("差分更新 - 下流のルールを評価できなくなっても事実の更新は反映される")
+    void testIncrementalMaintenance_FailingRule() {
+        // Given: 循環のない関係の推移閉包（和・積）と、その下流のルール
+        engine.addFact("incf_edge", Nd4j.create(new double[][]{{0.0, 0.5}, {0.0, 0.0}}));
+        engine.addFact("incf_start", Nd4j.create(new double[]{1.0, 0.0}));
+        engine.addRule("incf_paths", Rule.builder()
+            .namespace("incf").inputs("incf_edge").output("incf_paths")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.SUM_PRODUCT).build());
+        engine.addRule("incf_reach", Rule.builder()
+            .namespace("incf").inputs("incf_start", "incf_paths").output("incf_reach")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.forwardChain("incf");
+        assertEquals(0.5, engine.getFact("incf_reach").getDouble(0, 1), 1e-6);
+        
+        // When: 循環を作る辺を追加すると推移閉包が収束しなくなる
+        INDArray cyclic = Nd4j.create(new double[][]{{0.0, 0.5}, {0.5, 0.0}});
+        assertDoesNotThrow(() -> engine.addFact("incf_edge", cyclic));
+        
+        // Then: 更新は反映され、評価できなくなった導出とその下流だけが取り消される
+        assertEquals(0.5, engine.getFact("incf_edge").getDouble(1, 0), 1e-6);
+        assertNull(engine.getFact("incf_paths"));
+        assertNull(engine.getFact("incf_reach"));
+        
+        // 形状の合わない入力に置き換えても更新は反映される
+        engine.addFact("incf_edge", Nd4j.create(new double[][]{{0.0, 0.5}, {0.0, 0.0}}));
+        engine.forwardChain("incf");
+        assertDoesNotThrow(() -> engine.addFact("incf_start", Nd4j.create(new double[]{1.0, 0.0, 0.0})));
+        assertEquals(3, engine.getFact("incf_start").length());
+        assertNotNull(engine.getFact("incf_paths"));
+        assertNull(engine.getFact("incf_reach"));
+    }
+    
+    @Test
+    @DisplayName("差分更新 - 事実の削除（DRed: 過剰削除と再導出）")
+    void testIncrementalMaintenance_Delete() {
+        // Given: del_C は del_A からも del_B からも導出できる
+        engine.addFact("del_A", Nd4j.create(new double[]{0.6}));
+        engine.addFact("del_X", Nd4j.create(new double[]{0.9}));
+        engine.addRule("del_rule_a", Rule.builder()
+            .namespace("dred").inputs("del_A", "del_X").output("del_C")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.addRule("del_rule_b", Rule.builder()
+            .namespace("dred").inputs("del_B", "del_X").output("del_C")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.addRule("del_rule_d", Rule.builder()
+            .namespace("dred").inputs("del_C", "del_X").output("del_D")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.forwardChain("dred");
+        engine.addFact("del_B", Nd4j.create(new double[]{0.4}));
+        assertEquals(0.6, engine.getFact("del_D").getDouble(0), 0.001);
+        
+        // When: del_A を削除すると、del_C は del_B から再導出される
+        assertTrue(engine.removeFact("del_A"));
+        
+        // Then
+        assertNull(engine.getFact("del_A"));
+        assertEquals(0.4, engine.getFact("del_C").getDouble(0), 0.001, "別の導出で再導出されること");
+        assertEquals(0.4, engine.getFact("del_D").getDouble(0), 0.001, "下流も再導出されること");
+        
+        // When: del_X を削除すると、導出済みの事実は全て削除される
+        assertTrue(engine.removeFact("del_X"));
+        assertNull(engine.getFact("del_C"));
+        assertNull(engine.getFact("del_D"));
+        assertFalse(engine.removeFact("del_X"), "存在しない事実の削除はfalse");
+    }
+    
+    @Test
+    @DisplayName("バッチ評価 - N件のエンティティを1回で評価し、個別の評価と一致する")
+    void testForwardChainBatch() {
+        // Given: 共有の事実（含意行列）とエンティティごとの事実
+        engine.addFact("batch_age_implies_adult", Nd4j.create(new double[][]{{1.0}}));
+        engine.addRule("batch_adult", Rule.builder()
+            .namespace("batch").inputs("batch_age", "batch_age_implies_adult").output("batch_is_adult")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("batch_financial", Rule.builder()
+            .namespace("batch").inputs("batch_income", "batch_credit").output("batch_eligible")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        
+        double[][] applicants = {{1.0, 0.95, 0.90}, {0.0, 0.80, 0.60}, {1.0, 0.30, 0.99}};
+        List<Map<String, INDArray>> entities = new ArrayList<>();
+        for (double[] applicant : applicants) {
+            entities.add(Map.of(
+                "batch_age", Nd4j.create(new double[]{applicant[0]}),
+                "batch_income", Nd4j.create(new double[]{applicant[1]}),
+                "batch_credit", Nd4j.create(new double[]{applicant[2]})));
+        }
+        
+        // When
+        BatchForwardChainingResult result = engine.forwardChainBatch("batch", entities);
+        
+        // Then
+        assertEquals(3, result.batchSize());
+        for (int i = 0; i < applicants.length; i++) {
+            INDArray expectedAdult = entities.get(i).get("batch_age")
+                .mmul(engine.getFact("batch_age_implies_adult"));
+            assertArrayEquals(expectedAdult.shape(), result.getFact(i, "batch_is_adult").shape(),
+                "個別に評価した場合と同じ形状であること");
+            assertEquals(applicants[i][0], result.getFact(i, "batch_is_adult").getDouble(0), 0.001);
+            assertEquals(Math.min(applicants[i][1], applicants[i][2]),
+                result.getFact(i, "batch_eligible").getDouble(0), 0.001);
+        }
+        assertNull(engine.getFact("batch_eligible"), "バッチの結果はエンジンに追加されないこと");
+    }
+    
+    @Test
+    @DisplayName("バッチ評価 - 共有の事実が関係の場合も評価する")
+    void testForwardChainBatch_SharedRelation() {
+        // Given: 共有の事実は疎な関係（3人 × 2部署の所属）
+        engine.addRelation("batchrel_member", SparseRelation.fromEdges(3, 2, new int[]{0, 2}, new int[]{1, 0},
+            new double[]{0.9, 0.6}));
+        engine.addRule("batchrel_dept", Rule.builder()
+            .namespace("batchrel").inputs("batchrel_person", "batchrel_member").output("batchrel_dept")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        List<Map<String, INDArray>> entities = List.of(
+            Map.of("batchrel_person", Nd4j.create(new double[]{1.0, 0.0, 0.0})),
+            Map.of("batchrel_person", Nd4j.create(new double[]{0.0, 0.0, 1.0})));
+        
+        // When
+        BatchForwardChainingResult result = engine.forwardChainBatch("batchrel", entities);
+        
+        // Then: 関係を入力に持つルールも読み飛ばされずに評価される
+        assertEquals(0.9, result.getFact(0, "batchrel_dept").getDouble(1), 1e-6);
+        assertEquals(0.6, result.getFact(1, "batchrel_dept").getDouble(0), 1e-6);
+        
+        // 密な行列に変換できない大きさの関係は、ルールを読み飛ばさずに例外
+        engine.addRelation("batchrel_member", BitRelation.fromEdges(5000, 5000, new int[]{0}, new int[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> engine.forwardChainBatch("batchrel", entities));
+        engine.removeFact("batchrel_member");
+    }
+    
+    @Test
+    @DisplayName("疎な関係 - CHAIN・CONJUNCTIONを疎なまま評価する")
+    void testSparseRelation_Chain() {
+        // Given: 0→1→2→3 の友人関係（疎）と、密な関係
+        engine.addRelation("kg_friend", SparseRelation.fromEdges(4, 4,
+            new int[]{0, 1, 2}, new int[]{1, 2, 3}, new double[]{1.0, 0.9, 0.8}));
+        engine.addFact("kg_trust", Nd4j.ones(4, 4).mul(0.5));
+        engine.addRule("kg_fof", Rule.builder()
+            .namespace("sparse").inputs("kg_friend", "kg_friend").output("kg_friend_of_friend")
+            .operation(Rule.Operation.CHAIN).build());
+        engine.addRule("kg_trusted", Rule.builder()
+            .namespace("sparse").inputs("kg_friend_of_friend", "kg_trust").output("kg_trusted_fof")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        
+        // When
+        engine.forwardChain("sparse");
+        
+        // Then: 疎な関係として導出される
+        SparseRelation fof = assertInstanceOf(SparseRelation.class,
+            engine.getRelation("kg_friend_of_friend"), "疎な関係として導出されること");
+        assertEquals(2, fof.nnz());
+        assertEquals(0.9, fof.get(0, 2), 0.001);
+        assertEquals(0.72, fof.get(1, 3), 0.001);
+        assertEquals(0.0, fof.get(0, 3), 0.001);
+        
+        SparseRelation trusted = assertInstanceOf(SparseRelation.class,
+            engine.getRelation("kg_trusted_fof"), "疎 ∧ 密 は疎な関係になること");
+        assertEquals(0.5, trusted.get(0, 2), 0.001);
+        assertEquals(0.5, trusted.get(1, 3), 0.001);
+        assertTrue(fof.toDense().equalsWithEps(
+            engine.getRelation("kg_friend").toDense().mmul(engine.getRelation("kg_friend").toDense()), 1e-6),
+            "密な行列積と同じ結果であること");
+    }
+    
+    @Test
+    @DisplayName("EINSUM - 3項の縮約が行列積の連鎖と一致する")
+    void testEinsum_ThreeWayJoin() {
+        // Given: Parent(x,y)·Parent(y,z)·Sibling(z,w)
+        INDArray parent = Nd4j.create(new double[][]{
+            {0, 1, 0, 0}, {0, 0, 1, 0}, {0, 0, 0, 1}, {0, 0, 0, 0}});
+        INDArray sibling = Nd4j.create(new double[][]{
+            {0, 0, 0, 0}, {0, 0, 0, 0}, {0, 0, 0, 0.5}, {0, 0, 0.5, 0}});
+        engine.addFact("ein_parent", parent);
+        engine.addFact("ein_sibling", sibling);
+        engine.addRule("ein_cousin", Rule.builder()
+            .namespace("einsum").inputs("ein_parent", "ein_parent", "ein_sibling").output("ein_grand_sibling")
+            .operation(Rule.Operation.EINSUM).equation("xy,yz,zw->xw").build());
+        engine.addRule("ein_count", Rule.builder()
+            .namespace("einsum").inputs("ein_grand_sibling").output("ein_total")
+            .operation(Rule.Operation.EINSUM).equation("xw->").build());
+        
+        // When
+        engine.forwardChain("einsum");
+        
+        // Then
+        INDArray expected = parent.mmul(parent).mmul(sibling);
+        INDArray result = engine.getFact("ein_grand_sibling");
+        assertNotNull(result);
+        assertTrue(expected.equalsWithEps(result, 1e-6), "行列積の連鎖と同じ結果であること");
+        assertEquals(expected.sumNumber().doubleValue(), engine.getFact("ein_total").getDouble(0), 1e-6);
+        
+        // 入力の数が添字の指定と一致しないルールは作成できない
+        assertThrows(IllegalArgumentException.class, () -> Rule.builder()
+            .inputs("ein_parent").output("ein_bad")
+            .operation(Rule.Operation.EINSUM).equation("xy,yz->xz").build());
+    }
+    
+    @Test
+    @DisplayName("CLOSURE - 推移閉包を1つのルールで計算する（密・疎）")
+    void testClosure_Ancestor() {
+        // Given: 0→1→2→3→4 の親子関係（密と疎）
+        INDArray parent = Nd4j.zeros(5, 5);
+        parent.putScalar(0, 1, 0.9);
+        parent.putScalar(1, 2, 0.8);
+        parent.putScalar(2, 3, 1.0);
+        parent.putScalar(3, 4, 0.5);
+        engine.addFact("clo_parent", parent);
+        engine.addRelation("clo_parent_sparse", SparseRelation.fromDense(parent));
+        engine.addRule("clo_ancestor", Rule.builder()
+            .namespace("closure").inputs("clo_parent").output("clo_ancestor")
+            .operation(Rule.Operation.CLOSURE).build());
+        engine.addRule("clo_ancestor_sparse", Rule.builder()
+            .namespace("closure").inputs("clo_parent_sparse").output("clo_ancestor_sparse")
+            .operation(Rule.Operation.CLOSURE).build());
+        engine.addRule("clo_bottleneck", Rule.builder()
+            .namespace("closure").inputs("clo_parent").output("clo_bottleneck")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.MAX_MIN).build());
+        
+        // When
+        engine.forwardChain("closure");
+        
+        // Then: MAX_PRODUCT は経路上の積
+        INDArray ancestor = engine.getFact("clo_ancestor");
+        assertEquals(0.9, ancestor.getDouble(0, 1), 1e-6);
+        assertEquals(0.72, ancestor.getDouble(0, 2), 1e-6);
+        assertEquals(0.72, ancestor.getDouble(0, 3), 1e-6);
+        assertEquals(0.36, ancestor.getDouble(0, 4), 1e-6);
+        assertEquals(0.0, ancestor.getDouble(4, 0), 1e-6);
+        
+        // 疎な関係は疎なまま同じ結果になる
+        SparseRelation sparse = assertInstanceOf(SparseRelation.class,
+            engine.getRelation("clo_ancestor_sparse"), "疎な関係として導出されること");
+        assertEquals(10, sparse.nnz());
+        assertTrue(ancestor.equalsWithEps(sparse.toDense(), 1e-6), "密な計算と同じ結果であること");
+        
+        // MAX_MIN は経路上の最小値
+        assertEquals(0.5, engine.getFact("clo_bottleneck").getDouble(0, 4), 1e-6);
+        assertEquals(0.8, engine.getFact("clo_bottleneck").getDouble(0, 3), 1e-6);
+    }
+    
+    @Test
+    @DisplayName("CLOSURE - 循環のある関係の SUM_PRODUCT はそのルールだけを失敗にする")
+    void testClosure_SumProductCycle() {
+        // Given: 0→1→0 の循環（密と疎）と、同じネームスペースの別のルール
+        INDArray cycle = Nd4j.create(new double[][]{{0.0, 0.5}, {0.5, 0.0}});
+        engine.addFact("cyc_edge", cycle);
+        engine.addRelation("cyc_edge_sparse", SparseRelation.fromDense(cycle));
+        engine.addFact("cyc_premise", Nd4j.create(new double[]{1.0, 0.0}));
+        engine.addRule("cyc_paths", Rule.builder()
+            .namespace("cycle").inputs("cyc_edge").output("cyc_paths")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.SUM_PRODUCT).build());
+        engine.addRule("cyc_paths_sparse", Rule.builder()
+            .namespace("cycle").inputs("cyc_edge_sparse").output("cyc_paths_sparse")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.SUM_PRODUCT).build());
+        engine.addRule("cyc_next", Rule.builder()
+            .namespace("cycle").inputs("cyc_premise", "cyc_edge").output("cyc_next")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        
+        // When: 前向き推論全体は失敗しない
+        Map<String, INDArray> derived = assertDoesNotThrow(() -> engine.forwardChain("cycle"));
+        
+        // Then: 収束しない推移閉包の出力は設定されず、ほかのルールは導出される
+        assertNull(engine.getFact("cyc_paths"));
+        assertNull(engine.getRelation("cyc_paths_sparse"));
+        assertFalse(derived.containsKey("cyc_paths"));
+        assertEquals(0.5, engine.getFact("cyc_next").getDouble(0, 1), 1e-6);
+        assertDoesNotThrow(() -> engine.forwardChainToFixpoint("cycle"));
+    }
+    
+    @Test
+    @DisplayName("半環 - CHAIN を最大・最小、最大・積、対数空間の和で合成する")
+    void testSemiring_Chain() {
+        // Given
+        INDArray a = Nd4j.create(new double[][]{{0.9, 0.2}, {0.4, 0.6}});
+        INDArray b = Nd4j.create(new double[][]{{0.5, 0.7}, {0.8, 0.3}});
+        engine.addFact("sr_a", a);
+        engine.addFact("sr_b", b);
+        engine.addRelation("sr_a_sparse", SparseRelation.fromDense(a));
+        for (Semiring semiring : Semiring.values()) {
+            String name = semiring.name().toLowerCase();
+            engine.addRule("sr_" + name, Rule.builder()
+                .namespace("semiring").inputs("sr_a", "sr_b").output("sr_" + name)
+                .operation(Rule.Operation.CHAIN).semiring(semiring).build());
+        }
+        engine.addRule("sr_max_min_sparse", Rule.builder()
+            .namespace("semiring").inputs("sr_a_sparse", "sr_b").output("sr_max_min_sparse")
+            .operation(Rule.Operation.CHAIN).semiring(Semiring.MAX_MIN).build());
+        
+        // When
+        engine.forwardChain("semiring");
+        
+        // Then: 要素ごとに定義どおり計算した値と一致する
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                double maxMin = 0.0;
+                double maxProduct = 0.0;
+                double expSum = 0.0;
+                for (int k = 0; k < 2; k++) {
+                    maxMin = Math.max(maxMin, Math.min(a.getDouble(i, k), b.getDouble(k, j)));
+                    maxProduct = Math.max(maxProduct, a.getDouble(i, k) * b.getDouble(k, j));
+                    expSum += Math.exp(a.getDouble(i, k) + b.getDouble(k, j));
+                }
+                assertEquals(maxMin, engine.getFact("sr_max_min").getDouble(i, j), 1e-6);
+                assertEquals(maxProduct, engine.getFact("sr_max_product").getDouble(i, j), 1e-6);
+                assertEquals(Math.log(expSum), engine.getFact("sr_log_sum_exp").getDouble(i, j), 1e-6);
+                assertEquals(a.mmul(b).getDouble(i, j), engine.getFact("sr_sum_product").getDouble(i, j), 1e-6);
+                assertEquals(maxMin, engine.getFact("sr_max_min_sparse").getDouble(i, j), 1e-6);
+            }
+        }
+        
+        // 推移閉包は対数空間の和に対応しない
+        assertThrows(IllegalArgumentException.class, () -> Rule.builder()
+            .inputs("sr_a").output("sr_invalid")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.LOG_SUM_EXP).build());
+    }
+    
+    @Test
+    @DisplayName("関係の参照 - getFact・getAllFacts・後向き推論で関係を密な行列として読める")
+    void testRelation_ReadAsDense() {
+        // Given: ビット関係・疎な関係と、関係を入力に持つルール
+        engine.addRelation("rread_bits", BitRelation.fromEdges(2, 3, new int[]{0, 1}, new int[]{2, 0}));
+        engine.addRelation("rread_sparse", SparseRelation.fromEdges(3, 2, new int[]{2}, new int[]{1},
+            new double[]{0.5}));
+        engine.addRule("rread_chain", Rule.builder()
+            .namespace("rread").inputs("rread_bits", "rread_sparse").output("rread_chain")
+            .operation(Rule.Operation.CHAIN).build());
+        
+        // When / Then: 関係のまま保持され、参照するときだけ密な行列に変換される
+        assertNull(engine.snapshot().getFact("rread_bits"));
+        assertEquals(1.0, engine.getFact("rread_bits").getDouble(0, 2), 1e-12);
+        assertEquals(0.0, engine.getFact("rread_bits").getDouble(0, 0), 1e-12);
+        assertEquals(0.5, engine.deriveFact("rread_sparse").getDouble(2, 1), 1e-12);
+        assertEquals(0.5, engine.getAllFacts().get("rread_sparse").getDouble(2, 1), 1e-12);
+        
+        // 後向き推論は関係を入力に持つルールも評価できる
+        BackwardChainingResult result = engine.backwardChain("rread_chain", "rread");
+        assertTrue(result.success());
+        assertEquals(0.5, result.requiredFacts().get("rread_chain").getDouble(0, 1), 1e-12);
+        
+        // 密な行列に変換できる要素数の上限を超える関係は getRelation でのみ参照する
+        engine.addRelation("rread_huge", BitRelation.fromEdges(5000, 5000, new int[]{0}, new int[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> engine.getFact("rread_huge"));
+        assertFalse(engine.getAllFacts().containsKey("rread_huge"));
+        assertEquals(1, engine.getRelation("rread_huge").nnz());
+        engine.removeFact("rread_huge");
+    }
+    
+    @Test
+    @DisplayName("ビット関係 - 0/1の関係をビット演算で評価する")
+    void testBitRelation_Crisp() {
+        // Given: 70ノードの鎖 0→1→…→69（1行が2ワードにまたがる）と、偶数ノードへの権限
+        int n = 70;
+        int[] from = new int[n - 1];
+        int[] to = new int[n - 1];
+        for (int i = 0; i < n - 1; i++) {
+            from[i] = i;
+            to[i] = i + 1;
+        }
+        BitRelation edge = BitRelation.fromEdges(n, n, from, to);
+        INDArray allowedDense = Nd4j.zeros(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j += 2) {
+                allowedDense.putScalar(i, j, 1.0);
+            }
+        }
+        engine.addRelation("bit_edge", edge);
+        engine.addRelation("bit_allowed", BitRelation.fromDense(allowedDense));
+        engine.addRule("bit_two_hop", Rule.builder()
+            .namespace("bits").inputs("bit_edge", "bit_edge").output("bit_two_hop")
+            .operation(Rule.Operation.CHAIN).semiring(Semiring.MAX_PRODUCT).build());
+        engine.addRule("bit_reach", Rule.builder()
+            .namespace("bits").inputs("bit_edge").output("bit_reach")
+            .operation(Rule.Operation.CLOSURE).build());
+        engine.addRule("bit_allowed_reach", Rule.builder()
+            .namespace("bits").inputs("bit_reach", "bit_allowed").output("bit_allowed_reach")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        
+        // When
+        engine.forwardChain("bits");
+        
+        // Then: 結果もビット関係のまま
+        BitRelation twoHop = assertInstanceOf(BitRelation.class, engine.getRelation("bit_two_hop"));
+        assertEquals(n - 2, twoHop.nnz());
+        assertTrue(twoHop.contains(63, 65), "ワード境界をまたぐ合成");
+        assertTrue(twoHop.toDense().equalsWithEps(edge.toDense().mmul(edge.toDense()), 1e-6),
+            "経路が1本の場合は密な行列積と同じ結果であること");
+        
+        BitRelation reach = assertInstanceOf(BitRelation.class, engine.getRelation("bit_reach"));
+        assertEquals(n * (n - 1) / 2, reach.nnz());
+        assertTrue(reach.contains(0, 69));
+        assertFalse(reach.contains(69, 0));
+        
+        BitRelation allowedReach = assertInstanceOf(BitRelation.class, engine.getRelation("bit_allowed_reach"));
+        assertTrue(allowedReach.contains(0, 68));
+        assertFalse(allowedReach.contains(0, 69));
+        
+        // 和・積（既定の半環）の合成は経路の数になり、ビット関係にはならない
+        BitRelation diamond = BitRelation.fromEdges(4, 4, new int[]{0, 0, 1, 2}, new int[]{1, 2, 3, 3});
+        engine.addRelation("bit_diamond", diamond);
+        engine.addRule("bit_diamond_paths", Rule.builder()
+            .namespace("bits_count").inputs("bit_diamond", "bit_diamond").output("bit_diamond_paths")
+            .operation(Rule.Operation.CHAIN).build());
+        engine.forwardChain("bits_count");
+        Relation paths = engine.getRelation("bit_diamond_paths");
+        assertFalse(paths instanceof BitRelation, "和・積の合成はビット関係にならないこと");
+        assertEquals(2.0, paths.get(0, 3), 1e-9, "経路の数（2本）になること");
+        
+        // 0/1以外の値はビット関係にできない
+        assertThrows(IllegalArgumentException.class,
+            () -> BitRelation.fromMatrix(new double[][]{{0.5, 1.0}}));
+        
+        // 1つの配列に収まらない大きさ（100万 × 100万）は桁あふれせずに例外
+        assertThrows(IllegalArgumentException.class,
+            () -> BitRelation.fromEdges(1_000_000, 1_000_000, new int[]{0}, new int[]{1}));
+    }
+    
+    @Test
+    @DisplayName("精度 - 低い精度で保持した事実を混合精度で評価する")
+    void testPrecision_MixedPrecision() {
+        // Given: 同じ値を倍精度・bfloat16・int8 で保持
+        INDArray relation = Nd4j.create(new double[][]{{0.9, 0.2}, {0.4, 0.6}});
+        INDArray premise = Nd4j.create(new double[]{0.8, 0.5});
+        engine.addFact("prec_relation", relation);
+        engine.addFact("prec_relation_bf16", relation, Precision.BFLOAT16);
+        engine.addFact("prec_relation_int8", relation, Precision.INT8);
+        engine.addFact("prec_premise_f32", premise, Precision.FLOAT32);
+        engine.addRule("prec_bf16", Rule.builder()
+            .namespace("precision").inputs("prec_premise_f32", "prec_relation_bf16").output("prec_bf16")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("prec_int8", Rule.builder()
+            .namespace("precision").inputs("prec_premise_f32", "prec_relation_int8").output("prec_int8")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("prec_mixed", Rule.builder()
+            .namespace("precision").inputs("prec_premise_f32", "prec_relation").output("prec_mixed")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        
+        // When
+        engine.forwardChain("precision");
+        
+        // Then: 保持は低い精度のまま、読み出すと元の値に近い
+        assertEquals(DataType.BFLOAT16, engine.snapshot().getFact("prec_relation_bf16").dataType());
+        assertEquals(DataType.INT8, engine.snapshot().getFact("prec_relation_int8").dataType());
+        assertEquals(0.9, engine.getFact("prec_relation_int8").getDouble(0, 0), 1.0 / 127);
+        assertEquals(0.9, engine.getAllFacts().get("prec_relation_int8").getDouble(0, 0), 1.0 / 127);
+        
+        // 低い精度の入力だけなら FLOAT32、倍精度を含めば FLOAT64 で積和を計算する
+        INDArray expected = premise.reshape(1, 2).mmul(relation);
+        assertEquals(DataType.FLOAT, engine.getFact("prec_bf16").dataType());
+        assertEquals(DataType.FLOAT, engine.getFact("prec_int8").dataType());
+        assertEquals(DataType.DOUBLE, engine.getFact("prec_mixed").dataType());
+        for (int j = 0; j < 2; j++) {
+            assertEquals(expected.getDouble(0, j), engine.getFact("prec_bf16").getDouble(0, j), 1e-2);
+            assertEquals(expected.getDouble(0, j), engine.getFact("prec_int8").getDouble(0, j), 1e-2);
+            assertEquals(expected.getDouble(0, j), engine.getFact("prec_mixed").getDouble(0, j), 1e-6);
+        }
+        
+        // int8 で保持できるのは [-1, 1] の値のみ
+        assertThrows(IllegalArgumentException.class,
+            () -> Precision.INT8.store(Nd4j.create(new double[]{1.5})));
+        assertEquals(Precision.BFLOAT16, Precision.parse("bf16"));
+    }
+    
+    @Test
+    @DisplayName("メモリマップの事実 - ファイルに保存した事実をマップして推論に使う")
+    void testMappedFactFile_RoundTrip() throws Exception {
+        // Given: 倍精度と int8 の事実をファイルに保存
+        Path dir = Files.createTempDirectory("tensorlogic-facts");
+        INDArray relation = Nd4j.create(new double[][]{{0.9, 0.2, 0.0}, {0.4, 0.6, 1.0}});
+        MappedFactFile.write(dir.resolve("relation.fact"), relation);
+        MappedFactFile.write(dir.resolve("relation_int8.fact"), Precision.INT8.store(relation));
+        
+        // When: メモリマップで読み込んでエンジンに登録
+        INDArray mapped = MappedFactFile.map(dir.resolve("relation.fact"));
+        INDArray mappedInt8 = MappedFactFile.map(dir.resolve("relation_int8.fact"));
+        engine.addFact("mmap_relation", mapped);
+        engine.addFact("mmap_premise", Nd4j.create(new double[]{1.0, 0.5}));
+        engine.addRule("mmap_conclusion", Rule.builder()
+            .namespace("mmap").inputs("mmap_premise", "mmap_relation").output("mmap_conclusion")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.forwardChain("mmap");
+        
+        // Then: 形状・型・値が保存前と同じ
+        assertArrayEquals(relation.shape(), mapped.shape());
+        assertTrue(relation.equalsWithEps(mapped, 0.0), "倍精度の値がそのまま読み込まれること");
+        assertEquals(DataType.INT8, mappedInt8.dataType());
+        assertTrue(relation.equalsWithEps(Precision.decode(mappedInt8).castTo(DataType.DOUBLE), 1.0 / 127));
+        assertEquals(1.1, engine.getFact("mmap_conclusion").getDouble(0, 0), 1e-6);
+        
+        // 事実のファイルでないものは読み込めない
+        Path invalid = Files.writeString(dir.resolve("invalid.fact"), "not a fact file");
+        assertThrows(IOException.class, () -> MappedFactFile.map(invalid));
+    }
+    
+    @Test
+    @DisplayName("メモリマップの事実 - 値をコピーせずファイルのページを参照する")
+    void testMappedFactFile_NoCopy() throws Exception {
+        // Given: 倍精度・単精度の事実をファイルに保存してマップ
+        Path dir = Files.createTempDirectory("tensorlogic-facts");
+        Path doubles = dir.resolve("doubles.fact");
+        Path floats = dir.resolve("floats.bin");
+        MappedFactFile.write(doubles, Nd4j.create(new double[][]{{0.1, 0.2}, {0.3, 0.4}}));
+        Files.write(floats, ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(0.5f).putFloat(0.6f).array());
+        INDArray mappedDoubles = MappedFactFile.map(doubles);
+        INDArray mappedFloats = MappedFactFile.mapRaw(floats, Precision.FLOAT32, new long[]{2});
+        
+        // When: マップした後にファイルの値をその場で書き換える（ヘッダーは64バイト）
+        try (FileChannel channel = FileChannel.open(doubles, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(0, 0.9), 64);
+        }
+        try (FileChannel channel = FileChannel.open(floats, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(0, 0.7f), 4);
+        }
+        
+        // Then: 事実の値が書き換えた後の値になる（コピーしていればマップ時の値のまま）
+        assertEquals(0.9, mappedDoubles.getDouble(0, 0), 0.0);
+        assertEquals(0.4, mappedDoubles.getDouble(1, 1), 0.0);
+        assertEquals(0.7f, mappedFloats.getFloat(1), 0.0f);
+    }
+    
+    @Test
+    @DisplayName("スナップショット - 導出済みの事実を含む状態を保存・復元する")
+    void testSnapshot_SaveAndRestore() throws Exception {
+        // Given: 密・int8・疎・ビットの事実と、推論で導出された事実
+        engine.addFact("snap_premise", Nd4j.create(new double[]{0.9}));
+        engine.addFact("snap_implication", Nd4j.create(new double[][]{{0.8}}), Precision.INT8);
+        engine.addRelation("snap_sparse", SparseRelation.fromEdges(3, 3, new int[]{0, 1}, new int[]{1, 2},
+            new double[]{0.5, 0.7}));
+        engine.addRelation("snap_bits", BitRelation.fromEdges(2, 70, new int[]{0, 1}, new int[]{65, 3}));
+        engine.addRule("snap_conclusion", Rule.builder()
+            .namespace("snapshot").inputs("snap_premise", "snap_implication").output("snap_conclusion")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("snap_reach", Rule.builder()
+            .namespace("snapshot").inputs("snap_sparse").output("snap_reach")
+            .operation(Rule.Operation.CLOSURE).semiring(Semiring.MAX_MIN).build());
+        engine.forwardChain("snapshot");
+        EngineSnapshot before = engine.snapshot();
+        
+        // When: ファイルに保存して読み込む
+        Path file = Files.createTempDirectory("tensorlogic-snapshot").resolve("engine.snapshot");
+        SnapshotInfo saved = engine.saveSnapshot(file);
+        EngineSnapshot restored = EngineSnapshotFile.read(file);
+        
+        // Then: 事実・関係・ルール・バージョンが同じ
+        assertEquals(before.version(), saved.version());
+        assertEquals(before.version(), restored.version());
+        assertEquals(before.ruleVersion(), restored.ruleVersion());
+        assertEquals(before.rules(), restored.rules());
+        assertEquals(before.facts().keySet(), restored.facts().keySet());
+        assertEquals(DataType.INT8, restored.getFact("snap_implication").dataType());
+        assertTrue(before.getFact("snap_conclusion").equalsWithEps(restored.getFact("snap_conclusion"), 0.0));
+        assertTrue(restored.isDerived("snap_conclusion"), "導出された事実として復元されること");
+        assertEquals(before.factVersion("snap_premise"), restored.factVersion("snap_premise"));
+        assertEquals(before.getRelation("snap_bits"), restored.getRelation("snap_bits"));
+        assertEquals(0.5, restored.getRelation("snap_reach").get(0, 2), 1e-12);
+        
+        // エンジンに復元しても状態は変わらず、推論を続けられる
+        // （バージョンは巻き戻らず、以前に公開したバージョンより後に進む）
+        engine.restoreSnapshot(file);
+        EngineSnapshot after = engine.snapshot();
+        assertTrue(after.version() > before.version(), "復元してもバージョンが巻き戻らないこと");
+        assertTrue(after.factVersion("snap_premise") > before.version());
+        assertTrue(after.factVersion("snap_premise") < after.factVersion("snap_conclusion"),
+            "事実ごとのバージョンの前後関係は保存時のままであること");
+        assertEquals(after.facts().keySet(), before.facts().keySet());
+        assertEquals(0.9 * Precision.decode(before.getFact("snap_implication")).getDouble(0, 0),
+            engine.getFact("snap_conclusion").getDouble(0, 0), 1e-6);
+        
+        // 壊れたファイルは復元せず、現在の状態を変更しない
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x01;
+        Path corrupted = Files.write(file.resolveSibling("corrupted.snapshot"), bytes);
+        assertThrows(IOException.class, () -> engine.restoreSnapshot(corrupted));
+        Path truncated = Files.write(file.resolveSibling("truncated.snapshot"),
+            Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(IOException.class, () -> engine.restoreSnapshot(truncated));
+        assertEquals(after.version(), engine.snapshot().version());
+    }
+    
+    @Test
+    @DisplayName("スナップショット - 大きな事実の値を分けて書き込み・読み込む")
+    void testSnapshot_ChunkedValues() throws Exception {
+        // Given: 値のレコード1つ（1MB）に収まらない倍精度・int8 の事実
+        double[] values = new double[300_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i % 1000) / 1000.0;
+        }
+        INDArray large = Nd4j.create(values, new long[]{600, 500});
+        engine.addFact("snap_large", large);
+        engine.addFact("snap_large_int8", Nd4j.create(values, new long[]{300_000}), Precision.INT8);
+        
+        // When
+        Path file = Files.createTempDirectory("tensorlogic-snapshot").resolve("large.snapshot");
+        engine.saveSnapshot(file);
+        EngineSnapshot restored = EngineSnapshotFile.read(file);
+        
+        // Then: 形状・型・値が保存前と同じ
+        assertArrayEquals(large.shape(), restored.getFact("snap_large").shape());
+        assertTrue(large.equalsWithEps(restored.getFact("snap_large"), 0.0));
+        assertEquals(DataType.INT8, restored.getFact("snap_large_int8").dataType());
+        assertTrue(engine.snapshot().getFact("snap_large_int8").equalsWithEps(restored.getFact("snap_large_int8"), 0.0));
+    }
+    
+    @Test
+    @DisplayName("N入力の論理積・論理和 - 全ての入力の最小値・最大値を1回で計算する")
+    void testNary_ConjunctionDisjunction() {
+        // Given: 3つの密な事実・疎な関係・ビット関係
+        engine.addFact("nary_a", Nd4j.create(new double[]{0.9, 0.2, 0.6}));
+        engine.addFact("nary_b", Nd4j.create(new double[]{0.5, 0.8, 0.7}));
+        engine.addFact("nary_c", Nd4j.create(new double[]{0.7, 0.4, 0.3}));
+        engine.addFact("nary_m1", Nd4j.create(new double[][]{{0.9, 0.3}, {0.6, 0.8}}));
+        engine.addFact("nary_m2", Nd4j.create(new double[][]{{0.4, 0.5}, {0.7, 0.2}}));
+        engine.addRelation("nary_sparse", SparseRelation.fromEdges(2, 2, new int[]{0, 1}, new int[]{0, 1},
+            new double[]{0.5, 0.9}));
+        engine.addRelation("nary_bits1", BitRelation.fromEdges(2, 70, new int[]{0, 1, 1}, new int[]{65, 3, 4}));
+        engine.addRelation("nary_bits2", BitRelation.fromEdges(2, 70, new int[]{0, 1}, new int[]{65, 3}));
+        engine.addRelation("nary_bits3", BitRelation.fromEdges(2, 70, new int[]{0, 1}, new int[]{65, 5}));
+        for (Rule.Operation operation : new Rule.Operation[]{Rule.Operation.CONJUNCTION, Rule.Operation.DISJUNCTION}) {
+            String suffix = operation == Rule.Operation.CONJUNCTION ? "_and" : "_or";
+            engine.addRule("nary_dense" + suffix, Rule.builder()
+                .namespace("nary").inputs("nary_a", "nary_b", "nary_c").output("nary_dense" + suffix)
+                .operation(operation).build());
+            engine.addRule("nary_mixed" + suffix, Rule.builder()
+                .namespace("nary").inputs("nary_m1", "nary_sparse", "nary_m2").output("nary_mixed" + suffix)
+                .operation(operation).build());
+            engine.addRule("nary_bits" + suffix, Rule.builder()
+                .namespace("nary").inputs("nary_bits1", "nary_bits2", "nary_bits3").output("nary_bits" + suffix)
+                .operation(operation).build());
+        }
+        
+        // When
+        engine.forwardChain("nary");
+        
+        // Then: 密な入力は全入力の最小値・最大値
+        assertTrue(engine.getFact("nary_dense_and").equalsWithEps(Nd4j.create(new double[]{0.5, 0.2, 0.3}), 1e-6));
+        assertTrue(engine.getFact("nary_dense_or").equalsWithEps(Nd4j.create(new double[]{0.9, 0.8, 0.7}), 1e-6));
+        
+        // 疎な関係を含む論理積は疎なまま、論理和は密になる
+        assertInstanceOf(SparseRelation.class, engine.getRelation("nary_mixed_and"));
+        assertTrue(engine.getRelation("nary_mixed_and").toDense()
+            .equalsWithEps(Nd4j.create(new double[][]{{0.4, 0.0}, {0.0, 0.2}}), 1e-6));
+        assertTrue(engine.getFact("nary_mixed_or")
+            .equalsWithEps(Nd4j.create(new double[][]{{0.9, 0.5}, {0.7, 0.9}}), 1e-6));
+        
+        // ビット関係はビット演算のまま
+        Relation and = engine.getRelation("nary_bits_and");
+        Relation or = engine.getRelation("nary_bits_or");
+        assertInstanceOf(BitRelation.class, and);
+        assertInstanceOf(BitRelation.class, or);
+        assertEquals(1, and.nnz());
+        assertEquals(1.0, and.toDense().getDouble(0, 65), 1e-6);
+        assertEquals(4, or.nnz());
+        
+        // 入力が1つの論理積・論理和は定義できない
+        assertThrows(IllegalArgumentException.class, () -> Rule.builder()
+            .inputs("nary_a").output("nary_invalid").operation(Rule.Operation.CONJUNCTION).build());
+    }
+    
+    @Test
+    @DisplayName("遅延導出 - 参照した事実に必要なルールだけを評価し、結果を再利用する")
+    void testLazy_DeriveFact() {
+        // Given: lazy_goal は lazy_mid を経由して導出され、lazy_unused は参照されない
+        engine.addFact("lazy_premise", Nd4j.create(new double[]{0.8}));
+        engine.addFact("lazy_implication", Nd4j.create(new double[][]{{0.9}}));
+        engine.addFact("lazy_condition", Nd4j.create(new double[]{0.6}));
+        engine.addRule("lazy_mid", Rule.builder()
+            .namespace("lazy").inputs("lazy_premise", "lazy_implication").output("lazy_mid")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("lazy_goal", Rule.builder()
+            .namespace("lazy").inputs("lazy_mid", "lazy_condition").output("lazy_goal")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        engine.addRule("lazy_unused", Rule.builder()
+            .namespace("lazy").inputs("lazy_premise", "lazy_condition").output("lazy_unused")
+            .operation(Rule.Operation.DISJUNCTION).build());
+        
+        engine.addRelation("lazy_edge", SparseRelation.fromEdges(2, 2, new int[]{0}, new int[]{1},
+            new double[]{0.5}));
+        engine.addFact("lazy_source", Nd4j.create(new double[]{1.0, 0.0}));
+        engine.addRule("lazy_reached", Rule.builder()
+            .namespace("lazy").inputs("lazy_source", "lazy_edge").output("lazy_reached")
+            .operation(Rule.Operation.MODUS_PONENS).build());
+        engine.addRule("lazy_two_hop", Rule.builder()
+            .namespace("lazy").inputs("lazy_edge", "lazy_edge").output("lazy_two_hop")
+            .operation(Rule.Operation.CHAIN).build());
+        engine.addRule("lazy_three_hop", Rule.builder()
+            .namespace("lazy").inputs("lazy_two_hop", "lazy_edge").output("lazy_three_hop")
+            .operation(Rule.Operation.CHAIN).build());
+        
+        // When / Then: 参照した事実だけが導出され、スナップショットには追加されない
+        GoalTableStats tableBefore = engine.getGoalTableStats();
+        INDArray goal = engine.deriveFact("lazy_goal");
+        assertEquals(0.6, goal.getDouble(0), 1e-6);
+        assertFalse(engine.getAllFacts().containsKey("lazy_goal"));
+        assertFalse(engine.getAllFacts().containsKey("lazy_mid"));
+        assertFalse(engine.getAllFacts().containsKey("lazy_unused"));
+        assertNull(engine.deriveFact("lazy_missing"));
+        
+        // 関係を入力に持つルール・関係を出力するルールは遅延導出では評価しない（密な行列に展開しない）
+        assertNull(engine.deriveFact("lazy_reached"));
+        assertNull(engine.deriveFact("lazy_two_hop"));
+        assertNull(engine.deriveFact("lazy_three_hop"));
+        assertNull(engine.getRelation("lazy_two_hop"));
+        
+        // 2回目は遅延導出用の表の結果を再利用し、後向き推論の表は使わない
+        assertSame(goal, engine.deriveFact("lazy_goal"));
+        assertEquals(tableBefore.entries(), engine.getGoalTableStats().entries());
+        assertEquals(tableBefore.hits(), engine.getGoalTableStats().hits());
+        
+        // 依存する事実が変更されると導出し直す
+        engine.addFact("lazy_condition", Nd4j.create(new double[]{0.9}));
+        assertEquals(0.72, engine.deriveFact("lazy_goal").getDouble(0), 1e-6);
+        assertEquals(0.72, engine.deriveFact("lazy_mid").getDouble(0), 1e-6);
+        
+        // 関係を参照しない別のルールがあれば、そのルールで導出する
+        engine.addFact("lazy_reached_hint", Nd4j.create(new double[][]{{0.0, 0.4}}));
+        engine.addRule("lazy_reached_alt", Rule.builder()
+            .namespace("lazy").inputs("lazy_reached_hint", "lazy_reached_hint").output("lazy_reached")
+            .operation(Rule.Operation.CONJUNCTION).build());
+        assertEquals(0.4, engine.deriveFact("lazy_reached").getDouble(0, 1), 1e-6);
+    }
+    
+    @Test
+    @DisplayName("上位 k 件 - 合成した関係の行ごとの上位を合成結果の全体を作らずに取得する")
+    void testTopK_ComposedRelation() {
+        // Given: 友人関係（疎）と、合成すると列ブロックをまたぐ密な行列
+        engine.addRelation("topk_friend", SparseRelation.fromEdges(4, 4,
+            new int[]{0, 0, 1, 1, 2, 3}, new int[]{1, 2, 2, 3, 3, 0},
+            new double[]{1.0, 1.0, 1.0, 1.0, 1.0, 1.0}));
+        double[][] left = new double[3][4];
+        double[][] right = new double[4][1500];
+        for (int i = 0; i < 3; i++) {
+            for (int k = 0; k < 4; k++) {
+                left[i][k] = (i + k) % 3 * 0.3;
+            }
+        }
+        for (int k = 0; k < 4; k++) {
+            for (int j = 0; j < 1500; j++) {
+                right[k][j] = (j * 7 + k * 13) % 101 / 100.0;
+            }
+        }
+        engine.addFact("topk_left", Nd4j.create(left));
+        engine.addFact("topk_right", Nd4j.create(right));
+        
+        // When: 友人の友人（経路の数）の上位2件
+        TopKResult friends = engine.topK("topk_friend", "topk_friend", 2, null, null);
+        
+        // Then: 0 → {1, 2} → {2, 3}: 3 は2経路、2 は1経路
+        assertEquals(4, friends.rows().size());
+        assertEquals(List.of(new TopKResult.Match(3, 2.0), new TopKResult.Match(2, 1.0)),
+            friends.rows().get(0).matches());
+        
+        // 密な行列でも合成結果の行の上位と一致する
+        for (Semiring semiring : new Semiring[]{Semiring.SUM_PRODUCT, Semiring.MAX_MIN}) {
+            TopKResult top = engine.topK("topk_left", "topk_right", 5, semiring, new int[]{2, 0});
+            assertEquals(2, top.rows().get(0).row());
+            for (TopKResult.Row row : top.rows()) {
+                double[] values = new double[1500];
+                for (int j = 0; j < 1500; j++) {
+                    for (int k = 0; k < 4; k++) {
+                        values[j] = semiring == Semiring.SUM_PRODUCT
+                            ? values[j] + left[row.row()][k] * right[k][j]
+                            : Math.max(values[j], Math.min(left[row.row()][k], right[k][j]));
+                    }
+                }
+                double[] sorted = values.clone();
+                Arrays.sort(sorted);
+                assertEquals(5, row.matches().size());
+                for (int i = 0; i < 5; i++) {
+                    TopKResult.Match match = row.matches().get(i);
+                    assertEquals(sorted[sorted.length - 1 - i], match.score(), 1e-9);
+                    assertEquals(values[match.column()], match.score(), 1e-9);
+                }
+            }
+        }
+        
+        // 形状が合わない・存在しない事実は例外
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.topK("topk_right", "topk_left", 3, null, null));
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.topK("topk_missing", "topk_left", 3, null, null));
+    }
 }
-
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.DisplayName;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.greaterThan;
 
 /**
  * REST API のテスト
@@ -121,6 +122,32 @@ class TensorLogicResourceTest {
                 .statusCode(500);  // エラーレスポンス
     }
     
+    @Test
+    @DisplayName("自動ロードの所要時間API")
+    void testAutoLoadReportAPI() {
+        given()
+            .when().get("/api/rules/auto-load/report")
+            .then()
+                .statusCode(200)
+                .body("parallelism", greaterThan(0))
+                .body("files.size()", greaterThan(0))
+                .body("files.file", hasItem("rules/simple-verification-rules.yaml"))
+                .body("files.find { it.file == 'rules/simple-verification-rules.yaml' }.success", equalTo(true));
+    }
+    
+    @Test
+    @DisplayName("スナップショットAPI - ディレクトリの外のパスは拒否する")
+    void testSnapshotAPI_RejectsOutsidePath() {
+        for (String path : new String[]{"../outside.snapshot", "/tmp/outside.snapshot", "a/../../outside.snapshot"}) {
+            given()
+                .contentType(ContentType.JSON)
+                .body("{\"path\": \"" + path + "\"}")
+                .when().post("/api/snapshot/save")
+                .then()
+                    .statusCode(400);
+        }
+    }
+    
     @Test
     @DisplayName("汎用検証API - シンプル")
     void testSimpleVerifyAPI() {